@@ -2,25 +2,38 @@ package codechicken.diffpatch;
 
 import static codechicken.diffpatch.util.Utils.*;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
+import codechicken.diffpatch.cache.DiffCache;
 import codechicken.diffpatch.diff.Differ;
 import codechicken.diffpatch.diff.PatienceDiffer;
 import codechicken.diffpatch.util.*;
+import codechicken.diffpatch.util.archiver.ArchiveReader;
+import codechicken.diffpatch.util.archiver.ArchiveWriter;
 
 /**
  * Handles doing a Diff operation from the CLI.
@@ -29,6 +42,11 @@ import codechicken.diffpatch.util.*;
  */
 public class DiffOperation {
 
+    /**
+     * The differ is replaced once it has interned this many distinct lines.
+     */
+    private static final int MAX_INTERNED_LINES = 1 << 13;
+
     private DiffSummary summary;
 	private final boolean verbose;
     private final InputPath aPath;
@@ -41,8 +59,19 @@ public class DiffOperation {
     private final PathFilter filter;
     private final String lineSeparator;
 	private final boolean single;
+    private final boolean bundle;
+    private final DiffCache cache;
+    private PatienceDiffer differ;
 
     public DiffOperation(boolean verbose, InputPath aPath, InputPath bPath, String aPrefix, String bPrefix, boolean autoHeader, int context, OutputPath outputPath, PathFilter filter, String lineSeparator, boolean single) {
+        this(verbose, aPath, bPath, aPrefix, bPrefix, autoHeader, context, outputPath, filter, lineSeparator, single, false);
+    }
+
+    public DiffOperation(boolean verbose, InputPath aPath, InputPath bPath, String aPrefix, String bPrefix, boolean autoHeader, int context, OutputPath outputPath, PathFilter filter, String lineSeparator, boolean single, boolean bundle) {
+        this(verbose, aPath, bPath, aPrefix, bPrefix, autoHeader, context, outputPath, filter, lineSeparator, single, bundle, null);
+    }
+
+    public DiffOperation(boolean verbose, InputPath aPath, InputPath bPath, String aPrefix, String bPrefix, boolean autoHeader, int context, OutputPath outputPath, PathFilter filter, String lineSeparator, boolean single, boolean bundle, DiffCache cache) {
         this.verbose = verbose;
     	this.aPath = aPath;
         this.bPath = bPath;
@@ -54,6 +83,8 @@ public class DiffOperation {
         this.filter = filter;
         this.lineSeparator = lineSeparator;
         this.single = single;
+        this.bundle = bundle;
+        this.cache = cache;
     }
 
     public static Builder builder() {
@@ -61,83 +92,391 @@ public class DiffOperation {
     }
     
     public boolean doDiff() throws IOException {
-        FileCollector patches = new FileCollector();
         DiffSummary summary = new DiffSummary();
+        this.summary = summary;
         //Base path and patch path are both singular files.
         if (aPath.isFile() && bPath.isFile()) {
-            List<String> lines = doDiff(summary, aPath.toPath().toString(), bPath.toPath().toString(), aPath.readAllLines(), bPath.readAllLines(), context, autoHeader);
-            boolean changes = false;
-            if (!lines.isEmpty()) {
-                changes = true;
-                try (PrintWriter out = new PrintWriter(outputPath.open())) {
-                    out.println(String.join(lineSeparator, lines) + lineSeparator);
-                }
+            //As for directories, sizes are checked before either file is read or mapped.
+            boolean sizesDiffer = aPath.getType().isPath() && bPath.getType().isPath() && Files.size(aPath.toPath()) != Files.size(bPath.toPath());
+            List<String> aLines = aPath.getType().isPath() ? ByteLines.read(aPath.toPath()) : aPath.readAllLines();
+            List<String> bLines = bPath.getType().isPath() ? ByteLines.read(bPath.toPath()) : bPath.readAllLines();
+            if (!sizesDiffer && sameContent(aLines, bLines)) {
+                summary.unchangedFiles++;
+                return false;
             }
-            return changes;
-        } else if (!aPath.isFile() && !bPath.isFile()) {
-            //Both inputs are directories.
-            Map<String, Path> aIndex = indexChildren(aPath.toPath());
-            Map<String, Path> bIndex = indexChildren(bPath.toPath());
-            List<String> diff = doDiff(patches, summary, aIndex.keySet(), bIndex.keySet(), e -> Files.readAllLines(aIndex.get(e)), e -> Files.readAllLines(bIndex.get(e)), context, autoHeader);
-            if(single) {
-            	Files.deleteIfExists(outputPath.toPath());
-            	if(!diff.isEmpty()) {
-                    Files.write(makeParentDirs(outputPath.toPath()), diff);
-                	return true;
-            	}
-            	return false;
+            //Malformed UTF-8 counts as binary, so nothing is decoded with replacement characters.
+            if (isBinary(aLines) || isBinary(bLines)) {
+                verbose("%s\n Binary file, skipped.", bPath);
+                summary.binaryFiles++;
+                return false;
             }
-        } else {
+            PatchFile patchFile = makePatchFile(summary, aPath.toPath().toString(), bPath.toPath().toString(), aLines, bLines, context);
+            if (patchFile == null) {
+                return false;
+            }
+            try (PatchWriter out = new PatchWriter(new BufferedWriter(new OutputStreamWriter(outputPath.open(), StandardCharsets.UTF_8)), lineSeparator)) {
+                out.write(patchFile, autoHeader);
+            }
+            return true;
+        } else if (aPath.isFile() || bPath.isFile()) {
         	//Inputs are a directory and a file
         	return false;
         }
-        boolean changes = false;
-        if (!patches.isEmpty()) {
-            changes = true;
-            if (Files.exists(outputPath.toPath())) {
-                Utils.deleteFolder(outputPath.toPath());
+
+        //Both inputs are directories or archives.
+        try (ArchiveReader aArchive = aPath.getType().isArchive() ? aPath.openArchive() : null;
+             ArchiveReader bArchive = bPath.getType().isArchive() ? bPath.openArchive() : null) {
+            Map<String, Path> aIndex = aArchive == null ? indexChildren(aPath.toPath(), filter) : null;
+            Map<String, Path> bIndex = bArchive == null ? indexChildren(bPath.toPath(), filter) : null;
+            Set<String> aEntries = aArchive != null ? aArchive.getEntries() : aIndex.keySet();
+            Set<String> bEntries = bArchive != null ? bArchive.getEntries() : bIndex.keySet();
+            LinesReader aFunc = aArchive != null ? aArchive::readLines : LinesReader.ofFiles(aIndex::get);
+            LinesReader bFunc = bArchive != null ? bArchive::readLines : LinesReader.ofFiles(bIndex::get);
+            return writeDiff(summary, aEntries, bEntries, aFunc, bFunc);
+        }
+    }
+
+    private boolean writeDiff(DiffSummary summary, Set<String> aEntries, Set<String> bEntries, LinesReader aFunc, LinesReader bFunc) throws IOException {
+        if (single) {
+            Path output = outputPath.toPath();
+            boolean changes;
+            try (PatchWriter out = new PatchWriter(Files.newBufferedWriter(makeParentDirs(output)), lineSeparator)) {
+                changes = doDiff(summary, aEntries, bEntries, aFunc, bFunc, context, (file, patchFile) -> out.write(patchFile, autoHeader));
+            }
+            if (!changes) {
+                Files.delete(output);
+            }
+            return changes;
+        }
+        if (bundle || outputPath.getType().isArchive()) {
+            //Bundles are keyed by the patched file, archives hold the same entries as a patch folder.
+            String suffix = bundle ? "" : ".patch";
+            boolean changes;
+            try (ArchiveWriter writer = bundle ? PatchBundle.create(outputPath.toPath()) : outputPath.openArchive()) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                PatchWriter out = new PatchWriter(new OutputStreamWriter(bos, StandardCharsets.UTF_8), lineSeparator);
+                changes = doDiff(summary, aEntries, bEntries, aFunc, bFunc, context, (file, patchFile) -> {
+                    bos.reset();
+                    out.write(patchFile, autoHeader);
+                    out.flush();
+                    writer.putEntry(file + suffix, bos.toByteArray());
+                });
             }
-            for (Map.Entry<String, List<String>> entry : patches.get().entrySet()) {
-                Path path = outputPath.toPath().resolve(entry.getKey());
-                Files.write(makeParentDirs(path), entry.getValue());
+            //An empty archive is still a valid result, and may have been streamed already.
+            if (!changes && bundle) {
+                Files.delete(outputPath.toPath());
             }
+            return changes;
         }
+
+        //The output folder is only cleared once there is something to replace it with.
+        Path output = outputPath.toPath();
+        boolean[] cleared = { false };
+        return doDiff(summary, aEntries, bEntries, aFunc, bFunc, context, (file, patchFile) -> {
+            if (!cleared[0]) {
+                cleared[0] = true;
+                if (Files.exists(output)) {
+                    Utils.deleteFolder(output);
+                }
+            }
+            writePatch(output, file, patchFile);
+        });
+    }
+
+    /**
+     * Updates an existing patch directory for only the given files, everything else in it is left untouched.
+     * <p>
+     * Neither input is indexed, each file is looked up directly. Files with changes have their
+     * patch rewritten, any existing patch for a file without changes is deleted.
+     *
+     * @param files The changed files, relative to both inputs. Paths are normalized, any which
+     *              would escape the inputs or output are rejected before anything is updated.
+     * @return If any of the files have changes.
+     */
+    public boolean updateDiff(Collection<String> files) throws IOException {
+        checkIncremental();
+        DiffSummary summary = new DiffSummary();
         this.summary = summary;
+        Path aRoot = aPath.toPath();
+        Path bRoot = bPath.toPath();
+        Path output = outputPath.toPath();
+
+        SortedSet<String> changed = new TreeSet<>();
+        SortedSet<String> aEntries = new TreeSet<>();
+        SortedSet<String> bEntries = new TreeSet<>();
+        for (String file : files) {
+            changed.add(normalizeRelative(file));
+        }
+        for (String file : changed) {
+            if (Files.isRegularFile(resolveChild(aRoot, file))) {
+                aEntries.add(file);
+            }
+            if (Files.isRegularFile(resolveChild(bRoot, file))) {
+                bEntries.add(file);
+            }
+        }
+        Set<String> written = new HashSet<>();
+        boolean changes = doDiff(summary, aEntries, bEntries, LinesReader.ofFiles(e -> resolveChild(aRoot, e)), LinesReader.ofFiles(e -> resolveChild(bRoot, e)), context, (file, patchFile) -> {
+            written.add(file);
+            writePatch(output, file, patchFile);
+        });
+        for (String file : changed) {
+            if (!written.contains(file)) {
+                deletePatch(output, file);
+            }
+        }
         return changes;
     }
 
-    public List<String> doDiff(FileCollector patches, DiffSummary summary, Set<String> aEntries, Set<String> bEntries, LinesReader aFunc, LinesReader bFunc, int context, boolean autoHeader) {
-        Set<String> files = new HashSet<>(aEntries);
-        files.addAll(bEntries);
-        String aPrefix = this.aPrefix == null ? "" : StringUtils.appendIfMissing(this.aPrefix.isEmpty() ? "a" : this.aPrefix, "/");
-        String bPrefix = this.bPrefix == null ? "" : StringUtils.appendIfMissing(this.bPrefix.isEmpty() ? "b" : this.bPrefix, "/");
+    /**
+     * Creates a watcher which keeps the patch directory up to date as the modified directory changes.
+     *
+     * @param debounce How long, in milliseconds, no events must arrive for before the patch directory is updated.
+     * @param listener Notified after each update, may be null.
+     * @return The watcher, see {@link DiffWatcher#run}.
+     */
+    public DiffWatcher watch(long debounce, DiffWatcher.Listener listener) throws IOException {
+        checkIncremental();
+        return new DiffWatcher(this, aPath.toPath(), bPath.toPath(), outputPath.toPath(), filter, debounce, listener);
+    }
 
+    private void checkIncremental() {
+        if (!aPath.getType().isPath() || !bPath.getType().isPath() || aPath.isFile() || bPath.isFile()) {
+            throw new IllegalStateException("Both inputs must be directories.");
+        }
+        if (single || bundle || !outputPath.getType().isPath()) {
+            throw new IllegalStateException("Output must be a patch directory.");
+        }
+    }
+
+    /**
+     * Normalizes a path to '/' separators without leading, empty or '.' segments.
+     *
+     * @throws IOException If the path is empty, absolute or has a '..' segment.
+     */
+    private static String normalizeRelative(String file) throws IOException {
+        List<String> segments = new ArrayList<>();
+        for (String segment : file.replace('\\', '/').split("/")) {
+            if (segment.equals("..")) {
+                throw new IOException("Path escapes its root: " + file);
+            }
+            if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.add(segment);
+            }
+        }
+        if (segments.isEmpty()) {
+            throw new IOException("Empty path: " + file);
+        }
+        return checkRelative(String.join("/", segments));
+    }
+
+    private void writePatch(Path output, String file, PatchFile patchFile) throws IOException {
+        try (PatchWriter out = new PatchWriter(Files.newBufferedWriter(makeParentDirs(resolveChild(output, file + ".patch"))), lineSeparator)) {
+            out.write(patchFile, autoHeader);
+        }
+    }
+
+    /**
+     * Deletes the patch for a file, along with any directories it leaves empty.
+     */
+    private static void deletePatch(Path output, String file) throws IOException {
+        Path patch = resolveChild(output, file + ".patch");
+        if (!Files.deleteIfExists(patch)) {
+            return;
+        }
+        Path dir = patch.getParent();
+        while (!dir.equals(output) && dir.startsWith(output)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                if (stream.iterator().hasNext()) {
+                    break;
+                }
+            }
+            Files.delete(dir);
+            dir = dir.getParent();
+        }
+    }
+
+    public List<String> doDiff(FileCollector patches, DiffSummary summary, Set<String> aEntries, Set<String> bEntries, LinesReader aFunc, LinesReader bFunc, int context, boolean autoHeader) {
         List<String> allPatchLines = new ArrayList<>();
-        for (String file : files) {
-        	if(!filter.apply(file)) {
-        		continue;
-        	}
+        try {
+            doDiff(summary, aEntries, bEntries, aFunc, bFunc, context, (file, patchFile) -> {
+                List<String> patchLines = patchFile.toLines(autoHeader);
+                allPatchLines.addAll(patchLines);
+                patches.consume(file + ".patch", patchLines);
+            });
+        } catch (IOException e) {
+            //Collecting never throws.
+            throw new UncheckedIOException(e);
+        }
+        return allPatchLines;
+    }
+
+    /**
+     * Diffs all entries, in order of their path.
+     * Each changed file is passed to the consumer as soon as it has been diffed, nothing is retained.
+     * <p>
+     * Files are read, diffed and consumed in a {@link Pipeline}, so reading the next files
+     * and writing the last patches overlaps with diffing. The readers and consumer each run on their own thread.
+     * <p>
+     * Entries are merge joined, sets which are already sorted by path are not copied.
+     *
+     * @return If any files changed.
+     */
+    public boolean doDiff(DiffSummary summary, Set<String> aEntries, Set<String> bEntries, LinesReader aFunc, LinesReader bFunc, int context, PatchConsumer consumer) throws IOException {
+        boolean[] changes = { false };
+        Pipeline.run(join(aEntries, bEntries), Pipeline.DEFAULT_CAPACITY, entry -> {
+            boolean sizesDiffer = false;
             try {
-            	boolean hasA = aEntries.contains(file);
-            	boolean hasB = bEntries.contains(file);
-                String aName = hasA ? aPrefix + StringUtils.removeStart(file, "/") : null;
-                String bName = hasB ? bPrefix + StringUtils.removeStart(file, "/") : null;
-                List<String> aLines = hasA ? aFunc.apply(file) : Collections.emptyList();
-                List<String> bLines = hasB ? bFunc.apply(file) : Collections.emptyList();
-                List<String> patchLines = doDiff(summary, aName, bName, aLines, bLines, context, autoHeader);
-                if (!patchLines.isEmpty()) {
-                	allPatchLines.addAll(patchLines);
-            		patches.consume(file + ".patch", patchLines);
+                if (entry.aName != null && entry.bName != null) {
+                    //Sizes are checked before either file is read or mapped.
+                    long aSize = aFunc.size(entry.file);
+                    long bSize = bFunc.size(entry.file);
+                    sizesDiffer = aSize >= 0 && bSize >= 0 && aSize != bSize;
                 }
+                entry.aLines = entry.aName != null ? aFunc.apply(entry.file) : Collections.emptyList();
+                entry.bLines = entry.bName != null ? bFunc.apply(entry.file) : Collections.emptyList();
             } catch (IOException e) {
-                verbose("Failed to read file: %s", file);
+                verbose("Failed to read file: %s", entry.file);
+                return null;
+            }
+            //Most files are untouched, compare their bytes before splitting any lines.
+            entry.unchanged = entry.aName != null && entry.bName != null && !sizesDiffer && sameContent(entry.aLines, entry.bLines);
+            entry.binary = !entry.unchanged && (isBinary(entry.aLines) || isBinary(entry.bLines));
+            return entry;
+        }, entry -> {
+            if (entry.unchanged) {
+                verbose("%s -> %s\n No changes.", entry.aName, entry.bName);
+                summary.unchangedFiles++;
+                return null;
+            }
+            if (entry.binary) {
+                verbose("%s\n Binary file, skipped.", entry.file);
+                summary.binaryFiles++;
+                return null;
+            }
+            PatchFile patchFile = cache != null ? makeCachedPatchFile(summary, entry.file, entry.aName, entry.bName, entry.aLines, entry.bLines, context) : makePatchFile(summary, entry.aName, entry.bName, entry.aLines, entry.bLines, context);
+            if (patchFile == null) {
+                return null;
+            }
+            changes[0] = true;
+            return Pair.of(entry.file, patchFile);
+        }, e -> consumer.accept(e.getLeft(), e.getRight()));
+        return changes[0];
+    }
+
+    /**
+     * Lazily merge joins the entries of both sides, dropping files the filter rejects.
+     * Entries are only referenced by the pipeline, so each is released once it has been written.
+     */
+    private Iterable<DiffEntry> join(Set<String> aEntries, Set<String> bEntries) {
+        String aPrefix = this.aPrefix == null ? "" : StringUtils.appendIfMissing(this.aPrefix.isEmpty() ? "a" : this.aPrefix, "/");
+        String bPrefix = this.bPrefix == null ? "" : StringUtils.appendIfMissing(this.bPrefix.isEmpty() ? "b" : this.bPrefix, "/");
+        return () -> new Iterator<DiffEntry>() {
+            private final Iterator<String> aIt = sorted(aEntries).iterator();
+            private final Iterator<String> bIt = sorted(bEntries).iterator();
+            private String aNext = aIt.hasNext() ? aIt.next() : null;
+            private String bNext = bIt.hasNext() ? bIt.next() : null;
+            private DiffEntry next = advance();
+
+            private DiffEntry advance() {
+                while (aNext != null || bNext != null) {
+                    int cmp = aNext == null ? 1 : bNext == null ? -1 : aNext.compareTo(bNext);
+                    String file = cmp <= 0 ? aNext : bNext;
+                    boolean hasA = cmp <= 0;
+                    boolean hasB = cmp >= 0;
+                    if (hasA) {
+                        aNext = aIt.hasNext() ? aIt.next() : null;
+                    }
+                    if (hasB) {
+                        bNext = bIt.hasNext() ? bIt.next() : null;
+                    }
+                    if (!filter.apply(file)) {
+                        continue;
+                    }
+                    String aName = hasA ? aPrefix + StringUtils.removeStart(file, "/") : null;
+                    String bName = hasB ? bPrefix + StringUtils.removeStart(file, "/") : null;
+                    return new DiffEntry(file, aName, bName);
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
             }
+
+            @Override
+            public DiffEntry next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                DiffEntry entry = next;
+                next = advance();
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Diffs a single file through the {@link DiffCache}, only files without a cache entry are diffed.
+     *
+     * @return The PatchFile, or null if there are no changes.
+     */
+    private PatchFile makeCachedPatchFile(DiffSummary summary, String file, String aName, String bName, List<String> aLines, List<String> bLines, int context) {
+        String key = DiffCache.key(aName, bName, aLines, bLines, context, autoHeader);
+        DiffCache.Entry entry = null;
+        try {
+            entry = cache.get(key);
+        } catch (IOException e) {
+            verbose("Failed to read cache entry for: %s", file);
         }
-        return allPatchLines;
+        if (entry != null) {
+            verbose("%s -> %s\n Cached.", aName, bName);
+            summary.add(entry.summary);
+            return entry.lines.isEmpty() ? null : PatchFile.fromLinesSingle(file, entry.lines, false);
+        }
+
+        entry = new DiffCache.Entry();
+        PatchFile patchFile = makePatchFile(entry.summary, aName, bName, aLines, bLines, context);
+        if (patchFile != null) {
+            entry.lines = patchFile.toLines(autoHeader);
+        }
+        summary.add(entry.summary);
+        try {
+            cache.put(key, entry);
+        } catch (IOException e) {
+            verbose("Failed to write cache entry for: %s", file);
+        }
+        return patchFile;
+    }
+
+    private static boolean sameContent(List<String> aLines, List<String> bLines) {
+        return aLines instanceof ByteLines && bLines instanceof ByteLines && ((ByteLines) aLines).contentEquals((ByteLines) bLines);
+    }
+
+    private static boolean isBinary(List<String> lines) {
+        return lines instanceof ByteLines && ((ByteLines) lines).isBinary();
+    }
+
+    private static SortedSet<String> sorted(Set<String> entries) {
+        if (entries instanceof SortedSet && ((SortedSet<String>) entries).comparator() == null) {
+            return (SortedSet<String>) entries;
+        }
+        return new TreeSet<>(entries);
     }
 
     public List<String> doDiff(DiffSummary summary, String aName, String bName, List<String> aLines, List<String> bLines, int context, boolean autoHeader) {
-        PatienceDiffer differ = new PatienceDiffer();
+        PatchFile patchFile = makePatchFile(summary, aName, bName, aLines, bLines, context);
+        return patchFile == null ? Collections.emptyList() : patchFile.toLines(autoHeader);
+    }
+
+    /**
+     * Diffs a single file.
+     *
+     * @return The PatchFile, or null if there are no changes.
+     */
+    public PatchFile makePatchFile(DiffSummary summary, String aName, String bName, List<String> aLines, List<String> bLines, int context) {
+        PatienceDiffer differ = differ(aLines.size() + bLines.size());
         PatchFile patchFile = new PatchFile();
         patchFile.basePath = aName != null ? aName : DEV_NULL;
         patchFile.patchedPath = bName != null ? bName : DEV_NULL;
@@ -149,29 +488,74 @@ public class DiffOperation {
         } else if (bLines.isEmpty()) {
             patchFile.patches = Differ.makeFileRemoved(aLines);
             summary.removedFiles++;
+        } else if (aLines instanceof ByteLines && bLines instanceof ByteLines) {
+            //The common lines are found by hash and compared as bytes, so they are never decoded.
+            ByteLines a = (ByteLines) aLines;
+            ByteLines b = (ByteLines) bLines;
+            patchFile.patches = differ.makePatches(a, b, context, true, (i1, i2) -> a.lineEquals(i1, b, i2));
         } else {
             patchFile.patches = differ.makePatches(aLines, bLines, context, true);
         }
         if (patchFile.patches.isEmpty()) {
             verbose("%s -> %s\n No changes.", aName, bName);
             summary.unchangedFiles++;
-            return Collections.emptyList();
+            return null;
         }
         summary.changedFiles++;
-        long added = patchFile.patches.stream()//
-                .flatMap(e -> e.diffs.stream())//
-                .filter(e -> e.op == Operation.INSERT)//
-                .count();
-        long removed = patchFile.patches.stream()//
-                .flatMap(e -> e.diffs.stream())//
-                .filter(e -> e.op == Operation.DELETE)//
-                .count();
+        long added = 0;
+        long removed = 0;
+        for (Patch patch : patchFile.patches) {
+            added += patch.count(Operation.INSERT);
+            removed += patch.count(Operation.DELETE);
+        }
         summary.addedLines += added;
         summary.removedLines += removed;
         verbose("%s -> %s\n %d Added.\n %d Removed.", aName, bName, added, removed);
-        return patchFile.toLines(autoHeader);
+        return patchFile;
     }
-    
+
+    /**
+     * Gets the differ for a pair of files, it is kept between files so lines interned
+     * by its {@link CharRepresenter} stay warm.
+     *
+     * @param lines The number of lines about to be diffed.
+     */
+    private PatienceDiffer differ(int lines) {
+        if (differ == null || differ.getCharRep().getMaxLineChar() + lines > MAX_INTERNED_LINES) {
+            differ = new PatienceDiffer();
+        }
+        return differ;
+    }
+
+    /**
+     * A file moving through the diff {@link Pipeline}.
+     */
+    private static class DiffEntry {
+
+        private final String file;
+        // Null if the file does not exist on that side.
+        private final String aName;
+        private final String bName;
+        private List<String> aLines;
+        private List<String> bLines;
+        private boolean unchanged;
+        private boolean binary;
+
+        private DiffEntry(String file, String aName, String bName) {
+            this.file = file;
+            this.aName = aName;
+            this.bName = bName;
+        }
+    }
+
+    /**
+     * Receives each changed file from a diff operation.
+     */
+    public interface PatchConsumer {
+
+        void accept(String file, PatchFile patchFile) throws IOException;
+    }
+
     public DiffSummary getSummary() {
     	return summary;
     }
@@ -182,10 +566,21 @@ public class DiffOperation {
         public int addedFiles;
         public int changedFiles;
         public int removedFiles;
+        public int binaryFiles;
 
         public long addedLines;
         public long removedLines;
 
+        public void add(DiffSummary other) {
+            unchangedFiles += other.unchangedFiles;
+            addedFiles += other.addedFiles;
+            changedFiles += other.changedFiles;
+            removedFiles += other.removedFiles;
+            binaryFiles += other.binaryFiles;
+            addedLines += other.addedLines;
+            removedLines += other.removedLines;
+        }
+
         public void print(PrintStream logger, boolean slim) {
             logger.println("Diff Summary:");
             if (!slim) {
@@ -193,6 +588,7 @@ public class DiffOperation {
                 logger.println(" Changed files:   " + changedFiles);
                 logger.println(" Added files:     " + addedFiles);
                 logger.println(" Removed files:   " + removedFiles);
+                logger.println(" Binary files:    " + binaryFiles);
             }
 
             logger.println(" Added lines:     " + addedLines);
@@ -219,6 +615,8 @@ public class DiffOperation {
     	private PathFilter filter = p -> true;
         private String lineSeparator = System.lineSeparator();
         private boolean single;
+        private boolean bundle;
+        private DiffCache cache;
 
         private Builder() {
         }
@@ -228,11 +626,50 @@ public class DiffOperation {
         	return this;
         }
 
+        /**
+         * Only diffs files matching the include globs and none of the exclude globs.
+         * Excluded directories are skipped entirely when indexing, see {@link GlobPathFilter}.
+         *
+         * @param includes The include globs, everything is included if empty.
+         * @param excludes The exclude globs.
+         * @return The same builder.
+         */
+        public Builder filter(Collection<String> includes, Collection<String> excludes) {
+            return filter(new GlobPathFilter(includes, excludes));
+        }
+
         public Builder singleDiff(boolean single) {
         	this.single = single;
         	return this;
         }
 
+        /**
+         * Writes all patches into a single {@link PatchBundle} file instead of a directory.
+         *
+         * @param bundle If the output should be a bundle.
+         * @return The same builder.
+         */
+        public Builder bundle(boolean bundle) {
+            this.bundle = bundle;
+            return this;
+        }
+
+        /**
+         * Caches the patch generated for each file, keyed by the content of both
+         * files, their names and the output settings.
+         *
+         * @param cache The cache, may be shared between operations.
+         * @return The same builder.
+         */
+        public Builder cache(DiffCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public Builder cache(Path cacheDir, long maxSize) {
+            return cache(new DiffCache(Objects.requireNonNull(cacheDir), maxSize));
+        }
+
         public Builder lineSeparator(String lineSeparator) {
         	this.lineSeparator = Objects.requireNonNull(lineSeparator);
         	return this;
@@ -320,7 +757,7 @@ public class DiffOperation {
             if (outputPath == null) {
                 throw new IllegalStateException("output not set.");
             }
-            return new DiffOperation(verbose, aPath, bPath, aPrefix, bPrefix, autoHeader, context, outputPath, filter, lineSeparator, single);
+            return new DiffOperation(verbose, aPath, bPath, aPrefix, bPrefix, autoHeader, context, outputPath, filter, lineSeparator, single, bundle, cache);
         }
 
     }
@@ -0,0 +1,204 @@
+package codechicken.diffpatch;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import codechicken.diffpatch.DiffOperation.DiffSummary;
+import codechicken.diffpatch.util.StringUtils;
+
+/**
+ * Watches the modified directory of a {@link DiffOperation}, keeping its patch directory up to date.
+ * <p>
+ * Events are debounced, once no events have arrived for the debounce time all files touched
+ * since the last update are passed to {@link DiffOperation#updateDiff}. The same DiffOperation is
+ * used for every update, so its differ and cache stay warm between events. If the WatchService
+ * overflows, the whole tree is diffed again.
+ * <p>
+ * The base directory is expected to stay unchanged while watching.
+ */
+public class DiffWatcher implements Closeable {
+
+    private final DiffOperation operation;
+    private final Path aRoot;
+    private final Path bRoot;
+    private final Path output;
+    private final PathFilter filter;
+    private final long debounce;
+    private final Listener listener;
+
+    private final WatchService service;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    DiffWatcher(DiffOperation operation, Path aRoot, Path bRoot, Path output, PathFilter filter, long debounce, Listener listener) throws IOException {
+        this.operation = operation;
+        this.aRoot = aRoot;
+        this.bRoot = bRoot;
+        this.output = output;
+        this.filter = filter;
+        this.debounce = debounce;
+        this.listener = listener;
+        service = bRoot.getFileSystem().newWatchService();
+        register(bRoot, null);
+    }
+
+    /**
+     * Watches until this watcher is closed or the thread is interrupted.
+     * <p>
+     * The patch directory is expected to already be up to date, changes made before this is called are not picked up.
+     */
+    public void run() throws IOException, InterruptedException {
+        SortedSet<String> changed = new TreeSet<>();
+        boolean overflow = false;
+        while (true) {
+            WatchKey key;
+            try {
+                key = changed.isEmpty() && !overflow ? service.take() : service.poll(debounce, TimeUnit.MILLISECONDS);
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            if (key == null) {
+                //Quiet for the debounce time, flush the burst.
+                update(changed, overflow);
+                changed = new TreeSet<>();
+                overflow = false;
+                continue;
+            }
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                if (dir == null || overflow) {
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                String file = relativize(bRoot, path);
+                changed.add(file);
+                if (event.kind() != ENTRY_MODIFY) {
+                    //A directory may have been created, deleted or moved, expand it to the files it held.
+                    collect(changed, path, file);
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    private void update(Set<String> changed, boolean overflow) throws IOException {
+        boolean changes;
+        if (overflow) {
+            //Directories created during the overflow were missed.
+            register(bRoot, null);
+            changes = operation.doDiff();
+        } else {
+            changes = operation.updateDiff(changed);
+        }
+        if (listener != null) {
+            listener.onUpdate(overflow ? null : changed, changes, operation.getSummary());
+        }
+    }
+
+    private void collect(Set<String> changed, Path path, String file) throws IOException {
+        if (Files.isDirectory(path)) {
+            register(path, changed);
+        }
+        collectFiles(changed, aRoot.resolve(file), aRoot, "");
+        collectFiles(changed, output.resolve(file), output, ".patch");
+    }
+
+    private static void collectFiles(Set<String> changed, Path dir, Path root, String suffix) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(dir)) {
+            stream.filter(Files::isRegularFile).forEach(e -> {
+                String file = relativize(root, e);
+                if (file.endsWith(suffix)) {
+                    changed.add(file.substring(0, file.length() - suffix.length()));
+                }
+            });
+        }
+    }
+
+    /**
+     * Registers a directory and all directories under it.
+     *
+     * @param changed If not null, all files found are added, as they may have been created before the directory was registered.
+     */
+    private void register(Path root, Set<String> changed) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(bRoot) && filter != null && !filter.applyDirectory(relativize(bRoot, dir))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                try {
+                    keys.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                } catch (NoSuchFileException e) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                //Deleted while walking, its delete event is still delivered.
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (changed != null) {
+                    changed.add(relativize(bRoot, file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String relativize(Path root, Path path) {
+        return StringUtils.removeStart(root.relativize(path).toString().replace('\\', '/'), "/");
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    /**
+     * Notified after each update of the patch directory.
+     */
+    public interface Listener {
+
+        /**
+         * @param files   The files which were diffed, or null if the whole tree was diffed.
+         * @param changes If any of the files have changes.
+         * @param summary The summary of the update.
+         */
+        void onUpdate(Set<String> files, boolean changes, DiffSummary summary);
+    }
+}
@@ -0,0 +1,19 @@
+package codechicken.diffpatch;
+
+/**
+ * Controls how far patching continues after a hunk is rejected.
+ */
+public enum FailFast {
+    /**
+     * Attempt every hunk of every file.
+     */
+    NEVER,
+    /**
+     * Stop patching a file at its first rejected hunk, the hunks after it are rejected without being attempted.
+     */
+    FILE,
+    /**
+     * Stop the entire operation at the first rejected hunk.
+     */
+    OPERATION;
+}
@@ -0,0 +1,226 @@
+package codechicken.diffpatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A {@link PathFilter} compiled from include and exclude globs.
+ * <p>
+ * A path passes if it matches any include, or there are no includes, and matches no exclude.
+ * Globs are matched per '/' separated segment, {@code *} and {@code ?} match within
+ * a segment and a {@code **} segment matches any number of segments. A glob which matches
+ * a directory also matches everything under it, so {@code com/example} includes the whole package.
+ * <p>
+ * All globs are compiled into a single trie of segments, shared prefixes are only
+ * matched once and literal segments are a single map lookup. The trie can also tell if
+ * anything under a directory could pass, see {@link #applyDirectory}.
+ */
+public class GlobPathFilter implements PathFilter {
+
+    private final Node includes;
+    private final Node excludes;
+
+    public GlobPathFilter(Collection<String> includes, Collection<String> excludes) {
+        this.includes = includes.isEmpty() ? null : compile(includes);
+        this.excludes = compile(excludes);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean apply(String path) {
+        String[] segments = split(path);
+        return (includes == null || matches(includes, segments, false)) && !matches(excludes, segments, false);
+    }
+
+    @Override
+    public boolean applyDirectory(String dir) {
+        String[] segments = split(dir);
+        return (includes == null || matches(includes, segments, true)) && !matches(excludes, segments, false);
+    }
+
+    /**
+     * Runs the trie over the segments, tracking every node which could still match.
+     *
+     * @param partial If a path which could continue to a match also counts.
+     */
+    private static boolean matches(Node root, String[] segments, boolean partial) {
+        List<Node> active = new ArrayList<>();
+        List<Node> next = new ArrayList<>();
+        addClosure(active, root);
+        for (String segment : segments) {
+            for (Node node : active) {
+                if (node.terminal) {
+                    //A parent directory matched.
+                    return true;
+                }
+            }
+            next.clear();
+            for (Node node : active) {
+                if (node.anySegments) {
+                    addClosure(next, node);
+                }
+                Node literal = node.literals.get(segment);
+                if (literal != null) {
+                    addClosure(next, literal);
+                }
+                for (Map.Entry<String, Node> glob : node.globs.entrySet()) {
+                    if (matchSegment(glob.getKey(), segment)) {
+                        addClosure(next, glob.getValue());
+                    }
+                }
+            }
+            if (next.isEmpty()) {
+                return false;
+            }
+            List<Node> swap = active;
+            active = next;
+            next = swap;
+        }
+        if (partial) {
+            return !active.isEmpty();
+        }
+        for (Node node : active) {
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addClosure(List<Node> nodes, Node node) {
+        //Node lists are tiny, a linear scan beats hashing.
+        while (node != null && !nodes.contains(node)) {
+            nodes.add(node);
+            node = node.anyDepth;
+        }
+    }
+
+    /**
+     * Matches a single segment against a glob of {@code *} and {@code ?}.
+     */
+    static boolean matchSegment(String glob, String segment) {
+        int g = 0;
+        int s = 0;
+        int star = -1;
+        int starMatch = 0;
+        while (s < segment.length()) {
+            char c = g < glob.length() ? glob.charAt(g) : 0;
+            if (g < glob.length() && (c == '?' || c == segment.charAt(s)) && c != '*') {
+                g++;
+                s++;
+            } else if (c == '*') {
+                star = g++;
+                starMatch = s;
+            } else if (star >= 0) {
+                g = star + 1;
+                s = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    private static Node compile(Collection<String> globs) {
+        Node root = new Node();
+        for (String glob : globs) {
+            String[] segments = split(glob);
+            if (segments.length == 0) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.equals("**")) {
+                    if (i > 0 && segments[i - 1].equals("**")) {
+                        continue;
+                    }
+                    if (node.anyDepth == null) {
+                        node.anyDepth = new Node();
+                        node.anyDepth.anySegments = true;
+                    }
+                    node = node.anyDepth;
+                } else if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0) {
+                    node = node.globs.computeIfAbsent(segment, e -> new Node());
+                } else {
+                    node = node.literals.computeIfAbsent(segment, e -> new Node());
+                }
+            }
+            node.terminal = true;
+        }
+        return root;
+    }
+
+    private static String[] split(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (start == end) {
+            return new String[0];
+        }
+        return path.substring(start, end).split("/+");
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> literals = new HashMap<>();
+        private final Map<String, Node> globs = new LinkedHashMap<>();
+        // The node after a '**' segment.
+        private Node anyDepth;
+        // If this node is after a '**' segment, and so matches any segment itself.
+        private boolean anySegments;
+        private boolean terminal;
+    }
+
+    public static class Builder {
+
+        private final List<String> includes = new ArrayList<>();
+        private final List<String> excludes = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder include(String... globs) {
+            return include(Arrays.asList(globs));
+        }
+
+        public Builder include(Collection<String> globs) {
+            for (String glob : globs) {
+                includes.add(Objects.requireNonNull(glob));
+            }
+            return this;
+        }
+
+        public Builder exclude(String... globs) {
+            return exclude(Arrays.asList(globs));
+        }
+
+        public Builder exclude(Collection<String> globs) {
+            for (String glob : globs) {
+                excludes.add(Objects.requireNonNull(glob));
+            }
+            return this;
+        }
+
+        public GlobPathFilter build() {
+            return new GlobPathFilter(includes, excludes);
+        }
+    }
+}
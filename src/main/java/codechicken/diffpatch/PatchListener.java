@@ -0,0 +1,9 @@
+package codechicken.diffpatch;
+
+import codechicken.diffpatch.patch.Patcher;
+import codechicken.diffpatch.util.PatchFile;
+
+public interface PatchListener {
+
+    void onResult(PatchFile patchFile, int index, Patcher.Result result);
+}
@@ -2,34 +2,55 @@ package codechicken.diffpatch;
 
 import static codechicken.diffpatch.util.Utils.*;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
+import codechicken.diffpatch.cache.PatchCache;
 import codechicken.diffpatch.match.FuzzyLineMatcher;
 import codechicken.diffpatch.patch.Patcher;
-import codechicken.diffpatch.util.Diff;
+import codechicken.diffpatch.util.BinaryPatchFormat;
 import codechicken.diffpatch.util.FileCollector;
 import codechicken.diffpatch.util.InputPath;
 import codechicken.diffpatch.util.LinesReader;
+import codechicken.diffpatch.util.MappedPatchReader;
 import codechicken.diffpatch.util.OutputPath;
+import codechicken.diffpatch.util.PatchBundle;
 import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchFilesReader;
+import codechicken.diffpatch.util.PatchHeader;
 import codechicken.diffpatch.util.PatchMode;
+import codechicken.diffpatch.util.PatchReader;
+import codechicken.diffpatch.util.Pair;
+import codechicken.diffpatch.util.Pipeline;
 import codechicken.diffpatch.util.Utils;
+import codechicken.diffpatch.util.archiver.ArchiveReader;
+import codechicken.diffpatch.util.archiver.ArchiveWriter;
+import codechicken.diffpatch.util.archiver.TarStreamReader;
 
 /**
  * Created by covers1624 on 11/8/20.
@@ -48,8 +69,19 @@ public class PatchOperation {
     private final int maxOffset;
     private final PatchMode mode;
     private final String lineSeparator;
+    private final PatchListener listener;
+    private final FailFast failFast;
+    private final boolean check;
+    private final PatchCache cache;
+    private final boolean series;
+
+    private boolean aborted;
 
     public PatchOperation(boolean verbose, InputPath basePath, InputPath patchesPath, String aPrefix, String bPrefix, OutputPath outputPath, OutputPath rejectsPath, float minFuzz, int maxOffset, PatchMode mode, String lineSeparator) {
+        this(verbose, basePath, patchesPath, aPrefix, bPrefix, outputPath, rejectsPath, minFuzz, maxOffset, mode, lineSeparator, null, FailFast.NEVER, false, null, false);
+    }
+
+    public PatchOperation(boolean verbose, InputPath basePath, InputPath patchesPath, String aPrefix, String bPrefix, OutputPath outputPath, OutputPath rejectsPath, float minFuzz, int maxOffset, PatchMode mode, String lineSeparator, PatchListener listener, FailFast failFast, boolean check, PatchCache cache, boolean series) {
         this.verbose = verbose;
         this.basePath = basePath;
         this.patchesPath = patchesPath;
@@ -61,6 +93,11 @@ public class PatchOperation {
         this.maxOffset = maxOffset;
         this.mode = mode;
         this.lineSeparator = lineSeparator;
+        this.listener = listener;
+        this.failFast = failFast;
+        this.check = check;
+        this.cache = cache;
+        this.series = series;
     }
 
     public static Builder builder() {
@@ -78,14 +115,25 @@ public class PatchOperation {
         FileCollector outputCollector = new FileCollector();
         FileCollector rejectCollector = new FileCollector();
         PatchesSummary summary = new PatchesSummary();
+        aborted = false;
         boolean patchSuccess;
 
         //Base path and patch path are both singular files.
         if (basePath.isFile() && patchesPath.isFile()) {
-            PatchFile patchFile = PatchFile.fromLinesSingle(patchesPath.toString(), patchesPath.readAllLines(), true);
+            List<PatchFile> patchFiles = readPatchFiles(patchesPath);
+            if (patchFiles.size() > 1) {
+                throw new IllegalArgumentException(String.format("Expected a single patch file in '%s', found %d.", patchesPath, patchFiles.size()));
+            }
+            PatchFile patchFile;
+            if (!patchFiles.isEmpty()) {
+                patchFile = patchFiles.get(0);
+            } else {
+                patchFile = new PatchFile();
+                patchFile.name = patchesPath.toString();
+            }
             boolean success = doPatch(outputCollector, rejectCollector, summary, basePath.readAllLines(), patchFile, minFuzz, maxOffset, mode);
 
-            if(outputCollector.getRemoved().isEmpty()) {
+            if(!check && outputCollector.getRemoved().isEmpty()) {
 	            List<String> output = outputCollector.getSingleFile();
 	            List<String> reject = rejectCollector.getSingleFile();
 	            try (PrintWriter out = new PrintWriter(outputPath.open())) {
@@ -102,70 +150,278 @@ public class PatchOperation {
             return success;
         }
 
-        //Base path is a directory
-        Map<String, Path> baseIndex = indexChildren(basePath.toPath());
-        Map<String, Path> patchIndex = indexChildren(patchesPath.toPath());
-        patchSuccess = doPatch(outputCollector, rejectCollector, summary, baseIndex.keySet(), patchIndex.keySet(), e -> Files.readAllLines(baseIndex.get(e)), e -> Files.readAllLines(patchIndex.get(e)), minFuzz, maxOffset, mode);
+        //Base path is a tar stream, entries are patched as they arrive.
+        if (basePath.isStream()) {
+            if (!check && !outputPath.getType().isArchive()) {
+                throw new IllegalStateException("A streamed base can only be patched into an archive.");
+            }
+            try (TarStreamReader base = ((InputPath.TarPipePath) basePath).openStream()) {
+                patchSuccess = withPatches((pEntries, pFunc, hFunc) -> doPatch(rejectCollector, summary, base, pEntries, pFunc));
+            }
+            writeRejects(rejectCollector);
+            this.summary = summary;
+            return patchSuccess;
+        }
 
-        Map<String, byte[]> rawData = new HashMap<>();
-        for (Map.Entry<String, Path> entry : baseIndex.entrySet()) {
-        	rawData.put(entry.getKey(), Files.readAllBytes(entry.getValue()));
+        //Base path is a directory or archive
+        try (ArchiveReader baseArchive = basePath.getType().isArchive() ? basePath.openArchive() : null) {
+            Map<String, Path> baseIndex = baseArchive == null ? indexChildren(basePath.toPath()) : null;
+            Set<String> baseEntries = baseArchive != null ? baseArchive.getEntries() : baseIndex.keySet();
+            LinesReader bFunc = baseArchive != null ? baseArchive::readAllLines : e -> Files.readAllLines(baseIndex.get(e));
+            //Directory outputs are written as each file is patched, archives keep the order of the base.
+            boolean streamed = !check && !outputPath.getType().isArchive();
+            patchSuccess = withPatches((pEntries, pFunc, hFunc) -> {
+                //Entries which only patch missing files are never parsed.
+                PatchPlan plan = plan(baseEntries, pEntries, hFunc);
+                for (PatchHeader header : plan.missing) {
+                    verbose("Missing base file: %s", header.getBasePath(aPrefix));
+                }
+                summary.missingFiles += plan.skipped.size();
+                if (streamed) {
+                    return doPatch(summary, baseArchive, baseIndex, baseEntries, plan.entries, bFunc, pFunc);
+                }
+                return doPatchFiles(outputCollector, rejectCollector, summary, baseEntries, plan.entries, bFunc, pFunc, minFuzz, maxOffset, mode);
+            });
+            if (check || streamed) {
+                this.summary = summary;
+                return patchSuccess;
+            }
+
+            List<String> removed = outputCollector.getRemoved();
+            Map<String, List<String>> outputs = outputCollector.get();
+            try (ArchiveWriter out = outputPath.openArchive()) {
+                //Keep the order of the base, untouched entries are copied as is.
+                for (String entry : baseEntries) {
+                    if (outputs.containsKey(entry)) {
+                        out.putEntry(entry, String.join(lineSeparator, outputs.get(entry)).getBytes(StandardCharsets.UTF_8));
+                    } else if (!removed.contains(entry)) {
+                        if (baseArchive != null) {
+                            out.copyEntry(baseArchive, entry);
+                        } else {
+                            out.putEntry(entry, Files.readAllBytes(baseIndex.get(entry)));
+                        }
+                    }
+                }
+                for (Map.Entry<String, List<String>> entry : new TreeMap<>(outputs).entrySet()) {
+                    if (!baseEntries.contains(entry.getKey())) {
+                        out.putEntry(entry.getKey(), String.join(lineSeparator, entry.getValue()).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            }
         }
-        
-        if (Files.exists(outputPath.toPath())) {
-            Utils.deleteFolder(outputPath.toPath());
+
+        writeRejects(rejectCollector);
+        this.summary = summary;
+        return patchSuccess;
+    }
+
+    /**
+     * Builds a {@link PatchPlan} by scanning only the file headers of each patch, no hunks are parsed or applied.
+     *
+     * @return The plan.
+     */
+    public PatchPlan plan() throws IOException {
+        if (basePath.isStream()) {
+            throw new IllegalStateException("A streamed base can not be planned.");
         }
-        List<String> removed = outputCollector.getRemoved();
-        for (Map.Entry<String, byte[]> entry : rawData.entrySet()) {
-            Path path = outputPath.toPath().resolve(entry.getKey());
-            if(!removed.contains(entry.getKey())) {
-                Files.write(makeParentDirs(path), entry.getValue());
+        if (basePath.isFile()) {
+            return withPatches((pEntries, pFunc, hFunc) -> plan(null, pEntries, hFunc));
+        }
+        if (basePath.getType().isArchive()) {
+            try (ArchiveReader baseArchive = basePath.openArchive()) {
+                return withPatches((pEntries, pFunc, hFunc) -> plan(baseArchive.getEntries(), pEntries, hFunc));
             }
         }
+        Set<String> baseEntries = indexChildren(basePath.toPath()).keySet();
+        return withPatches((pEntries, pFunc, hFunc) -> plan(baseEntries, pEntries, hFunc));
+    }
 
-        for(Map.Entry<String, List<String>> entry : outputCollector.get().entrySet()) {
-            Path path = outputPath.toPath().resolve(entry.getKey());
-            String file = String.join(lineSeparator, entry.getValue());
-            Files.write(makeParentDirs(path), file.getBytes(StandardCharsets.UTF_8));
+    /**
+     * Sorts the headers of all patch entries by what applying them will do.
+     *
+     * @param bEntries The base entries, null if every base path exists.
+     */
+    private PatchPlan plan(Set<String> bEntries, Set<String> pEntries, PatchHeadersReader hFunc) {
+        Map<String, List<PatchHeader>> byEntry = new LinkedHashMap<>();
+        Set<String> addedTargets = new HashSet<>();
+        for (String e : pEntries) {
+            List<PatchHeader> headers = null;
+            try {
+                headers = hFunc.apply(e);
+                for (PatchHeader header : headers) {
+                    if (DEV_NULL.equals(header.getBasePath(aPrefix))) {
+                        addedTargets.add(header.getPatchedPath(bPrefix));
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                //Left for the full read to report.
+            }
+            byEntry.put(e, headers);
         }
 
+        PatchPlan plan = new PatchPlan();
+        for (Map.Entry<String, List<PatchHeader>> entry : byEntry.entrySet()) {
+            if (entry.getValue() == null) {
+                plan.entries.add(entry.getKey());
+                continue;
+            }
+            List<PatchHeader> missing = new ArrayList<>();
+            for (PatchHeader header : entry.getValue()) {
+                String basePath = header.getBasePath(aPrefix);
+                if (DEV_NULL.equals(basePath)) {
+                    plan.added.add(header);
+                } else if (bEntries != null && !bEntries.contains(basePath) && !(series && addedTargets.contains(basePath))) {
+                    missing.add(header);
+                } else if (DEV_NULL.equals(header.getPatchedPath(bPrefix))) {
+                    plan.removed.add(header);
+                } else {
+                    plan.targets.add(header);
+                }
+            }
+            plan.missing.addAll(missing);
+            if (missing.size() == entry.getValue().size()) {
+                plan.skipped.addAll(missing);
+            } else {
+                plan.entries.add(entry.getKey());
+            }
+        }
+        return plan;
+    }
+
+    private void writeRejects(FileCollector rejectCollector) throws IOException {
         if (!rejectsPath.getType().isNull()) {
 
             if (Files.exists(rejectsPath.toPath())) {
                 Utils.deleteFolder(rejectsPath.toPath());
             }
             for (Map.Entry<String, List<String>> entry : rejectCollector.get().entrySet()) {
-                Path path = rejectsPath.toPath().resolve(entry.getKey());
-                String file = String.join(lineSeparator, entry.getValue());
-                Files.write(makeParentDirs(path), file.getBytes(StandardCharsets.UTF_8));
+                writeLines(resolveChild(rejectsPath.toPath(), entry.getKey()), entry.getValue());
             }
         }
-        this.summary = summary;
-        return patchSuccess;
     }
 
-    public boolean doPatch(FileCollector oCollector, FileCollector rCollector, PatchesSummary summary, Set<String> bEntries, Set<String> pEntries, LinesReader bFunc, LinesReader pFunc, float minFuzz, int maxOffset, PatchMode mode) {
+    /**
+     * Opens the patches input and passes its entries, and a reader for them, to the callback.
+     */
+    private <T> T withPatches(PatchesCallback<T> callback) throws IOException {
+        if (patchesPath.getType().isArchive()) {
+            try (ArchiveReader patchArchive = patchesPath.openArchive()) {
+                ScannedPatches scanned = new ScannedPatches(e -> ByteBuffer.wrap(patchArchive.getBytes(e)), "");
+                return callback.apply(patchArchive.getEntries(), scanned::read, scanned::scan);
+            }
+        } else if (patchesPath.getType().isPath() && PatchBundle.isBundle(patchesPath.toPath())) {
+            //Entries are only read when their patch is applied.
+            try (PatchBundle bundle = PatchBundle.open(patchesPath.toPath())) {
+                ScannedPatches scanned = new ScannedPatches(bundle::getEntry, ".patch");
+                return callback.apply(bundle.getEntries(), scanned::read, scanned::scan);
+            }
+        } else if (patchesPath.isFile()) {
+            //A single file holding patches for many files.
+            List<PatchFile> patchFiles = readPatchFiles(patchesPath);
+            Set<String> pEntries = Collections.singleton(patchFiles.isEmpty() ? "" : patchFiles.get(0).name);
+            return callback.apply(pEntries, e -> patchFiles, e -> PatchHeader.of(patchFiles));
+        }
+        Map<String, Path> patchIndex = indexChildren(patchesPath.toPath());
+        ScannedPatches scanned = new ScannedPatches(e -> MappedPatchReader.map(patchIndex.get(e)), "");
+        return callback.apply(patchIndex.keySet(), scanned::read, scanned::scan);
+    }
+
+    private interface PatchesCallback<T> {
+
+        T apply(Set<String> pEntries, PatchFilesReader pFunc, PatchHeadersReader hFunc) throws IOException;
+    }
+
+    private interface PatchHeadersReader {
+
+        List<PatchHeader> apply(String entry) throws IOException;
+    }
+
+    /**
+     * Keeps the buffer of each entry scanned for the plan until it is parsed, so each entry is only read once.
+     */
+    private static class ScannedPatches {
+
+        private final Map<String, ByteBuffer> buffers = new HashMap<>();
+        private final ThrowingFunction<String, ByteBuffer, IOException> reader;
+        private final String suffix;
+
+        private ScannedPatches(ThrowingFunction<String, ByteBuffer, IOException> reader, String suffix) {
+            this.reader = reader;
+            this.suffix = suffix;
+        }
+
+        private List<PatchHeader> scan(String entry) throws IOException {
+            ByteBuffer buffer = reader.apply(entry);
+            buffers.put(entry, buffer);
+            return PatchHeader.scan(entry + suffix, buffer.duplicate());
+        }
+
+        private List<PatchFile> read(String entry) throws IOException {
+            ByteBuffer buffer = buffers.remove(entry);
+            return readPatchFiles(entry + suffix, buffer != null ? buffer : reader.apply(entry));
+        }
+    }
+
+    /**
+     * Reads all PatchFiles from the given input, either unified diff text or {@link BinaryPatchFormat}.
+     */
+    private static List<PatchFile> readPatchFiles(InputPath input) throws IOException {
+        if (input.getType().isPath()) {
+            return readPatchFiles(input.getName(), input.toPath());
+        }
+        //Pipes can only be read once, peek at the header to pick the format.
+        BufferedInputStream is = new BufferedInputStream(input.open());
+        byte[] header = new byte[4];
+        is.mark(header.length);
+        int len = is.read(header);
+        is.reset();
+        String name = input.toString();
+        if (len > 0 && BinaryPatchFormat.isBinary(ByteBuffer.wrap(header, 0, len))) {
+            return BinaryPatchFormat.read(name, ByteBuffer.wrap(Utils.toBytes(is)));
+        }
         List<PatchFile> patchFiles = new ArrayList<>();
-        pEntries.stream().forEach(e -> {
-        	try {
-				patchFiles.addAll(PatchFile.fromLines(e, pFunc.apply(e), true));
-			} catch (IOException e1) {
-	            verbose("Failed to read patch file: %s", e);
-			}
-        });
-        
+        PatchReader.parse(name, new InputStreamReader(is, StandardCharsets.UTF_8), true, patchFiles::add);
+        return patchFiles;
+    }
+
+    private static List<PatchFile> readPatchFiles(String name, Path path) throws IOException {
+        return readPatchFiles(name, MappedPatchReader.map(path));
+    }
+
+    private static List<PatchFile> readPatchFiles(String name, ByteBuffer buffer) {
+        if (BinaryPatchFormat.isBinary(buffer)) {
+            return BinaryPatchFormat.read(name, buffer);
+        }
+        return MappedPatchReader.read(name, buffer, true);
+    }
+
+    public boolean doPatch(FileCollector oCollector, FileCollector rCollector, PatchesSummary summary, Set<String> bEntries, Set<String> pEntries, LinesReader bFunc, LinesReader pFunc, float minFuzz, int maxOffset, PatchMode mode) {
+        PatchFilesReader patchesFunc = e -> PatchFile.fromLines(e, pFunc.apply(e), true);
+        return doPatchFiles(oCollector, rCollector, summary, bEntries, pEntries, bFunc, patchesFunc, minFuzz, maxOffset, mode);
+    }
+
+    public boolean doPatchFiles(FileCollector oCollector, FileCollector rCollector, PatchesSummary summary, Set<String> bEntries, Set<String> pEntries, LinesReader bFunc, PatchFilesReader pFunc, float minFuzz, int maxOffset, PatchMode mode) {
+        List<PatchFile> patchFiles = readPatchFiles(pEntries, pFunc);
         boolean result = true;
 
         //TODO add summary and rejects
-        for (PatchFile patch : patchFiles) {
+        for (List<PatchFile> patches : groupSeries(patchFiles)) {
+            if (aborted) {
+                break;
+            }
+            PatchFile patch = patches.get(0);
         	String basePath = patch.getBasePath(aPrefix);
         	try {
         		if(!DEV_NULL.equals(basePath) && !bEntries.contains(basePath)) {
-        			summary.missingFiles++;
+        			summary.missingFiles += patches.size();
         			continue;
         		}
 	            List<String> lines = DEV_NULL.equals(basePath) ? Collections.emptyList() : bFunc.apply(basePath);
-	            result &= doPatch(oCollector, rCollector, summary, lines, patch, minFuzz, maxOffset, mode);
+	            if (patches.size() == 1) {
+	                result &= doPatch(oCollector, rCollector, summary, lines, patch, minFuzz, maxOffset, mode);
+	            } else {
+	                result &= doPatch(oCollector, rCollector, summary, lines, patches, minFuzz, maxOffset, mode);
+	            }
 	        } catch (IOException e) {
 	            verbose("Failed to read file: %s", basePath);
 	        }
@@ -174,70 +430,413 @@ public class PatchOperation {
         return result;
     }
 
-    public boolean doPatch(FileCollector outputCollector, FileCollector rejectCollector, PatchesSummary summary, List<String> base, PatchFile patchFile, float minFuzz, int maxOffset, PatchMode mode) {
-        Patcher patcher = new Patcher(patchFile, base, minFuzz, maxOffset);
-        verbose("Patching: " + patchFile.basePath);
-        List<Patcher.Result> results = patcher.patch(mode).collect(Collectors.toList());
-        List<String> rejectLines = new ArrayList<>();
-        boolean first = true;
-        for (int i = 0; i < results.size(); i++) {
-            Patcher.Result result = results.get(i);
-            if (result.mode != null) {
-                switch (result.mode) {
-                    case EXACT:
-                        summary.exactMatches++;
-                        summary.overallQuality += 100;
-                        break;
-                    case ACCESS:
-                        summary.accessMatches++;
-                        summary.overallQuality += 100;
-                        break;
-                    case OFFSET:
-                        summary.offsetMatches++;
-                        summary.overallQuality += 100;
-                        break;
-                    case FUZZY:
-                        summary.fuzzyMatches++;
-                        summary.overallQuality += (result.fuzzyQuality * 100);
-                        break;
+    /**
+     * Patches a directory or archive base into an output directory through a {@link Pipeline}.
+     * <p>
+     * Base files are read ahead of the patcher and each patched file and reject is written, then released,
+     * as soon as it is done. Base files which no patch touched are copied afterwards one at a time, so
+     * memory stays flat no matter the size of the tree. Patching a directory onto itself updates it in place,
+     * patched files are staged beside it and only moved in once every base file has been read, so a rename
+     * or add can never change a base file which is yet to be read. An output inside the base, or holding it,
+     * is built beside it and only replaces it once the whole base has been read.
+     * <p>
+     * A removed file is only removed if no patch writes it, so renames land the same in any order.
+     */
+    private boolean doPatch(PatchesSummary summary, ArchiveReader baseArchive, Map<String, Path> baseIndex, Set<String> bEntries, Set<String> pEntries, LinesReader bFunc, PatchFilesReader pFunc) throws IOException {
+        Path output = outputPath.toPath();
+        boolean inPlace = baseArchive == null && Files.exists(output) && Files.isSameFile(output, basePath.toPath());
+        Path base = basePath.toPath().toAbsolutePath().normalize();
+        Path absOutput = output.toAbsolutePath().normalize();
+        boolean overlaps = !inPlace && baseArchive == null && (base.startsWith(absOutput) || absOutput.startsWith(base));
+        if (!inPlace && !overlaps && Files.exists(output)) {
+            Utils.deleteFolder(output);
+        }
+        Path rejects = rejectsPath.getType().isNull() ? null : rejectsPath.toPath();
+        if (rejects != null && Files.exists(rejects)) {
+            Utils.deleteFolder(rejects);
+        }
+
+        //Only the names of written and removed files are kept, so the rest of the base can be copied after.
+        Set<String> written = new HashSet<>();
+        Set<String> removed = new HashSet<>();
+        Path staging = inPlace || overlaps ? createStaging(absOutput) : output;
+        boolean[] result = { true };
+        try {
+            Pipeline.run(groupSeries(readPatchFiles(pEntries, pFunc)), Pipeline.DEFAULT_CAPACITY, patches -> {
+                String basePath = patches.get(0).getBasePath(aPrefix);
+                if (DEV_NULL.equals(basePath)) {
+                    return Pair.of(patches, Collections.<String>emptyList());
+                }
+                if (!bEntries.contains(basePath)) {
+                    return Pair.of(patches, (List<String>) null);
+                }
+                try {
+                    return Pair.of(patches, bFunc.apply(basePath));
+                } catch (IOException e) {
+                    verbose("Failed to read file: %s", basePath);
+                    return null;
+                }
+            }, series -> {
+                List<PatchFile> patches = series.getLeft();
+                if (aborted) {
+                    return null;
+                }
+                if (series.getRight() == null) {
+                    summary.missingFiles += patches.size();
+                    return null;
+                }
+                FileCollector outputCollector = new FileCollector();
+                FileCollector rejectCollector = new FileCollector();
+                if (patches.size() == 1) {
+                    result[0] &= doPatch(outputCollector, rejectCollector, summary, series.getRight(), patches.get(0), minFuzz, maxOffset, mode);
+                } else {
+                    result[0] &= doPatch(outputCollector, rejectCollector, summary, series.getRight(), patches, minFuzz, maxOffset, mode);
+                }
+                return Pair.of(outputCollector, rejectCollector);
+            }, collectors -> {
+                for (String name : collectors.getLeft().getRemoved()) {
+                    removed.add(name);
+                }
+                for (Map.Entry<String, List<String>> entry : collectors.getLeft().get().entrySet()) {
+                    written.add(entry.getKey());
+                    writeLines(resolveChild(staging, entry.getKey()), entry.getValue());
+                }
+                if (rejects != null) {
+                    for (Map.Entry<String, List<String>> entry : collectors.getRight().get().entrySet()) {
+                        writeLines(resolveChild(rejects, entry.getKey()), entry.getValue());
+                    }
+                }
+            });
+
+            if (inPlace) {
+                removed.removeAll(written);
+                for (String name : removed) {
+                    Files.deleteIfExists(resolveChild(output, name));
+                }
+                for (String name : written) {
+                    Files.move(resolveChild(staging, name), makeParentDirs(resolveChild(output, name)), StandardCopyOption.REPLACE_EXISTING);
+                }
+                return result[0];
+            }
+
+            for (String entry : bEntries) {
+                if (written.contains(entry) || removed.contains(entry)) {
+                    continue;
+                }
+                Path path = makeParentDirs(resolveChild(staging, entry));
+                if (baseArchive != null) {
+                    Files.write(path, baseArchive.getBytes(entry));
+                } else {
+                    Files.copy(baseIndex.get(entry), path);
+                }
+            }
+            if (overlaps) {
+                if (Files.exists(output)) {
+                    Utils.deleteFolder(output);
+                }
+                Files.move(staging, output);
+            }
+        } finally {
+            if (staging != output && Files.exists(staging)) {
+                Utils.deleteFolder(staging);
+            }
+        }
+        return result[0];
+    }
+
+    private static Path createStaging(Path output) throws IOException {
+        if (output.getParent() == null) {
+            throw new IOException("Can not stage patched files beside a root directory: " + output);
+        }
+        Files.createDirectories(output.getParent());
+        return Files.createTempDirectory(output.getParent(), output.getFileName() + "-patched");
+    }
+
+    private void writeLines(Path path, List<String> lines) throws IOException {
+        Files.write(makeParentDirs(path), String.join(lineSeparator, lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Patches a streamed base, each entry is written to the output as soon as it has been read and patched.
+     * Added files are written after the last entry of the base.
+     */
+    private boolean doPatch(FileCollector rejectCollector, PatchesSummary summary, TarStreamReader base, Set<String> pEntries, PatchFilesReader pFunc) throws IOException {
+        Map<String, List<PatchFile>> byBase = new HashMap<>();
+        List<List<PatchFile>> added = new ArrayList<>();
+        for (List<PatchFile> patches : groupSeries(readPatchFiles(pEntries, pFunc))) {
+            String basePath = patches.get(0).getBasePath(aPrefix);
+            if (DEV_NULL.equals(basePath)) {
+                added.add(patches);
+            } else {
+                byBase.put(basePath, patches);
+            }
+        }
+
+        boolean result = true;
+        try (ArchiveWriter out = check ? null : outputPath.openArchive()) {
+            TarStreamReader.Entry entry;
+            while ((entry = base.next()) != null) {
+                List<PatchFile> patches = byBase.remove(entry.name);
+                if (patches == null || aborted) {
+                    if (out != null) {
+                        out.putEntry(entry.name, entry.bytes);
+                    }
+                    continue;
                 }
+                result &= doPatch(out, rejectCollector, summary, entry.readAllLines(), patches);
+            }
+            for (List<PatchFile> patches : added) {
+                if (aborted) {
+                    break;
+                }
+                result &= doPatch(out, rejectCollector, summary, Collections.emptyList(), patches);
+            }
+        }
+        for (List<PatchFile> patches : byBase.values()) {
+            summary.missingFiles += patches.size();
+        }
+        return result;
+    }
+
+    private boolean doPatch(ArchiveWriter out, FileCollector rejectCollector, PatchesSummary summary, List<String> lines, List<PatchFile> patches) throws IOException {
+        FileCollector outputCollector = new FileCollector();
+        boolean result;
+        if (patches.size() == 1) {
+            result = doPatch(outputCollector, rejectCollector, summary, lines, patches.get(0), minFuzz, maxOffset, mode);
+        } else {
+            result = doPatch(outputCollector, rejectCollector, summary, lines, patches, minFuzz, maxOffset, mode);
+        }
+        if (out != null) {
+            for (Map.Entry<String, List<String>> output : outputCollector.get().entrySet()) {
+                out.putEntry(output.getKey(), String.join(lineSeparator, output.getValue()).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private List<PatchFile> readPatchFiles(Set<String> pEntries, PatchFilesReader pFunc) {
+        List<PatchFile> patchFiles = new ArrayList<>();
+        for (String e : series ? new TreeSet<>(pEntries) : pEntries) {
+            try {
+                patchFiles.addAll(pFunc.apply(e));
+            } catch (IOException ex) {
+                verbose("Failed to read patch file: %s", e);
+            }
+        }
+        return patchFiles;
+    }
+
+    /**
+     * Groups PatchFiles into series which apply to the same target.
+     * <p>
+     * A PatchFile continues a series if its base path is the target of an earlier
+     * PatchFile, where the target is the base path, or the patched path for added files.
+     * Without {@link Builder#series} every PatchFile is its own series.
+     */
+    private List<List<PatchFile>> groupSeries(List<PatchFile> patchFiles) {
+        if (!series) {
+            return patchFiles.stream().map(Collections::singletonList).collect(Collectors.toList());
+        }
+        Map<String, List<PatchFile>> byTarget = new LinkedHashMap<>();
+        for (PatchFile patchFile : patchFiles) {
+            String basePath = patchFile.getBasePath(aPrefix);
+            String target = DEV_NULL.equals(basePath) ? patchFile.getPatchedPath(bPrefix) : basePath;
+            byTarget.computeIfAbsent(target, e -> new ArrayList<>()).add(patchFile);
+        }
+        return new ArrayList<>(byTarget.values());
+    }
+
+    /**
+     * Applies a series of PatchFiles in order to the same in memory document.
+     * <p>
+     * The result of the final PatchFile is collected as the output, rejects are collected per PatchFile.
+     */
+    public boolean doPatch(FileCollector outputCollector, FileCollector rejectCollector, PatchesSummary summary, List<String> base, List<PatchFile> series, float minFuzz, int maxOffset, PatchMode mode) {
+        Patcher patcher = null;
+        boolean success = true;
+        for (PatchFile patchFile : series) {
+            verbose("Patching: " + patchFile.basePath);
+            List<String> rejectLines = new ArrayList<>();
+            boolean rejected;
+            if (!success && failFast != FailFast.NEVER) {
+                //Stopped at an earlier PatchFile in the series, reject this one without attempting it.
+                int failedBefore = summary.failedMatches;
+                for (int i = 0; i < patchFile.patches.size(); i++) {
+                    onResult(summary, patchFile, i, new Patcher.Result(patchFile.patches.get(i), false), check ? null : rejectLines);
+                }
+                rejected = summary.failedMatches != failedBefore;
             } else {
-                summary.failedMatches++;
+                if (patcher == null) {
+                    patcher = new Patcher(patchFile, base, minFuzz, maxOffset);
+                } else {
+                    patcher.reset(patchFile);
+                }
+                rejected = runPatcher(patcher, summary, patchFile, mode, check ? null : rejectLines, null);
             }
-            verbose(" Hunk %d: %s", i, result.summary());
-            if (!result.success) {
-                if (!first) {
-                    rejectLines.add("");
+            if (rejected) {
+                success = false;
+                if (!check) {
+                    rejectCollector.consume(patchFile.name + ".rej", rejectLines);
+                }
+                if (failFast == FailFast.OPERATION) {
+                    aborted = true;
                 }
-                first = false;
-                rejectLines.add("++++ REJECTED HUNK: " + (i + 1));
-                rejectLines.add(result.patch.getHeader());
-                result.patch.diffs.stream().map(Diff::toString).forEach(rejectLines::add);
-                rejectLines.add("++++ END HUNK");
             }
         }
+        if (check) {
+            return success;
+        }
+        PatchFile last = series.get(series.size() - 1);
         List<String> lines = patcher.lines;
+        fixNewLine(lines, last.noNewLine);
+        outputCollector.remove(series.get(0).getBasePath(aPrefix));
+        outputCollector.consume(last.getPatchedPath(bPrefix), lines);
+        return success;
+    }
+
+    public boolean doPatch(FileCollector outputCollector, FileCollector rejectCollector, PatchesSummary summary, List<String> base, PatchFile patchFile, float minFuzz, int maxOffset, PatchMode mode) {
+        verbose("Patching: " + patchFile.basePath);
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = PatchCache.key(base, patchFile, mode, minFuzz, maxOffset);
+            PatchCache.Entry entry = null;
+            try {
+                entry = cache.get(cacheKey, patchFile);
+            } catch (IOException e) {
+                verbose("Failed to read cache entry for: %s", patchFile.basePath);
+            }
+            //Entries with rejects are only cached by full runs, a fail fast run would have rejected more hunks.
+            if (entry != null && failFast != FailFast.NEVER && entry.results.stream().anyMatch(e -> !e.success)) {
+                entry = null;
+            }
+            if (entry != null) {
+                int failedBefore = summary.failedMatches;
+                for (int i = 0; i < entry.results.size(); i++) {
+                    onResult(summary, patchFile, i, entry.results.get(i), null);
+                }
+                return collect(outputCollector, rejectCollector, patchFile, summary.failedMatches != failedBefore, entry.lines, entry.rejects);
+            }
+        }
+
+        Patcher patcher = new Patcher(patchFile, base, minFuzz, maxOffset);
+        List<String> rejectLines = new ArrayList<>();
+        List<Patcher.Result> results = new ArrayList<>();
+        boolean rejected = runPatcher(patcher, summary, patchFile, mode, check ? null : rejectLines, results);
+        if (check) {
+            return collect(outputCollector, rejectCollector, patchFile, rejected, null, null);
+        }
+
+        List<String> lines = patcher.lines;
+        fixNewLine(lines, patchFile.noNewLine);
+        //Results of a fail fast run depend on where it stopped, don't cache them.
+        if (cacheKey != null && (!rejected || failFast == FailFast.NEVER)) {
+            PatchCache.Entry entry = new PatchCache.Entry();
+            entry.lines = lines;
+            entry.rejects = rejectLines;
+            entry.results = results;
+            try {
+                cache.put(cacheKey, entry);
+            } catch (IOException e) {
+                verbose("Failed to write cache entry for: %s", patchFile.basePath);
+            }
+        }
+        return collect(outputCollector, rejectCollector, patchFile, rejected, lines, rejectLines);
+    }
+
+    /**
+     * Runs the Patcher, collecting the summary, rejects and results.
+     *
+     * @return If any hunks were rejected.
+     */
+    private boolean runPatcher(Patcher patcher, PatchesSummary summary, PatchFile patchFile, PatchMode mode, List<String> rejectLines, List<Patcher.Result> results) {
+        int failedBefore = summary.failedMatches;
+        patcher.patch(mode, (i, result) -> {
+            onResult(summary, patchFile, i, result, rejectLines);
+            if (results != null) {
+                results.add(result);
+            }
+        }, failFast != FailFast.NEVER);
+        return summary.failedMatches != failedBefore;
+    }
+
+    private static void fixNewLine(List<String> lines, boolean noNewLine) {
         if (!lines.isEmpty()) {
             if (lines.get(lines.size() - 1).isEmpty()) {
-                if (!patchFile.noNewLine) {//if we end in a new line and shouldn't have one
+                if (!noNewLine) {//if we end in a new line and shouldn't have one
                     lines.remove(lines.size() - 1);
                 }
             } else {
                 lines.add("");
             }
         }
+    }
+
+    private void onResult(PatchesSummary summary, PatchFile patchFile, int i, Patcher.Result result, List<String> rejectLines) {
+        if (result.mode != null) {
+            switch (result.mode) {
+                case EXACT:
+                    summary.exactMatches++;
+                    summary.overallQuality += 100;
+                    break;
+                case ACCESS:
+                    summary.accessMatches++;
+                    summary.overallQuality += 100;
+                    break;
+                case OFFSET:
+                    summary.offsetMatches++;
+                    summary.overallQuality += 100;
+                    break;
+                case FUZZY:
+                    summary.fuzzyMatches++;
+                    summary.overallQuality += (result.fuzzyQuality * 100);
+                    break;
+            }
+        } else {
+            summary.failedMatches++;
+        }
+        verbose(" Hunk %d: %s", i, result.summary());
+        if (!result.success && rejectLines != null) {
+            if (!rejectLines.isEmpty()) {
+                rejectLines.add("");
+            }
+            rejectLines.add("++++ REJECTED HUNK: " + (i + 1));
+            rejectLines.add(result.patch.getHeader());
+            result.patch.addDiffLines(rejectLines);
+            rejectLines.add("++++ END HUNK");
+        }
+        if (listener != null) {
+            listener.onResult(patchFile, i, result);
+        }
+    }
+
+    private boolean collect(FileCollector outputCollector, FileCollector rejectCollector, PatchFile patchFile, boolean rejected, List<String> lines, List<String> rejectLines) {
+        if (rejected && failFast == FailFast.OPERATION) {
+            aborted = true;
+        }
+        if (check) {
+            return !rejected;
+        }
         outputCollector.remove(patchFile.getBasePath(aPrefix));
         outputCollector.consume(patchFile.getPatchedPath(bPrefix), lines);
-        if (!rejectLines.isEmpty()) {
+        if (rejected) {
             rejectCollector.consume(patchFile.name + ".rej", rejectLines);
             return false;
         }
         return true;
     }
-    
+
     public PatchesSummary getSummary() {
     	return summary;
     }
+
+    /**
+     * Gets if the last run was stopped early by {@link FailFast#OPERATION}.
+     *
+     * @return If the operation was aborted.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
     
     private void verbose(String str, Object... args) {
     	if(verbose) {
@@ -245,6 +844,47 @@ public class PatchOperation {
     	}
     }
 
+    /**
+     * The work an operation will do, built from the file headers of each patch.
+     */
+    public static class PatchPlan {
+
+        public final List<PatchHeader> targets = new ArrayList<>();
+        public final List<PatchHeader> added = new ArrayList<>();
+        public final List<PatchHeader> removed = new ArrayList<>();
+        public final List<PatchHeader> missing = new ArrayList<>();
+        /**
+         * The patch entries holding anything to apply, in the order they were listed.
+         */
+        public final Set<String> entries = new LinkedHashSet<>();
+        /**
+         * Missing PatchFiles in entries which hold nothing else, these entries are not read at all.
+         */
+        public final List<PatchHeader> skipped = new ArrayList<>();
+
+        public int getHunks() {
+            int hunks = 0;
+            for (List<PatchHeader> headers : Arrays.asList(targets, added, removed)) {
+                for (PatchHeader header : headers) {
+                    hunks += header.hunks;
+                }
+            }
+            return hunks;
+        }
+
+        public void print(PrintStream logger) {
+            logger.println("Patch Plan:");
+            logger.println(" Target files:     " + targets.size());
+            logger.println(" Added files:      " + added.size());
+            logger.println(" Removed files:    " + removed.size());
+            logger.println(" Missing files:    " + missing.size());
+            logger.println(" Hunks:            " + getHunks());
+            for (PatchHeader header : missing) {
+                logger.println("  Missing: " + header.basePath);
+            }
+        }
+    }
+
     public static class PatchesSummary {
     	
         public int unchangedFiles;
@@ -291,6 +931,11 @@ public class PatchOperation {
         private int maxOffset = FuzzyLineMatcher.MatchMatrix.DEFAULT_MAX_OFFSET;
         private PatchMode mode = PatchMode.EXACT;
         private String lineSeparator = System.lineSeparator();
+        private PatchListener listener;
+        private FailFast failFast = FailFast.NEVER;
+        private boolean check;
+        private PatchCache cache;
+        private boolean series;
 
         private String aPrefix = "a/";
         private String bPrefix = "b/";
@@ -387,6 +1032,59 @@ public class PatchOperation {
             return this;
         }
 
+        public Builder listener(PatchListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Builder failFast(FailFast failFast) {
+            this.failFast = Objects.requireNonNull(failFast);
+            return this;
+        }
+
+        /**
+         * Only checks if the patches apply, nothing is written and no rejects are built.
+         * The {@link PatchesSummary} and any {@link PatchListener} are still populated.
+         *
+         * @param check If this operation should only check.
+         * @return The same builder.
+         */
+        public Builder check(boolean check) {
+            this.check = check;
+            return this;
+        }
+
+        /**
+         * Caches the outcome of patching each file, keyed by the content of the
+         * base file, the patch and the matching settings.
+         *
+         * @param cache The cache, may be shared between operations.
+         * @return The same builder.
+         */
+        public Builder cache(PatchCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public Builder cache(Path cacheDir, long maxSize) {
+            return cache(new PatchCache(Objects.requireNonNull(cacheDir), maxSize));
+        }
+
+        /**
+         * Applies patches as ordered series, quilt style.
+         * <p>
+         * Patch files are applied in order of their path, PatchFiles which target
+         * the same file are applied one after another to the same document,
+         * instead of each starting from the unpatched base.
+         *
+         * @param series If patches should be applied as series.
+         * @return The same builder.
+         */
+        public Builder series(boolean series) {
+            this.series = series;
+            return this;
+        }
+
         public PatchOperation build() {
             if (basePath == null) {
                 throw new IllegalStateException("basePath not set.");
@@ -395,9 +1093,12 @@ public class PatchOperation {
                 throw new IllegalStateException("patchesPath not set.");
             }
             if (outputPath == null) {
-                throw new IllegalStateException("output not set.");
+                if (!check) {
+                    throw new IllegalStateException("output not set.");
+                }
+                outputPath = OutputPath.NullPath.INSTANCE;
             }
-            return new PatchOperation(verbose, basePath, patchesPath, aPrefix, bPrefix, outputPath, rejectsPath, minFuzz, maxOffset, mode, lineSeparator);
+            return new PatchOperation(verbose, basePath, patchesPath, aPrefix, bPrefix, outputPath, rejectsPath, minFuzz, maxOffset, mode, lineSeparator, listener, failFast, check, cache, series);
         }
 
     }
@@ -2,4 +2,15 @@ package codechicken.diffpatch;
 
 public interface PathFilter {
 	boolean apply(String path);
+
+	/**
+	 * Checks if any file under the given directory could pass this filter.
+	 * Directories which can not are skipped entirely while indexing.
+	 *
+	 * @param dir The directory, relative to the indexed root, without a trailing '/'.
+	 * @return False if no file under the directory can pass.
+	 */
+	default boolean applyDirectory(String dir) {
+		return true;
+	}
 }
@@ -0,0 +1,92 @@
+package codechicken.diffpatch.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Builds a content hash used to key entries in a {@link DiskCache}.
+ * <p>
+ * All values are length or type delimited, so adjacent values can't collide.
+ */
+public class CacheKey {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest digest;
+
+    public CacheKey() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported.", e);
+        }
+    }
+
+    public CacheKey put(int i) {
+        digest.update((byte) (i >>> 24));
+        digest.update((byte) (i >>> 16));
+        digest.update((byte) (i >>> 8));
+        digest.update((byte) i);
+        return this;
+    }
+
+    public CacheKey put(boolean b) {
+        digest.update((byte) (b ? 1 : 0));
+        return this;
+    }
+
+    public CacheKey put(float f) {
+        return put(Float.floatToIntBits(f));
+    }
+
+    public CacheKey put(String str) {
+        if (str == null) {
+            return put(-1);
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        put(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    public CacheKey put(List<String> lines) {
+        put(lines.size());
+        for (String line : lines) {
+            put(line);
+        }
+        return this;
+    }
+
+    public CacheKey put(byte[] bytes) {
+        put(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    /**
+     * Hashes the remaining bytes of the buffer, consuming them.
+     */
+    public CacheKey put(ByteBuffer buffer) {
+        put(buffer.remaining());
+        digest.update(buffer);
+        return this;
+    }
+
+    /**
+     * Finishes this key.
+     *
+     * @return The hex encoded hash.
+     */
+    public String build() {
+        byte[] hash = digest.digest();
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,128 @@
+package codechicken.diffpatch.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import codechicken.diffpatch.DiffOperation;
+import codechicken.diffpatch.DiffOperation.DiffSummary;
+import codechicken.diffpatch.util.ByteLines;
+
+/**
+ * Caches the outcome of diffing a pair of files.
+ * <p>
+ * Entries are keyed by the content of both files along with their names and all
+ * settings which affect the generated patch, so a hit can entirely replace diffing the files
+ * in a {@link DiffOperation}.
+ */
+public class DiffCache {
+
+    private static final int VERSION = 1;
+
+    private final DiskCache cache;
+
+    public DiffCache(Path dir, long maxSize) {
+        this(new DiskCache(dir, maxSize));
+    }
+
+    public DiffCache(DiskCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Computes the key for a pair of files.
+     *
+     * @param aName The name of the base file, including its prefix, or null if it does not exist.
+     * @param bName The name of the modified file, including its prefix, or null if it does not exist.
+     * @return The key.
+     */
+    public static String key(String aName, String bName, List<String> aLines, List<String> bLines, int context, boolean autoHeader) {
+        CacheKey key = new CacheKey()//
+                .put(VERSION)//
+                .put(aName)//
+                .put(bName);
+        put(key, aLines);
+        put(key, bLines);
+        return key.put(context).put(autoHeader).build();
+    }
+
+    private static void put(CacheKey key, List<String> lines) {
+        if (lines instanceof ByteLines) {
+            //Hash the raw bytes, the lines are never split or decoded.
+            key.put(true).put(((ByteLines) lines).getBuffer());
+        } else {
+            key.put(false).put(lines);
+        }
+    }
+
+    /**
+     * Looks up a cached result.
+     *
+     * @param key The key, from {@link #key}.
+     * @return The Entry, or null if not cached or the cached entry is corrupt.
+     */
+    public Entry get(String key) throws IOException {
+        byte[] bytes = cache.get(key);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Entry read(DataInputStream in) throws IOException {
+        Entry entry = new Entry();
+        entry.lines = PatchCache.readLines(in);
+        DiffSummary summary = entry.summary;
+        summary.unchangedFiles = in.readInt();
+        summary.addedFiles = in.readInt();
+        summary.changedFiles = in.readInt();
+        summary.removedFiles = in.readInt();
+        summary.binaryFiles = in.readInt();
+        summary.addedLines = in.readLong();
+        summary.removedLines = in.readLong();
+        if (in.available() != 0) {
+            throw new IOException("Trailing bytes in entry.");
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        PatchCache.writeLines(out, entry.lines);
+        DiffSummary summary = entry.summary;
+        out.writeInt(summary.unchangedFiles);
+        out.writeInt(summary.addedFiles);
+        out.writeInt(summary.changedFiles);
+        out.writeInt(summary.removedFiles);
+        out.writeInt(summary.binaryFiles);
+        out.writeLong(summary.addedLines);
+        out.writeLong(summary.removedLines);
+        out.flush();
+        cache.put(key, bos.toByteArray());
+    }
+
+    /**
+     * The cached outcome of diffing a single pair of files.
+     */
+    public static class Entry {
+
+        /**
+         * The patch lines, empty if the files have no changes.
+         */
+        public List<String> lines = new ArrayList<>();
+        /**
+         * What diffing the files contributed to the {@link DiffSummary}.
+         */
+        public DiffSummary summary = new DiffSummary();
+    }
+}
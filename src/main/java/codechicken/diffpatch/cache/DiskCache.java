@@ -0,0 +1,175 @@
+package codechicken.diffpatch.cache;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static codechicken.diffpatch.util.Utils.makeParentDirs;
+
+/**
+ * A size bounded, content addressed, on disk cache of byte blobs.
+ * <p>
+ * Entries are stored as individual files named by their key. The last modified
+ * time of an entry is bumped whenever it is read, once the total size of the cache
+ * grows past the limit the least recently used entries are evicted until it is back
+ * under {@link #LOW_WATER} of the limit.
+ * <p>
+ * The size and recency of each entry is tracked in memory, the cache directory is only
+ * walked once, on the first put.
+ */
+public class DiskCache {
+
+    /**
+     * The fraction of the limit eviction shrinks the cache to, so it is not run again on the very next put.
+     */
+    public static final double LOW_WATER = 0.75;
+
+    private final Path dir;
+    private final long maxSize;
+
+    //Key to entry size, least recently used first.
+    private LinkedHashMap<String, Long> index;
+    private long size;
+
+    public DiskCache(Path dir, long maxSize) {
+        this.dir = dir.toAbsolutePath();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets an entry from the cache.
+     *
+     * @param key The key.
+     * @return The entry's bytes, or null if not present.
+     */
+    public synchronized byte[] get(String key) throws IOException {
+        Path path = pathFor(key);
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            if (index != null) {
+                index.get(key);
+            }
+            return bytes;
+        } catch (NoSuchFileException e) {
+            //Removed by another process.
+            Long len = index != null ? index.remove(key) : null;
+            if (len != null) {
+                size -= len;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Puts an entry into the cache, replacing any existing entry.
+     *
+     * @param key   The key.
+     * @param bytes The entry's bytes.
+     */
+    public synchronized void put(String key, byte[] bytes) throws IOException {
+        if (index == null) {
+            index = loadIndex();
+        }
+        Path path = pathFor(key);
+        //Unique per writer, so concurrent processes sharing the directory never write the same temp file.
+        Path tmp = Files.createTempFile(makeParentDirs(path).getParent(), key, ".tmp");
+        try {
+            Files.write(tmp, bytes);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        Long old = index.remove(key);
+        if (old != null) {
+            size -= old;
+        }
+        index.put(key, (long) bytes.length);
+        size += bytes.length;
+        if (size > maxSize) {
+            evict((long) (maxSize * LOW_WATER));
+        }
+    }
+
+    /**
+     * Gets the total size of all entries, as tracked by this cache.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long size() throws IOException {
+        if (index == null) {
+            index = loadIndex();
+        }
+        return size;
+    }
+
+    private void evict(long target) throws IOException {
+        Iterator<Map.Entry<String, Long>> itr = index.entrySet().iterator();
+        while (size > target && itr.hasNext()) {
+            Map.Entry<String, Long> entry = itr.next();
+            Files.deleteIfExists(pathFor(entry.getKey()));
+            size -= entry.getValue();
+            itr.remove();
+        }
+    }
+
+    private LinkedHashMap<String, Long> loadIndex() throws IOException {
+        LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75F, true);
+        size = 0;
+        if (Files.notExists(dir)) {
+            return index;
+        }
+        List<IndexEntry> entries = new ArrayList<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String name = file.getFileName().toString();
+                if (attrs.isRegularFile() && !name.endsWith(".tmp")) {
+                    entries.add(new IndexEntry(name, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                //Removed by another process while walking.
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        entries.sort(Comparator.comparingLong(e -> e.lastModified));
+        for (IndexEntry entry : entries) {
+            index.put(entry.key, entry.size);
+            size += entry.size;
+        }
+        return index;
+    }
+
+    private Path pathFor(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static class IndexEntry {
+
+        private final String key;
+        private final long size;
+        private final long lastModified;
+
+        private IndexEntry(String key, long size, long lastModified) {
+            this.key = key;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
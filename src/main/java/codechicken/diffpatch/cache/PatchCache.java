@@ -0,0 +1,159 @@
+package codechicken.diffpatch.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import codechicken.diffpatch.patch.Patcher;
+import codechicken.diffpatch.util.Patch;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchMode;
+
+/**
+ * Caches the outcome of applying a {@link PatchFile} to a base file.
+ * <p>
+ * Entries are keyed by the content of the base file and PatchFile along with all
+ * settings which affect matching, so a hit can entirely replace running the {@link Patcher}.
+ */
+public class PatchCache {
+
+    private static final int VERSION = 1;
+
+    private final DiskCache cache;
+
+    public PatchCache(Path dir, long maxSize) {
+        this(new DiskCache(dir, maxSize));
+    }
+
+    public PatchCache(DiskCache cache) {
+        this.cache = cache;
+    }
+
+    public static String key(List<String> base, PatchFile patchFile, PatchMode mode, float minFuzz, int maxOffset) {
+        CacheKey key = new CacheKey()//
+                .put(VERSION)//
+                .put(base)//
+                .put(patchFile.basePath)//
+                .put(patchFile.patchedPath)//
+                .put(patchFile.noNewLine)//
+                .put(patchFile.patches.size());
+        for (Patch patch : patchFile.patches) {
+            key.put(patch.start1).put(patch.start2).put(patch.length1).put(patch.length2).put(patch.diffs.size());
+            for (int i = 0; i < patch.diffs.size(); i++) {
+                key.put(patch.getOp(i).ordinal()).put(patch.getLine(i));
+            }
+        }
+        return key.put(mode.ordinal()).put(minFuzz).put(maxOffset).build();
+    }
+
+    /**
+     * Looks up a cached result.
+     *
+     * @param key       The key, from {@link #key}.
+     * @param patchFile The PatchFile the key was computed for.
+     * @return The Entry, or null if not cached or the cached entry is corrupt.
+     */
+    public Entry get(String key, PatchFile patchFile) throws IOException {
+        byte[] bytes = cache.get(key);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)), patchFile);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Entry read(DataInputStream in, PatchFile patchFile) throws IOException {
+        Entry entry = new Entry();
+        entry.lines = readLines(in);
+        entry.rejects = readLines(in);
+        int numResults = in.readInt();
+        if (numResults != patchFile.patches.size()) {
+            throw new IOException("Invalid result count: " + numResults);
+        }
+        for (int i = 0; i < numResults; i++) {
+            Patcher.Result result = new Patcher.Result(patchFile.patches.get(i), in.readBoolean());
+            int mode = in.readByte();
+            if (mode >= PatchMode.values().length) {
+                throw new IOException("Invalid patch mode: " + mode);
+            }
+            result.mode = mode < 0 ? null : PatchMode.values()[mode];
+            result.searchOffset = in.readInt();
+            result.offset = in.readInt();
+            result.offsetWarning = in.readBoolean();
+            result.fuzzyQuality = in.readFloat();
+            entry.results.add(result);
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        writeLines(out, entry.lines);
+        writeLines(out, entry.rejects);
+        out.writeInt(entry.results.size());
+        for (Patcher.Result result : entry.results) {
+            out.writeBoolean(result.success);
+            out.writeByte(result.mode == null ? -1 : result.mode.ordinal());
+            out.writeInt(result.searchOffset);
+            out.writeInt(result.offset);
+            out.writeBoolean(result.offsetWarning);
+            out.writeFloat(result.fuzzyQuality);
+        }
+        out.flush();
+        cache.put(key, bos.toByteArray());
+    }
+
+    /**
+     * Reads lines written by {@link #writeLines}, validating every length against the remaining
+     * bytes so a corrupt entry fails with an IOException.
+     */
+    static List<String> readLines(DataInputStream in) throws IOException {
+        int len = readLength(in, 4);
+        List<String> lines = new ArrayList<>(len);
+        for (int i = 0; i < len; i++) {
+            byte[] bytes = new byte[readLength(in, 1)];
+            in.readFully(bytes);
+            lines.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    private static int readLength(DataInputStream in, int elementSize) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || (long) len * elementSize > in.available()) {
+            throw new IOException("Invalid length: " + len);
+        }
+        return len;
+    }
+
+    static void writeLines(DataOutputStream out, List<String> lines) throws IOException {
+        out.writeInt(lines.size());
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * The cached outcome of patching a single file.
+     * <p>
+     * Cached Results do not retain their {@link Patcher.Result#appliedPatch}.
+     */
+    public static class Entry {
+
+        public List<String> lines = new ArrayList<>();
+        public List<String> rejects = new ArrayList<>();
+        public List<Patcher.Result> results = new ArrayList<>();
+    }
+}
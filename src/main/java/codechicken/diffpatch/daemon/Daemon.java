@@ -0,0 +1,369 @@
+package codechicken.diffpatch.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import codechicken.diffpatch.DiffOperation;
+import codechicken.diffpatch.FailFast;
+import codechicken.diffpatch.PatchOperation;
+import codechicken.diffpatch.cache.DiffCache;
+import codechicken.diffpatch.cache.DiskCache;
+import codechicken.diffpatch.cache.PatchCache;
+import codechicken.diffpatch.diff.PatienceDiffer;
+import codechicken.diffpatch.match.FuzzyLineMatcher;
+import codechicken.diffpatch.patch.Patcher;
+import codechicken.diffpatch.util.InputPath;
+import codechicken.diffpatch.util.OutputPath;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchMode;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+
+/**
+ * Serves diff and patch {@link Request}s from a resident JVM, so repeated runs skip
+ * JVM startup and JIT warm-up and share their caches.
+ * <p>
+ * The daemon only listens on the loopback interface. Its port and a random token are
+ * written to a state file readable only by its owner, every request must carry the token,
+ * see {@link DaemonClient#connect}. Requests are handled concurrently.
+ * <p>
+ * Output of a request is returned in its {@link Response}, never printed by the daemon, so
+ * the {@code verbose} option is not supported.
+ */
+public class Daemon implements Closeable {
+
+    public static final long DEFAULT_CACHE_SIZE = 256L * 1024 * 1024;
+
+    private static final int WARM_UP_RUNS = 20;
+    // How long a client may take to send its request, in milliseconds.
+    private static final int READ_TIMEOUT = 30000;
+
+    private final Path stateFile;
+    private final String token;
+    private final ServerSocket server;
+    private final ExecutorService executor;
+    private final Map<Path, DiskCache> caches = new ConcurrentHashMap<>();
+
+    public Daemon(Path stateFile) throws IOException {
+        this(stateFile, 0, Runtime.getRuntime().availableProcessors());
+    }
+
+    public Daemon(Path stateFile, int port, int threads) throws IOException {
+        this.stateFile = stateFile.toAbsolutePath();
+        token = new BigInteger(130, new SecureRandom()).toString(32);
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        executor = Executors.newFixedThreadPool(threads);
+        writeState();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: Daemon <stateFile>");
+            System.exit(1);
+        }
+        try (Daemon daemon = new Daemon(Paths.get(args[0]))) {
+            System.out.println("Listening on port " + daemon.getPort());
+            daemon.warmUp();
+            daemon.run();
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Diffs and patches a generated document a number of times, so the first real request runs compiled code.
+     */
+    public void warmUp() {
+        Random rand = new Random(0);
+        List<String> base = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            base.add("line " + rand.nextInt(500) + " of " + rand.nextInt(20));
+        }
+        for (int run = 0; run < WARM_UP_RUNS; run++) {
+            List<String> modified = new ArrayList<>(base);
+            List<String> drifted = new ArrayList<>(base);
+            for (int i = 0; i < 20; i++) {
+                modified.set(rand.nextInt(modified.size()), "modified " + rand.nextInt(100));
+                modified.add(rand.nextInt(modified.size()), "added " + rand.nextInt(100));
+                drifted.set(rand.nextInt(drifted.size()), "drifted " + rand.nextInt(100));
+            }
+            drifted.addAll(0, Collections.nCopies(run, "shifted"));
+            PatchFile patchFile = new PatchFile();
+            patchFile.patches = new PatienceDiffer().makePatches(base, modified, 3, true);
+            //Drifted lines force offset and fuzzy matching.
+            new Patcher(patchFile, drifted, FuzzyLineMatcher.DEFAULT_MIN_MATCH_SCORE, FuzzyLineMatcher.MatchMatrix.DEFAULT_MAX_OFFSET).patch(PatchMode.FUZZY).count();
+        }
+    }
+
+    /**
+     * Serves requests until the daemon is stopped or closed.
+     */
+    public void run() throws IOException {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketException e) {
+                //Closed.
+                break;
+            }
+            executor.execute(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(READ_TIMEOUT);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            Request request = Request.read(in, token);
+            if (request == null) {
+                return;
+            }
+            Response response;
+            try {
+                response = handle(request);
+            } catch (Exception e) {
+                response = Response.error(e.toString());
+            }
+            response.write(out);
+            if (request.command == Request.Command.STOP) {
+                server.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            //A malformed request must never take down the serving thread.
+            System.err.println("Failed to serve request: " + e);
+        }
+    }
+
+    private Response handle(Request request) throws IOException {
+        Options options = new Options(request.options);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream logger = new PrintStream(bos, true, StandardCharsets.UTF_8.name());
+        boolean result;
+        switch (request.command) {
+            case DIFF:
+                result = diff(options, logger);
+                break;
+            case PATCH:
+                result = patch(options, logger);
+                break;
+            case STOP:
+                result = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + request.command);
+        }
+        return new Response(result, new String(bos.toByteArray(), StandardCharsets.UTF_8), null);
+    }
+
+    private boolean diff(Options options, PrintStream logger) throws IOException {
+        DiffOperation.Builder builder = DiffOperation.builder()//
+                .aPath(input(options.path("aPath")))//
+                .bPath(input(options.path("bPath")))//
+                .outputPath(output(options.path("outputPath")));
+        options.ifPresent("aPrefix", builder::aPrefix);
+        options.ifPresent("bPrefix", builder::bPrefix);
+        options.ifPresent("autoHeader", e -> builder.autoHeader(Boolean.parseBoolean(e)));
+        options.ifPresent("context", e -> builder.context(Integer.parseInt(e)));
+        options.ifPresent("lineSeparator", builder::lineSeparator);
+        options.ifPresent("singleDiff", e -> builder.singleDiff(Boolean.parseBoolean(e)));
+        options.ifPresent("bundle", e -> builder.bundle(Boolean.parseBoolean(e)));
+        checkNotVerbose(options);
+        List<String> includes = options.list("include");
+        List<String> excludes = options.list("exclude");
+        if (!includes.isEmpty() || !excludes.isEmpty()) {
+            builder.filter(includes, excludes);
+        }
+        DiskCache cache = cache(options);
+        if (cache != null) {
+            builder.cache(new DiffCache(cache));
+        }
+        List<String> changed = options.list("changed");
+        options.checkUsed();
+
+        DiffOperation operation = builder.build();
+        boolean result = options.has("changed") ? operation.updateDiff(changed) : operation.doDiff();
+        operation.getSummary().print(logger, false);
+        return result;
+    }
+
+    private boolean patch(Options options, PrintStream logger) throws IOException {
+        PatchOperation.Builder builder = PatchOperation.builder()//
+                .basePath(input(options.path("basePath")))//
+                .patchesPath(input(options.path("patchesPath")))//
+                .outputPath(output(options.path("outputPath")));
+        if (options.has("rejectsPath")) {
+            builder.rejectsPath(output(options.path("rejectsPath")));
+        }
+        options.ifPresent("aPrefix", builder::aPrefix);
+        options.ifPresent("bPrefix", builder::bPrefix);
+        options.ifPresent("minFuzz", e -> builder.minFuzz(Float.parseFloat(e)));
+        options.ifPresent("maxOffset", e -> builder.maxOffset(Integer.parseInt(e)));
+        options.ifPresent("mode", e -> builder.mode(PatchMode.valueOf(e)));
+        options.ifPresent("failFast", e -> builder.failFast(FailFast.valueOf(e)));
+        options.ifPresent("lineSeparator", builder::lineSeparator);
+        options.ifPresent("check", e -> builder.check(Boolean.parseBoolean(e)));
+        options.ifPresent("series", e -> builder.series(Boolean.parseBoolean(e)));
+        checkNotVerbose(options);
+        DiskCache cache = cache(options);
+        if (cache != null) {
+            builder.cache(new PatchCache(cache));
+        }
+        options.checkUsed();
+
+        PatchOperation operation = builder.build();
+        boolean result = operation.doPatch();
+        operation.getSummary().print(logger, false);
+        return result;
+    }
+
+    private static void checkNotVerbose(Options options) {
+        //Operations log verbose output to System.out, which would be the daemon's and not the client's.
+        if (options.has("verbose")) {
+            throw new IllegalArgumentException("The verbose option is not supported by the daemon.");
+        }
+    }
+
+    /**
+     * Caches are shared by all requests using the same directory, so their size is only tracked once.
+     */
+    private DiskCache cache(Options options) {
+        if (!options.has("cache")) {
+            return null;
+        }
+        Path dir = options.path("cache");
+        long maxSize = options.has("cacheSize") ? Long.parseLong(options.get("cacheSize")) : DEFAULT_CACHE_SIZE;
+        return caches.computeIfAbsent(dir, e -> new DiskCache(e, maxSize));
+    }
+
+    private static InputPath input(Path path) {
+        if (!Files.isDirectory(path) && ArchiveFormat.findFormat(path) != null) {
+            return new InputPath.ArchivePath(path);
+        }
+        return new InputPath.FilePath(path);
+    }
+
+    private static OutputPath output(Path path) {
+        if (!Files.isDirectory(path) && ArchiveFormat.findFormat(path) != null) {
+            return new OutputPath.ArchivePath(path);
+        }
+        return new OutputPath.FilePath(path);
+    }
+
+    private void writeState() throws IOException {
+        Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        Files.createDirectories(stateFile.getParent());
+        Files.createFile(tmp);
+        try {
+            Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignored) {
+        }
+        Files.write(tmp, Arrays.asList(String.valueOf(getPort()), token), StandardCharsets.UTF_8);
+        Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Files.deleteIfExists(stateFile);
+    }
+
+    /**
+     * The options of a request, tracking which were used so unknown options can be rejected.
+     */
+    private static class Options {
+
+        private final Map<String, String> options;
+        private final Set<String> used = new HashSet<>();
+
+        private Options(Map<String, String> options) {
+            this.options = options;
+        }
+
+        public boolean has(String key) {
+            return options.containsKey(key);
+        }
+
+        public String get(String key) {
+            used.add(key);
+            String value = options.get(key);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing option: " + key);
+            }
+            return value;
+        }
+
+        /**
+         * Gets a path, resolved against the client's working directory.
+         */
+        public Path path(String key) {
+            Path path = Paths.get(get(key));
+            if (has(DaemonClient.WORKING_DIR)) {
+                path = Paths.get(get(DaemonClient.WORKING_DIR)).resolve(path);
+            }
+            return path.toAbsolutePath();
+        }
+
+        public List<String> list(String key) {
+            if (!has(key)) {
+                return Collections.emptyList();
+            }
+            String value = get(key);
+            return value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split("\n"));
+        }
+
+        public void ifPresent(String key, Consumer<String> action) {
+            if (has(key)) {
+                action.accept(get(key));
+            }
+        }
+
+        public void checkUsed() {
+            for (String key : options.keySet()) {
+                if (!used.contains(key) && !key.equals(DaemonClient.WORKING_DIR)) {
+                    throw new IllegalArgumentException("Unknown option: " + key);
+                }
+            }
+        }
+    }
+}
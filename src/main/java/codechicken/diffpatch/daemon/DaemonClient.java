@@ -0,0 +1,99 @@
+package codechicken.diffpatch.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A thin client for a {@link Daemon}.
+ */
+public class DaemonClient {
+
+    /**
+     * The option holding the client's working directory, relative paths in a request are resolved against it.
+     */
+    public static final String WORKING_DIR = "workingDir";
+
+    private final int port;
+    private final String token;
+
+    public DaemonClient(int port, String token) {
+        this.port = port;
+        this.token = token;
+    }
+
+    /**
+     * Connects to a running daemon.
+     *
+     * @param stateFile The state file the daemon was started with.
+     * @return The client.
+     */
+    public static DaemonClient connect(Path stateFile) throws IOException {
+        List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+        if (lines.size() < 2) {
+            throw new IOException("Invalid daemon state file: " + stateFile);
+        }
+        return new DaemonClient(Integer.parseInt(lines.get(0)), lines.get(1));
+    }
+
+    /**
+     * Runs a request from the command line.
+     * <p>
+     * Usage: {@code DaemonClient <stateFile> <diff|patch|stop> [option=value]...}, options given
+     * more than once are joined into a list. Exits with 0 if the result was true, 1 if false and 2 on failure.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DaemonClient <stateFile> <diff|patch|stop> [option=value]...");
+            System.exit(2);
+        }
+        Request request = Request.of(Request.Command.valueOf(args[1].toUpperCase(Locale.ROOT)));
+        for (int i = 2; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Invalid option: " + args[i]);
+                System.exit(2);
+            }
+            String key = args[i].substring(0, eq);
+            String value = args[i].substring(eq + 1);
+            String existing = request.options.get(key);
+            request.option(key, existing == null ? value : existing + "\n" + value);
+        }
+        Response response = connect(Paths.get(args[0])).send(request);
+        System.out.print(response.output);
+        if (response.error != null) {
+            System.err.println(response.error);
+            System.exit(2);
+        }
+        System.exit(response.result ? 0 : 1);
+    }
+
+    /**
+     * Sends a request and waits for its response.
+     * Relative paths in the request are resolved against this process's working directory.
+     *
+     * @param request The request.
+     * @return The response.
+     */
+    public Response send(Request request) throws IOException {
+        if (!request.options.containsKey(WORKING_DIR)) {
+            request.option(WORKING_DIR, Paths.get("").toAbsolutePath());
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            request.write(out, token);
+            return Response.read(in);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package codechicken.diffpatch.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A request to a {@link Daemon}.
+ * <p>
+ * Options are named after the matching builder methods of {@link codechicken.diffpatch.DiffOperation}
+ * and {@link codechicken.diffpatch.PatchOperation}, all values are strings. Options holding a list
+ * of values, such as {@code include}, separate them with '\n'.
+ */
+public class Request {
+
+    static final int VERSION = 1;
+    // Read before the token is checked, so kept small.
+    static final int MAX_TOKEN_LENGTH = 256;
+    static final int MAX_OPTIONS = 1024;
+    // Options such as 'changed' may list many files.
+    static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    public final Command command;
+    public final Map<String, String> options;
+
+    public Request(Command command, Map<String, String> options) {
+        this.command = command;
+        this.options = options;
+    }
+
+    public static Request of(Command command) {
+        return new Request(command, new LinkedHashMap<>());
+    }
+
+    public Request option(String key, Object value) {
+        options.put(Objects.requireNonNull(key), String.valueOf(value));
+        return this;
+    }
+
+    public Request option(String key, Collection<String> values) {
+        return option(key, String.join("\n", values));
+    }
+
+    public Request option(String key, String... values) {
+        return option(key, Arrays.asList(values));
+    }
+
+    void write(DataOutputStream out, String token) throws IOException {
+        out.writeInt(VERSION);
+        writeString(out, token);
+        out.writeByte(command.ordinal());
+        out.writeInt(options.size());
+        for (Map.Entry<String, String> entry : options.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a request, checking its version and token.
+     * The token is compared in constant time, nothing past it is read unless it matches.
+     *
+     * @return The request, or null if it is not for this daemon.
+     * @throws IOException If the request is malformed.
+     */
+    static Request read(DataInputStream in, String token) throws IOException {
+        if (in.readInt() != VERSION) {
+            return null;
+        }
+        byte[] received = readBytes(in, MAX_TOKEN_LENGTH);
+        if (!MessageDigest.isEqual(received, token.getBytes(StandardCharsets.UTF_8))) {
+            return null;
+        }
+        int command = in.readByte();
+        if (command < 0 || command >= Command.values().length) {
+            return null;
+        }
+        int numOptions = in.readInt();
+        if (numOptions < 0 || numOptions > MAX_OPTIONS) {
+            throw new IOException("Invalid option count: " + numOptions);
+        }
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < numOptions; i++) {
+            options.put(readString(in), readString(in));
+        }
+        return new Request(Command.values()[command], options);
+    }
+
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in, MAX_STRING_LENGTH), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int maxLength) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > maxLength) {
+            throw new IOException("Invalid string length: " + len);
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    public enum Command {
+        /**
+         * Runs a {@link codechicken.diffpatch.DiffOperation}, or {@link codechicken.diffpatch.DiffOperation#updateDiff}
+         * if the {@code changed} option is given.
+         */
+        DIFF,
+        /**
+         * Runs a {@link codechicken.diffpatch.PatchOperation}.
+         */
+        PATCH,
+        /**
+         * Stops the daemon once all running requests have finished.
+         */
+        STOP;
+    }
+}
@@ -0,0 +1,51 @@
+package codechicken.diffpatch.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The response to a {@link Request}.
+ */
+public class Response {
+
+    /**
+     * The result of the operation, if there were changes for a diff or all hunks applied for a patch.
+     */
+    public final boolean result;
+    /**
+     * The operation's summary.
+     */
+    public final String output;
+    /**
+     * Why the operation failed, or null if it ran.
+     */
+    public final String error;
+
+    public Response(boolean result, String output, String error) {
+        this.result = result;
+        this.output = output;
+        this.error = error;
+    }
+
+    public static Response error(String error) {
+        return new Response(false, "", error);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeBoolean(result);
+        Request.writeString(out, output);
+        out.writeBoolean(error != null);
+        if (error != null) {
+            Request.writeString(out, error);
+        }
+        out.flush();
+    }
+
+    static Response read(DataInputStream in) throws IOException {
+        boolean result = in.readBoolean();
+        String output = Request.readString(in);
+        String error = in.readBoolean() ? Request.readString(in) : null;
+        return new Response(result, output, error);
+    }
+}
@@ -3,17 +3,21 @@ package codechicken.diffpatch.diff;
 import codechicken.diffpatch.match.LineMatching;
 import codechicken.diffpatch.util.CharRepresenter;
 import codechicken.diffpatch.util.Diff;
+import codechicken.diffpatch.util.Hunk;
+import codechicken.diffpatch.util.LineTable;
 import codechicken.diffpatch.util.Operation;
 import codechicken.diffpatch.util.Patch;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public abstract class Differ {
 
     public static final int DEFAULT_CONTEXT = 3;
 
+    private static final Operation[] OPS = Operation.values();
+
     protected final CharRepresenter charRep;
 
     public Differ() {
@@ -37,16 +41,181 @@ public abstract class Differ {
         return makePatches(lines1, lines2, DEFAULT_CONTEXT, true);
     }
 
+    /**
+     * Diffs the lines into Patches.
+     * <p>
+     * Lines in the common prefix and suffix, beyond the context of the first and last
+     * change, can never be part of a hunk. They are trimmed before matching, and the
+     * resulting Patches are offset back into place.
+     */
     public List<Patch> makePatches(List<String> lines1, List<String> lines2, int numContextLines, boolean collate) {
-        return makePatches(diff(lines1, lines2), numContextLines, collate);
+        return makePatches(lines1, lines2, numContextLines, collate, (i1, i2) -> lines1.get(i1).equals(lines2.get(i2)));
+    }
+
+    /**
+     * Diffs the lines into Patches, as {@link #makePatches(List, List, int, boolean)}.
+     *
+     * @param lineEquals Compares lines when finding the common prefix and suffix, it must agree with
+     *                   {@link String#equals} on the lines, but may avoid reading them.
+     */
+    public List<Patch> makePatches(List<String> lines1, List<String> lines2, int numContextLines, boolean collate, LineEquality lineEquals) {
+        int size1 = lines1.size();
+        int size2 = lines2.size();
+        int prefix = 0;
+        while (prefix < size1 && prefix < size2 && lineEquals.test(prefix, prefix)) {
+            prefix++;
+        }
+        if (prefix == size1 && prefix == size2) {
+            return Collections.emptyList();
+        }
+        int suffix = 0;
+        while (suffix < size1 - prefix && suffix < size2 - prefix && lineEquals.test(size1 - suffix - 1, size2 - suffix - 1)) {
+            suffix++;
+        }
+        int start = Math.max(0, prefix - numContextLines);
+        int trailing = Math.max(0, suffix - numContextLines);
+        if (start > 0 || trailing > 0) {
+            lines1 = lines1.subList(start, size1 - trailing);
+            lines2 = lines2.subList(start, size2 - trailing);
+        }
+
+        List<Patch> patches;
+        if (!collate) {
+            patches = makePatches(diff(lines1, lines2), numContextLines, false);
+        } else {
+            patches = makePatches(match(lines1, lines2), lines1, lines2, numContextLines, new LineTable());
+        }
+        if (start > 0) {
+            for (Patch patch : patches) {
+                patch.start1 += start;
+                patch.start2 += start;
+            }
+        }
+        return patches;
     }
 
     public static List<Patch> makeFileAdded(List<String> lines) {
-        return Collections.singletonList(make(lines, Operation.INSERT));
+        return Collections.singletonList(new Patch(Hunk.of(Operation.INSERT, lines, new LineTable())));
     }
 
     public static List<Patch> makeFileRemoved(List<String> lines) {
-        return Collections.singletonList(make(lines, Operation.DELETE));
+        return Collections.singletonList(new Patch(Hunk.of(Operation.DELETE, lines, new LineTable())));
+    }
+
+    /**
+     * Builds collated Patches straight from a line matching, equal to trimming and splitting
+     * the Diffs from {@link LineMatching#makeDiffList}, without creating a Diff per line.
+     * Only lines which end up in a hunk are interned, each Patch is a view of its {@link Hunk}.
+     *
+     * @param matches         The line matching, from {@link #match}.
+     * @param lines1          The base lines.
+     * @param lines2          The patched lines.
+     * @param numContextLines The number of context lines around each change.
+     * @param table           The table to intern hunk lines into.
+     * @return The Patches.
+     */
+    public static List<Patch> makePatches(int[] matches, List<String> lines1, List<String> lines2, int numContextLines, LineTable table) {
+        //the full diff, as ops and indexes into lines1 for EQUAL and DELETE or lines2 for INSERT
+        byte[] ops = new byte[lines1.size() + lines2.size()];
+        int[] refs = new int[ops.length];
+        byte delete = (byte) Operation.DELETE.ordinal();
+        byte insert = (byte) Operation.INSERT.ordinal();
+        byte equal = (byte) Operation.EQUAL.ordinal();
+        int n = 0;
+        int l = 0;
+        int r = 0;
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i] < 0) {
+                continue;
+            }
+            while (l < i) {
+                ops[n] = delete;
+                refs[n++] = l++;
+            }
+            while (r < matches[i]) {
+                ops[n] = insert;
+                refs[n++] = r++;
+            }
+            if (!lines1.get(l).equals(lines2.get(r))) {
+                ops[n] = delete;
+                refs[n++] = l;
+                ops[n] = insert;
+                refs[n++] = r;
+            } else {
+                ops[n] = equal;
+                refs[n++] = l;
+            }
+            l++;
+            r++;
+        }
+        while (l < lines1.size()) {
+            ops[n] = delete;
+            refs[n++] = l++;
+        }
+        while (r < lines2.size()) {
+            ops[n] = insert;
+            refs[n++] = r++;
+        }
+
+        //trim to the context around the first and last change
+        int first = 0;
+        while (first < n && ops[first] == equal) {
+            first++;
+        }
+        if (first == n) {
+            return Collections.emptyList();
+        }
+        int last = n;
+        while (ops[last - 1] == equal) {
+            last--;
+        }
+        int start = Math.max(0, first - numContextLines);
+        int end = Math.min(n, last + numContextLines);
+        int length1 = 0;
+        for (int i = start; i < end; i++) {
+            if (ops[i] != insert) {
+                length1++;
+            }
+        }
+        if (length1 == 0) {
+            return Collections.emptyList();
+        }
+
+        //split wherever changes are separated by more than twice the context
+        List<Patch> patches = new ArrayList<>();
+        int pos = 0;
+        int pos1 = 0;
+        int pos2 = 0;
+        int equalRun = 0;
+        for (int i = start; i <= end; i++) {
+            if (i < end) {
+                if (ops[i] == equal) {
+                    equalRun++;
+                    continue;
+                }
+                if (equalRun <= numContextLines * 2) {
+                    equalRun = 0;
+                    continue;
+                }
+            }
+            int hunkEnd = i < end ? i - equalRun + numContextLines : end;
+            //count the base and patched lines preceding this hunk
+            for (; pos < start; pos++) {
+                if (ops[pos] != insert) pos1++;
+                if (ops[pos] != delete) pos2++;
+            }
+            Hunk.Builder builder = new Hunk.Builder(table, hunkEnd - start);
+            for (int j = start; j < hunkEnd; j++) {
+                builder.add(OPS[ops[j]], (ops[j] == insert ? lines2 : lines1).get(refs[j]));
+            }
+            Patch patch = new Patch(builder.build());
+            patch.start1 = pos1;
+            patch.start2 = pos2;
+            patches.add(patch);
+            start = i - numContextLines;
+            equalRun = 0;
+        }
+        return patches;
     }
 
     public static List<Patch> makePatches(List<Diff> diffs, int numContextLines, boolean collate) {
@@ -63,14 +232,15 @@ public abstract class Differ {
         return p.split(numContextLines);
     }
 
-    private static Patch make(List<String> lines, Operation op) {
-        Patch patch = new Patch();
-        patch.diffs = lines.stream().map(l -> new Diff(op, l)).collect(Collectors.toList());
-        patch.recalculateLength();
-        return patch;
-    }
-
     public CharRepresenter getCharRep() {
         return charRep;
     }
+
+    /**
+     * Compares a line of the base lines with a line of the patched lines.
+     */
+    public interface LineEquality {
+
+        boolean test(int index1, int index2);
+    }
 }
@@ -63,19 +63,19 @@ public class LineMatching {
     public static List<Pair<LineRange, LineRange>> unmatchedRanges(List<Patch> patches) {
         List<Pair<LineRange, LineRange>> ret = new ArrayList<>();
         for (Patch patch : patches) {
-            List<Diff> diffs = patch.diffs;
+            int size = patch.diffs.size();
             int start1 = patch.start1, start2 = patch.start2;
-            for (int i = 0; i < diffs.size(); ) {
+            for (int i = 0; i < size; ) {
                 //skip matched
-                while (i < diffs.size() && diffs.get(i).op == Operation.EQUAL) {
+                while (i < size && patch.getOp(i) == Operation.EQUAL) {
                     start1++;
                     start2++;
                     i++;
                 }
 
                 int end1 = start1, end2 = start2;
-                while (i < diffs.size() && diffs.get(i).op != Operation.EQUAL) {
-                    if (diffs.get(i++).op == Operation.DELETE) {
+                while (i < size && patch.getOp(i) != Operation.EQUAL) {
+                    if (patch.getOp(i++) == Operation.DELETE) {
                         end1++;
                     } else {
                         end2++;
@@ -107,25 +107,25 @@ public class LineMatching {
             }
 
             while (l < i) {
-                list.add(new Diff(Operation.DELETE, lines1.get(l++)));
+                list.add(Diff.of(Operation.DELETE, lines1.get(l++)));
             }
             while (r < matches[i]) {
-                list.add(new Diff(Operation.INSERT, lines2.get(r++)));
+                list.add(Diff.of(Operation.INSERT, lines2.get(r++)));
             }
             if (!lines1.get(l).equals(lines2.get(r))) {
-                list.add(new Diff(Operation.DELETE, lines1.get(l)));
-                list.add(new Diff(Operation.INSERT, lines2.get(r)));
+                list.add(Diff.of(Operation.DELETE, lines1.get(l)));
+                list.add(Diff.of(Operation.INSERT, lines2.get(r)));
             } else {
-                list.add(new Diff(Operation.EQUAL, lines1.get(l)));
+                list.add(Diff.of(Operation.EQUAL, lines1.get(l)));
             }
             l++;
             r++;
         }
         while (l < lines1.size()) {
-            list.add(new Diff(Operation.DELETE, lines1.get(l++)));
+            list.add(Diff.of(Operation.DELETE, lines1.get(l++)));
         }
         while (r < lines2.size()) {
-            list.add(new Diff(Operation.INSERT, lines2.get(r++)));
+            list.add(Diff.of(Operation.INSERT, lines2.get(r++)));
         }
         return list;
     }
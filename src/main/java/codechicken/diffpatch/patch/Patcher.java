@@ -13,7 +13,7 @@ public class Patcher {
 
     private static final List<String> ACCESS_WORDS = Arrays.asList("public", "protected", "private", "final", " ", "\t");
 
-    public final List<WorkingPatch> patches;
+    public List<WorkingPatch> patches;
     public List<String> lines;
     private boolean applied;
 
@@ -26,10 +26,18 @@ public class Patcher {
     // normally this is equivalent to `lastAppliedPatch?.AppliedOffset` but if a patch fails, we subtract its length delta from the search offset
     private int searchOffset;
 
+    // Shared by the Hunks of all WorkingPatches.
+    private final LineTable lineTable = new LineTable();
     private final CharRepresenter charRep;
     private String lmText;
     private List<String> wmLines;
 
+    // ACCESS mode working state, word counts are kept zeroed between hunks so only touched words need resetting.
+    private char[] accessWordChars;
+    private int[] wordCountDelta;
+    private char[] touchedWords = new char[64];
+    private int numTouchedWords;
+
     public final int maxMatchOffset;
     public final float minMatchScore;
 
@@ -42,7 +50,7 @@ public class Patcher {
     }
 
     public Patcher(PatchFile patchFile, List<String> lines, CharRepresenter charRep, float minFuzz, int maxOffset) {
-        this.patches = patchFile.patches.stream().map(WorkingPatch::new).collect(Collectors.toList());
+        this.patches = makeWorkingPatches(patchFile);
         this.lines = new ArrayList<>(lines);
         if (charRep == null) {
             charRep = new CharRepresenter();
@@ -52,32 +60,85 @@ public class Patcher {
         this.maxMatchOffset = maxOffset;
     }
 
+    /**
+     * Prepares this Patcher to apply another PatchFile on top of the current lines.
+     * <p>
+     * Used to apply a series of PatchFiles to the same document. The line and
+     * word mode representations of the current lines are kept, so the document
+     * is not re-tokenized between steps.
+     *
+     * @param patchFile The next PatchFile in the series.
+     */
+    public void reset(PatchFile patchFile) {
+        patches = makeWorkingPatches(patchFile);
+        applied = false;
+        lastAppliedPatch = null;
+        searchOffset = 0;
+        if (lmText != null) {
+            for (WorkingPatch patch : patches) {
+                patch.linesToChars(charRep);
+            }
+        }
+        if (wmLines != null) {
+            for (WorkingPatch patch : patches) {
+                patch.wordsToChars(charRep);
+            }
+        }
+    }
+
+    private List<WorkingPatch> makeWorkingPatches(PatchFile patchFile) {
+        List<WorkingPatch> patches = new ArrayList<>(patchFile.patches.size());
+        for (Patch patch : patchFile.patches) {
+            patches.add(new WorkingPatch(patch));
+        }
+        return patches;
+    }
+
     public Stream<Result> patch(PatchMode mode) {
+        return patch(mode, null, false);
+    }
+
+    /**
+     * Applies all hunks, notifying the listener of each hunk's Result as soon as it is decided.
+     *
+     * @param mode     The highest PatchMode to attempt.
+     * @param listener The listener to notify, may be null.
+     * @param failFast If patching should stop at the first rejected hunk, any remaining hunks are rejected without being attempted.
+     * @return The Results of all hunks.
+     */
+    public Stream<Result> patch(PatchMode mode, ResultListener listener, boolean failFast) {
         if (applied) {
             throw new RuntimeException("Already applied");
         }
         applied = true;
 
-        for (WorkingPatch patch : patches) {
-            if (applyExact(patch)) {
-                continue;
-            }
-            if (mode.ordinal() >= PatchMode.ACCESS.ordinal() && applyAccess(patch)) {
-                continue;
+        boolean stopped = false;
+        for (int i = 0; i < patches.size(); i++) {
+            WorkingPatch patch = patches.get(i);
+            if (stopped || !apply(patch, mode)) {
+                patch.fail();
+                patch.result.searchOffset = searchOffset;
+                searchOffset -= patch.length2 - patch.length1;
+                stopped = failFast;
             }
-            if (mode.ordinal() >= PatchMode.OFFSET.ordinal() && applyOffset(patch)) {
-                continue;
+            if (listener != null) {
+                listener.onResult(i, patch.result);
             }
-            if (mode.ordinal() >= PatchMode.FUZZY.ordinal() && applyFuzzy(patch)) {
-                continue;
-            }
-
-            patch.fail();
-            patch.result.searchOffset = searchOffset;
-            searchOffset -= patch.length2 - patch.length1;
         }
         return patches.stream().map(e -> e.result);
+    }
 
+    private boolean apply(WorkingPatch patch, PatchMode mode) {
+        if (applyExact(patch)) {
+            return true;
+        }
+        if (mode.ordinal() >= PatchMode.ACCESS.ordinal() && applyAccess(patch)) {
+            return true;
+        }
+        if (mode.ordinal() >= PatchMode.OFFSET.ordinal() && applyOffset(patch)) {
+            return true;
+        }
+        return mode.ordinal() >= PatchMode.FUZZY.ordinal() && applyFuzzy(patch);
     }
 
     private void linesToChars() {
@@ -93,11 +154,42 @@ public class Patcher {
             patch.wordsToChars(charRep);
         }
 
-        wmLines = lines.stream().map(charRep::wordsToChars).collect(Collectors.toList());
+        wmLines = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            wmLines.add(charRep.wordsToChars(line));
+        }
+
+        accessWordChars = new char[ACCESS_WORDS.size()];
+        for (int i = 0; i < accessWordChars.length; i++) {
+            accessWordChars[i] = charRep.addWord(ACCESS_WORDS.get(i));
+        }
+        wordCountDelta = new int[charRep.getMaxWordChar()];
+    }
+
+    private void countWords(String wmLine, int delta) {
+        for (int i = 0; i < wmLine.length(); i++) {
+            char c = wmLine.charAt(i);
+            if (wordCountDelta[c] == 0) {
+                if (numTouchedWords == touchedWords.length) {
+                    touchedWords = Arrays.copyOf(touchedWords, touchedWords.length * 2);
+                }
+                touchedWords[numTouchedWords++] = c;
+            }
+            wordCountDelta[c] += delta;
+        }
+    }
+
+    private boolean isAccessWord(char c) {
+        for (char w : accessWordChars) {
+            if (w == c) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private Patch applyExactAt(int loc, WorkingPatch patch) {
-        if (!patch.getContextLines().collect(Collectors.toList()).containsAll(lines.subList(loc, loc + patch.length1))) {
+        if (!patch.hunk.matchesContext(lines, loc)) {
             throw new RuntimeException("Patch engine failure");
         }
         if (!canApplySafelyAt(loc, patch)) {
@@ -105,7 +197,7 @@ public class Patcher {
         }
 
         lines.subList(loc, loc + patch.length1).clear();
-        lines.addAll(loc, patch.getPatchedLines().collect(Collectors.toList()));
+        lines.addAll(loc, patch.hunk.getPatchedLines());
 
         //update the lineModeText
         if (lmText != null) {
@@ -118,13 +210,13 @@ public class Patcher {
             wmLines.addAll(loc, patch.wmPatched);
         }
 
-        int patchedDelta = patches.stream()//
-                .filter(e -> {
-                    LineRange r = e.getKeepoutRange2();
-                    return r != null && r.getEnd() <= loc;
-                })//
-                .mapToInt(e -> e.getAppliedDelta().getAsInt())//
-                .sum();
+        int patchedDelta = 0;
+        for (WorkingPatch p : patches) {
+            LineRange r = p.getKeepoutRange2();
+            if (r != null && r.getEnd() <= loc) {
+                patchedDelta += p.getAppliedDelta().getAsInt();
+            }
+        }
         Patch appliedPatch = patch;
         if (appliedPatch.start2 != loc || appliedPatch.start1 != loc - patchedDelta) {
             appliedPatch = new Patch(patch);
@@ -155,10 +247,13 @@ public class Patcher {
         }
 
         LineRange range = LineRange.fromStartLen(loc, patch.length1);
-        return patches.stream().allMatch(p -> {
+        for (WorkingPatch p : patches) {
             LineRange r = p.getKeepoutRange2();
-            return r == null || !r.contains(range);
-        });
+            if (r != null && r.contains(range)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private boolean applyExact(WorkingPatch patch) {
@@ -167,7 +262,7 @@ public class Patcher {
             return false;
         }
 
-        if (!patch.getContextLines().collect(Collectors.toList()).containsAll(lines.subList(loc, loc + patch.length1))) {
+        if (!patch.hunk.matchesContext(lines, loc)) {
             return false;
         }
 
@@ -228,27 +323,33 @@ public class Patcher {
             return false;
         }
 
-        int[] aWordCounts = new int[charRep.getMaxWordChar()];
-        int[] bWordCounts = new int[charRep.getMaxWordChar()];
-
-        int[] match = new int[patch.wmContext.size()];
+        if (wordCountDelta.length < charRep.getMaxWordChar()) {
+            wordCountDelta = Arrays.copyOf(wordCountDelta, charRep.getMaxWordChar());
+        }
 
+        //Count words in both sides, only words which appear in this hunk are touched.
+        numTouchedWords = 0;
         for (int i = 0; i < patch.wmContext.size(); i++) {
-            match[i] = loc + i;
-            //Count words in both lines.
-            for (char c : patch.wmContext.get(i).toCharArray()) {
-                aWordCounts[c]++;
-            }
-            for (char c : wmLines.get(i).toCharArray()) {
-                bWordCounts[c]++;
-            }
+            countWords(patch.wmContext.get(i), 1);
+            countWords(wmLines.get(i), -1);
         }
 
-        //Ensure only the allowed words change in counts.
-        for (int i = 0; i < aWordCounts.length; i++) {
-            if (aWordCounts[i] != bWordCounts[i] && !ACCESS_WORDS.contains(charRep.getWordForChar((char) i))) {
-                return false;
+        //Ensure only the allowed words change in counts, resetting the counts for the next hunk as we go.
+        boolean allowed = true;
+        for (int i = 0; i < numTouchedWords; i++) {
+            char c = touchedWords[i];
+            if (wordCountDelta[c] != 0 && !isAccessWord(c)) {
+                allowed = false;
             }
+            wordCountDelta[c] = 0;
+        }
+        if (!allowed) {
+            return false;
+        }
+
+        int[] match = new int[patch.wmContext.size()];
+        for (int i = 0; i < match.length; i++) {
+            match[i] = loc + i;
         }
 
         WorkingPatch fuzzyPatch = new WorkingPatch(adjustPatchToMatchedLines(patch, match, lines));
@@ -286,7 +387,12 @@ public class Patcher {
             fuzzyPatch.linesToChars(charRep);
         }
 
-        int at = Arrays.stream(match).filter(i -> i >= 0).findFirst().getAsInt(); //if the patch needs lines trimmed off it, the early match entries will be negative
+        //if the patch needs lines trimmed off it, the early match entries will be negative
+        int at = 0;
+        while (match[at] < 0) {
+            at++;
+        }
+        at = match[at];
         patch.succeed(PatchMode.FUZZY, applyExactAt(at, fuzzyPatch));
         patch.addOffsetResult(fuzzyPatch.start2 - loc, lines.size());
         patch.addFuzzyResult(pair.getRight());
@@ -294,9 +400,9 @@ public class Patcher {
     }
 
     public static Patch adjustPatchToMatchedLines(Patch patch, int[] match, List<String> lines) {
-        //replace the patch with a copy
+        //replace the patch with a copy, the original is left untouched
         Patch fuzzyPatch = new Patch(patch);
-        List<Diff> diffs = fuzzyPatch.diffs; //for convenience
+        List<Diff> diffs = fuzzyPatch.mutableDiffs(); //for convenience
 
         //keep operations, but replace lines with lines in source text
         //unmatched patch lines (-1) are deleted
@@ -310,7 +416,7 @@ public class Patcher {
                 Operation op = diffs.get(j - 1).op == Operation.DELETE && diffs.get(j).op == Operation.DELETE ? Operation.DELETE : Operation.EQUAL;
 
                 for (int l = ploc + 1; l < mloc; l++) {
-                    diffs.add(j++, new Diff(op, lines.get(l)));
+                    diffs.add(j++, Diff.of(op, lines.get(l)));
                 }
             }
             ploc = mloc;
@@ -325,7 +431,12 @@ public class Patcher {
                 diffs.remove(j);
             } else //update context to match target file (may be the same, doesn't matter)
             {
-                diffs.get(j++).text = lines.get(mloc);
+                Diff diff = diffs.get(j);
+                String line = lines.get(mloc);
+                if (!diff.text.equals(line)) {
+                    diffs.set(j, Diff.of(diff.op, line));
+                }
+                j++;
             }
         }
 
@@ -336,7 +447,13 @@ public class Patcher {
 
     private Pair<int[], Float> findMatch(int loc, List<String> wmContext) {
         // fuzzy matching is more complex because we need to split up the patched file to only search _between_ previously applied patches
-        List<LineRange> keepoutRanges = patches.stream().map(WorkingPatch::getKeepoutRange2).filter(Objects::nonNull).collect(Collectors.toList());
+        List<LineRange> keepoutRanges = new ArrayList<>(patches.size());
+        for (WorkingPatch patch : patches) {
+            LineRange r = patch.getKeepoutRange2();
+            if (r != null) {
+                keepoutRanges.add(r);
+            }
+        }
 
         // parts of file to search in
         List<LineRange> ranges = LineRange.fromStartLen(0, wmLines.size()).except(keepoutRanges);
@@ -456,6 +573,7 @@ public class Patcher {
     //patch extended with implementation fields
     public class WorkingPatch extends Patch {
 
+        public final Hunk hunk;
         public Result result;
         public String lmContext;
         public String lmPatched;
@@ -464,6 +582,8 @@ public class Patcher {
 
         public WorkingPatch(Patch other) {
             super(other);
+            hunk = other.toHunk(lineTable);
+            setHunk(hunk);
         }
 
         public void fail() {
@@ -486,13 +606,20 @@ public class Patcher {
         }
 
         public void linesToChars(CharRepresenter rep) {
-            lmContext = rep.linesToChars(getContextLines().collect(Collectors.toList()));
-            lmPatched = rep.linesToChars(getPatchedLines().collect(Collectors.toList()));
+            lmContext = rep.linesToChars(hunk.getContextLines());
+            lmPatched = rep.linesToChars(hunk.getPatchedLines());
         }
 
         public void wordsToChars(CharRepresenter rep) {
-            wmContext = getContextLines().map(rep::wordsToChars).collect(Collectors.toList());
-            wmPatched = getPatchedLines().map(rep::wordsToChars).collect(Collectors.toList());
+            wmContext = wordsToChars(rep, hunk.getContextLines());
+            wmPatched = wordsToChars(rep, hunk.getPatchedLines());
+        }
+
+        private List<String> wordsToChars(CharRepresenter rep, List<String> lines) {
+            for (int i = 0; i < lines.size(); i++) {
+                lines.set(i, rep.wordsToChars(lines.get(i)));
+            }
+            return lines;
         }
 
         public LineRange getKeepoutRange2() {
@@ -511,6 +638,17 @@ public class Patcher {
 
     }
 
+    public interface ResultListener {
+
+        /**
+         * Called as soon as a hunk has either been applied or rejected.
+         *
+         * @param index  The index of the hunk in the PatchFile.
+         * @param result The Result.
+         */
+        void onResult(int index, Result result);
+    }
+
     public static class Result {
 
         public Patch patch;
@@ -0,0 +1,427 @@
+package codechicken.diffpatch.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary serialization of {@link PatchFile}s.
+ * <p>
+ * Every distinct string in a bundle, paths and diff lines alike, is stored once in
+ * an interned line table. PatchFiles then only reference the table, with all numbers
+ * varint encoded and each diff packed as {@code lineIndex << 2 | op}. Loading a bundle
+ * decodes each distinct line exactly once, and each Patch is read as a {@link Hunk}
+ * referencing the decoded table directly.
+ * <p>
+ * Layout:
+ * <pre>
+ * magic "DPB" version
+ * varint lineCount, lineCount * (varint byteLength, utf8 bytes)
+ * varint fileCount, fileCount * (
+ *     varint name, varint basePath, varint patchedPath (line index + 1, 0 for null)
+ *     byte flags (1 = noNewLine, 2 = baseNoNewLine, 4 = patchedNoNewLine)
+ *     varint patchCount, patchCount * (
+ *         varint start1, zigzag varint start2 - start1, varint length1, varint length2
+ *         varint diffCount, diffCount * varint (line index &lt;&lt; 2 | op)
+ *     )
+ * )
+ * </pre>
+ */
+public class BinaryPatchFormat {
+
+    private static final byte[] MAGIC = { 'D', 'P', 'B' };
+    private static final byte VERSION = 1;
+
+    private static final Operation[] OPS = Operation.values();
+
+    /**
+     * Checks if the buffer starts with the binary patch header.
+     *
+     * @param buffer The buffer, its position is not modified.
+     * @return If the buffer holds a binary patch bundle.
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length + 1) {
+            return false;
+        }
+        int pos = buffer.position();
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(pos + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void write(List<PatchFile> patchFiles, OutputStream os) throws IOException {
+        Map<String, Integer> lineIndex = new HashMap<>();
+        List<String> lines = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        writeVarInt(body, patchFiles.size());
+        for (PatchFile patchFile : patchFiles) {
+            writeVarInt(body, intern(lineIndex, lines, patchFile.name));
+            writeVarInt(body, intern(lineIndex, lines, patchFile.basePath));
+            writeVarInt(body, intern(lineIndex, lines, patchFile.patchedPath));
+            body.write((patchFile.noNewLine ? 1 : 0) | (patchFile.baseNoNewLine ? 2 : 0) | (patchFile.patchedNoNewLine ? 4 : 0));
+            writeVarInt(body, patchFile.patches.size());
+            for (Patch patch : patchFile.patches) {
+                writeVarInt(body, patch.start1);
+                writeVarInt(body, zigzag(patch.start2 - patch.start1));
+                writeVarInt(body, patch.length1);
+                writeVarInt(body, patch.length2);
+                writeVarInt(body, patch.diffs.size());
+                for (int i = 0; i < patch.diffs.size(); i++) {
+                    //Strings are offset by 1 for null, diff text is never null.
+                    int index = intern(lineIndex, lines, patch.getLine(i)) - 1;
+                    writeVarInt(body, index << 2 | patch.getOp(i).ordinal());
+                }
+            }
+        }
+
+        os.write(MAGIC);
+        os.write(VERSION);
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        writeVarInt(table, lines.size());
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(table, bytes.length);
+            table.write(bytes);
+        }
+        table.writeTo(os);
+        body.writeTo(os);
+    }
+
+    public static void write(List<PatchFile> patchFiles, Path path) throws IOException {
+        try (OutputStream os = Files.newOutputStream(Utils.makeParentDirs(path))) {
+            write(patchFiles, os);
+        }
+    }
+
+    /**
+     * Reads a binary patch bundle.
+     *
+     * @param name   The name to use for PatchFiles which were written without one.
+     * @param buffer The buffer, read from its position.
+     * @return The PatchFiles.
+     * @throws IllegalArgumentException If the bundle is truncated or corrupt.
+     */
+    public static List<PatchFile> read(String name, ByteBuffer buffer) {
+        if (!isBinary(buffer)) {
+            throw new IllegalArgumentException("Not a binary patch: " + name);
+        }
+        ByteBuffer buf = buffer.slice();
+        buf.position(MAGIC.length);
+        byte version = readByte(buf, name);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary patch version " + version + " in " + name);
+        }
+
+        //Every count is bounded by the bytes left, as each counted item takes at least one byte.
+        String[] lines = new String[readCount(buf, name)];
+        for (int i = 0; i < lines.length; i++) {
+            int len = readLength(buf, name);
+            if (buf.hasArray()) {
+                lines[i] = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+                buf.position(buf.position() + len);
+            } else {
+                byte[] bytes = new byte[len];
+                buf.get(bytes);
+                lines[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        //Hunks reference the line table directly, no Diff is created per line.
+        LineTable table = new LineTable(lines);
+        int numFiles = readCount(buf, name);
+        List<PatchFile> patchFiles = new ArrayList<>(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            PatchFile patchFile = new PatchFile();
+            patchFile.name = lookup(lines, readIndex(buf, name, lines.length));
+            if (patchFile.name == null) {
+                patchFile.name = name;
+            }
+            patchFile.basePath = lookup(lines, readIndex(buf, name, lines.length));
+            patchFile.patchedPath = lookup(lines, readIndex(buf, name, lines.length));
+            byte flags = readByte(buf, name);
+            patchFile.noNewLine = (flags & 1) != 0;
+            patchFile.baseNoNewLine = (flags & 2) != 0;
+            patchFile.patchedNoNewLine = (flags & 4) != 0;
+            int numPatches = readCount(buf, name);
+            for (int j = 0; j < numPatches; j++) {
+                Patch patch = new Patch();
+                patch.start1 = readCount(buf, name, Integer.MAX_VALUE);
+                patch.start2 = patch.start1 + unzigzag(readVarInt(buf, name));
+                patch.length1 = readCount(buf, name, Integer.MAX_VALUE);
+                patch.length2 = readCount(buf, name, Integer.MAX_VALUE);
+                int numDiffs = readCount(buf, name);
+                Hunk.Builder hunk = new Hunk.Builder(table, numDiffs);
+                for (int k = 0; k < numDiffs; k++) {
+                    int packed = readDiff(buf, name, lines.length);
+                    hunk.add(OPS[packed & 3], packed >>> 2);
+                }
+                patch.setHunk(hunk.build());
+                patchFile.patches.add(patch);
+            }
+            patchFiles.add(patchFile);
+        }
+        return patchFiles;
+    }
+
+    /**
+     * Scans the headers of all PatchFiles in a binary patch bundle.
+     * Only the lines used as names and paths are decoded, hunks are skipped.
+     *
+     * @param name   The name to use for PatchFiles which were written without one.
+     * @param buffer The buffer, read from its position.
+     * @return The headers.
+     * @throws IllegalArgumentException If the bundle is truncated or corrupt.
+     */
+    public static List<PatchHeader> scan(String name, ByteBuffer buffer) {
+        if (!isBinary(buffer)) {
+            throw new IllegalArgumentException("Not a binary patch: " + name);
+        }
+        ByteBuffer buf = buffer.slice();
+        buf.position(MAGIC.length);
+        byte version = readByte(buf, name);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary patch version " + version + " in " + name);
+        }
+
+        int[] lineStarts = new int[readCount(buf, name)];
+        int[] lineLengths = new int[lineStarts.length];
+        for (int i = 0; i < lineStarts.length; i++) {
+            lineLengths[i] = readLength(buf, name);
+            lineStarts[i] = buf.position();
+            buf.position(buf.position() + lineLengths[i]);
+        }
+
+        int numFiles = readCount(buf, name);
+        List<PatchHeader> headers = new ArrayList<>(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            String fileName = decode(buf, lineStarts, lineLengths, readIndex(buf, name, lineStarts.length));
+            String basePath = decode(buf, lineStarts, lineLengths, readIndex(buf, name, lineStarts.length));
+            String patchedPath = decode(buf, lineStarts, lineLengths, readIndex(buf, name, lineStarts.length));
+            readByte(buf, name); //flags
+            int numPatches = readCount(buf, name);
+            for (int j = 0; j < numPatches; j++) {
+                //start1, start2 delta, length1, length2
+                for (int k = 0; k < 4; k++) {
+                    readVarInt(buf, name);
+                }
+                int numDiffs = readCount(buf, name);
+                for (int k = 0; k < numDiffs; k++) {
+                    readDiff(buf, name, lineStarts.length);
+                }
+            }
+            headers.add(new PatchHeader(fileName != null ? fileName : name, basePath, patchedPath, numPatches));
+        }
+        return headers;
+    }
+
+    public static List<PatchFile> read(String name, Path path) throws IOException {
+        return read(name, MappedPatchReader.map(path));
+    }
+
+    /**
+     * Converts unified diff text into a binary bundle.
+     *
+     * @param name    The name of the patch.
+     * @param unified The unified diff lines.
+     * @param os      The stream to write the bundle to.
+     */
+    public static void fromUnified(String name, List<String> unified, OutputStream os) throws IOException {
+        write(PatchFile.fromLines(name, unified, false), os);
+    }
+
+    /**
+     * Converts a directory of unified diff files into a single binary bundle.
+     * Each PatchFile keeps the relative path of the patch it was read from as its name.
+     *
+     * @param patchesDir The directory of patches.
+     * @param output     The bundle file to write.
+     */
+    public static void fromUnified(Path patchesDir, Path output) throws IOException {
+        List<PatchFile> patchFiles = new ArrayList<>();
+        for (Map.Entry<String, Path> entry : Utils.indexChildren(patchesDir).entrySet()) {
+            patchFiles.addAll(MappedPatchReader.read(entry.getKey(), entry.getValue(), false));
+        }
+        write(patchFiles, output);
+    }
+
+    /**
+     * Converts PatchFiles back to unified diff lines.
+     * Unlike {@link PatchFile#toLines}, this keeps the no newline markers, after the last line of
+     * each side which lacks a newline, so the conversion is lossless.
+     *
+     * @param patchFiles The PatchFiles.
+     * @param autoHeader If hunk headers should be written as auto headers.
+     * @return The unified diff lines.
+     */
+    public static List<String> toUnified(List<PatchFile> patchFiles, boolean autoHeader) {
+        List<String> lines = new ArrayList<>();
+        for (PatchFile patchFile : patchFiles) {
+            List<String> fileLines = patchFile.toLines(autoHeader);
+            if (patchFile.noNewLine) {
+                addNoNewLine(patchFile, fileLines);
+            }
+            lines.addAll(fileLines);
+        }
+        return lines;
+    }
+
+    private static void addNoNewLine(PatchFile patchFile, List<String> lines) {
+        if (patchFile.patches.isEmpty() || !patchFile.baseNoNewLine && !patchFile.patchedNoNewLine) {
+            //Marker outside of a hunk, or from a writer which did not record the side.
+            lines.add(PatchLineParser.NO_NEW_LINE);
+            return;
+        }
+        //The last hunk's diffs are the tail of the lines.
+        List<Diff> diffs = patchFile.patches.get(patchFile.patches.size() - 1).diffs;
+        int offset = lines.size() - diffs.size();
+        int lastBase = -1;
+        int lastPatched = -1;
+        for (int i = 0; i < diffs.size(); i++) {
+            Operation op = diffs.get(i).op;
+            if (op != Operation.INSERT) {
+                lastBase = i;
+            }
+            if (op != Operation.DELETE) {
+                lastPatched = i;
+            }
+        }
+        //Insert the later marker first so the earlier index stays valid.
+        int first = patchFile.baseNoNewLine ? lastBase : -1;
+        int second = patchFile.patchedNoNewLine ? lastPatched : -1;
+        if (first > second) {
+            int tmp = first;
+            first = second;
+            second = tmp;
+        }
+        if (second != -1) {
+            lines.add(offset + second + 1, PatchLineParser.NO_NEW_LINE);
+        }
+        if (first != -1 && first != second) {
+            lines.add(offset + first + 1, PatchLineParser.NO_NEW_LINE);
+        }
+    }
+
+    private static int intern(Map<String, Integer> lineIndex, List<String> lines, String str) {
+        if (str == null) {
+            return 0;
+        }
+        return lineIndex.computeIfAbsent(str, e -> {
+            lines.add(e);
+            return lines.size();
+        });
+    }
+
+    private static String lookup(String[] lines, int index) {
+        return index == 0 ? null : lines[index - 1];
+    }
+
+    private static String decode(ByteBuffer buf, int[] lineStarts, int[] lineLengths, int index) {
+        if (index == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[lineLengths[index - 1]];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(lineStarts[index - 1]);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int zigzag(int i) {
+        return (i << 1) ^ (i >> 31);
+    }
+
+    private static int unzigzag(int i) {
+        return (i >>> 1) ^ -(i & 1);
+    }
+
+    private static void writeVarInt(OutputStream os, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            os.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        os.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buf, String name) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = readByte(buf, name);
+            //The fifth byte only holds the top 4 bits.
+            if (shift == 28 && (b & 0xF0) != 0) {
+                throw corrupt(name, "varint overflow");
+            }
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    // A count of items which each take at least one more byte.
+    private static int readCount(ByteBuffer buf, String name) {
+        return readCount(buf, name, buf.remaining());
+    }
+
+    private static int readCount(ByteBuffer buf, String name, int max) {
+        int count = readVarInt(buf, name);
+        if (count < 0 || count > max) {
+            throw corrupt(name, "count " + (count & 0xFFFFFFFFL) + " exceeds " + max);
+        }
+        return count;
+    }
+
+    // A byte length, which must fit in the bytes left.
+    private static int readLength(ByteBuffer buf, String name) {
+        int len = readVarInt(buf, name);
+        if (len < 0 || len > buf.remaining()) {
+            throw corrupt(name, "length " + (len & 0xFFFFFFFFL) + " exceeds the " + buf.remaining() + " bytes left");
+        }
+        return len;
+    }
+
+    // An index into the line table, offset by 1 for null.
+    private static int readIndex(ByteBuffer buf, String name, int numLines) {
+        int index = readVarInt(buf, name);
+        if (index < 0 || index > numLines) {
+            throw corrupt(name, "line " + (index & 0xFFFFFFFFL) + " outside of a table of " + numLines);
+        }
+        return index;
+    }
+
+    // A packed diff, line index << 2 | op.
+    private static int readDiff(ByteBuffer buf, String name, int numLines) {
+        int packed = readVarInt(buf, name);
+        if ((packed & 3) >= OPS.length) {
+            throw corrupt(name, "invalid diff operation " + (packed & 3));
+        }
+        if (packed >>> 2 >= numLines) {
+            throw corrupt(name, "line " + (packed >>> 2) + " outside of a table of " + numLines);
+        }
+        return packed;
+    }
+
+    private static byte readByte(ByteBuffer buf, String name) {
+        if (!buf.hasRemaining()) {
+            throw corrupt(name, "unexpected end of data");
+        }
+        return buf.get();
+    }
+
+    private static IllegalArgumentException corrupt(String name, String reason) {
+        return new IllegalArgumentException("Corrupt binary patch " + name + ": " + reason);
+    }
+}
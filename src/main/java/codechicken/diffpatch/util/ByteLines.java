@@ -0,0 +1,261 @@
+package codechicken.diffpatch.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The lines of a file, split on raw bytes and only decoded when accessed.
+ * <p>
+ * Lines are terminated by {@code \n}, {@code \r\n} or {@code \r}, the same as
+ * {@link java.io.BufferedReader#readLine}. Each line is hashed while splitting, so lines
+ * can be compared with {@link #lineEquals} without ever decoding them. Lines are decoded
+ * as UTF-8 on first access, malformed input is never replaced, {@link #get} throws an
+ * {@link UncheckedIOException} instead, the same as {@link java.nio.file.Files#readAllLines} would.
+ * <p>
+ * Files holding a NUL byte within their first {@value #BINARY_SCAN} bytes, or which are not
+ * valid UTF-8, are considered binary.
+ */
+public class ByteLines extends AbstractList<String> implements RandomAccess {
+
+    private static final int BINARY_SCAN = 8000;
+
+    private final ByteBuffer buffer;
+    // 0 until scanned, then 1 for valid UTF-8 text or 2 for binary.
+    private byte binary;
+    private CharsetDecoder decoder;
+
+    // Start and end (exclusive, without terminators) of each line, indexed on first use.
+    private int[] starts;
+    private int[] ends;
+    private int[] hashes;
+    private int numLines = -1;
+    private String[] decoded;
+
+    private ByteLines(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public static ByteLines of(ByteBuffer buffer) {
+        return new ByteLines(buffer.slice());
+    }
+
+    public static ByteLines of(byte[] bytes) {
+        return new ByteLines(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads a file, larger files are memory mapped instead of being copied onto the heap.
+     *
+     * @param path The file.
+     * @return The ByteLines.
+     */
+    public static ByteLines read(Path path) throws IOException {
+        return new ByteLines(MappedPatchReader.map(path));
+    }
+
+    public boolean isBinary() {
+        if (binary == 0) {
+            binary = (byte) (scanBinary(buffer) || !isUtf8(buffer) ? 2 : 1);
+        }
+        return binary == 2;
+    }
+
+    /**
+     * @return The raw content, from position 0. The returned buffer is independent of this one.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    @Override
+    public String get(int index) {
+        index();
+        if (index < 0 || index >= numLines) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numLines);
+        }
+        String line = decoded[index];
+        if (line == null) {
+            line = decoded[index] = decode(starts[index], ends[index] - starts[index]);
+        }
+        return line;
+    }
+
+    @Override
+    public int size() {
+        index();
+        return numLines;
+    }
+
+    public int hash(int index) {
+        index();
+        return hashes[index];
+    }
+
+    /**
+     * Compares the raw content of two files, sizes first, without splitting or decoding any lines.
+     * Both files are already read or mapped by now, files on disk should have their sizes
+     * compared before either is read, see {@link LinesReader#size}.
+     *
+     * @param other The other file.
+     * @return If both files hold the same bytes.
+     */
+    public boolean contentEquals(ByteLines other) {
+        return buffer.limit() == other.buffer.limit() && buffer.equals(other.buffer);
+    }
+
+    /**
+     * Compares a line of this file with a line of another, without decoding either.
+     *
+     * @param index The line in this file.
+     * @param other The other file.
+     * @param oIndex The line in the other file.
+     * @return If the lines hold the same bytes.
+     */
+    public boolean lineEquals(int index, ByteLines other, int oIndex) {
+        index();
+        other.index();
+        int len = ends[index] - starts[index];
+        if (hashes[index] != other.hashes[oIndex] || len != other.ends[oIndex] - other.starts[oIndex]) {
+            return false;
+        }
+        int s = starts[index];
+        int o = other.starts[oIndex];
+        for (int i = 0; i < len; i++) {
+            if (buffer.get(s + i) != other.buffer.get(o + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void index() {
+        if (numLines >= 0) {
+            return;
+        }
+        int limit = buffer.limit();
+        starts = new int[64];
+        ends = new int[64];
+        hashes = new int[64];
+        numLines = 0;
+        int start = 0;
+        int hash = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                addLine(start, i, hash);
+                if (b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+                hash = 0;
+            } else {
+                hash = 31 * hash + b;
+            }
+        }
+        if (start < limit) {
+            addLine(start, limit, hash);
+        }
+        decoded = new String[numLines];
+    }
+
+    private void addLine(int start, int end, int hash) {
+        if (numLines == starts.length) {
+            starts = Arrays.copyOf(starts, numLines * 2);
+            ends = Arrays.copyOf(ends, numLines * 2);
+            hashes = Arrays.copyOf(hashes, numLines * 2);
+        }
+        starts[numLines] = start;
+        ends[numLines] = end;
+        hashes[numLines] = hash;
+        numLines++;
+    }
+
+    private String decode(int start, int len) {
+        if (binary != 1) {
+            //Not known to be valid, String would silently replace malformed input.
+            return decodeStrict(start, len);
+        }
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, len, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[len];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(start);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String decodeStrict(int start, int len) {
+        if (decoder == null) {
+            decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+        ByteBuffer dup = buffer.duplicate();
+        dup.limit(start + len);
+        dup.position(start);
+        try {
+            return decoder.decode(dup).toString();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException("Malformed UTF-8 on line starting at byte " + start, e);
+        }
+    }
+
+    /**
+     * Validates UTF-8 the same as the JDK decoder, rejecting overlong forms, surrogates
+     * and code points above U+10FFFF, without decoding anything.
+     */
+    private static boolean isUtf8(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        int i = 0;
+        while (i < limit) {
+            int b = buffer.get(i++) & 0xFF;
+            if (b < 0x80) {
+                continue;
+            }
+            int n;
+            if (b >= 0xC2 && b <= 0xDF) {
+                n = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                n = 2;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                n = 3;
+            } else {
+                return false;
+            }
+            if (i + n > limit) {
+                return false;
+            }
+            int b1 = buffer.get(i) & 0xFF;
+            if (b == 0xE0 && b1 < 0xA0 || b == 0xED && b1 > 0x9F || b == 0xF0 && b1 < 0x90 || b == 0xF4 && b1 > 0x8F) {
+                return false;
+            }
+            for (int j = 0; j < n; j++) {
+                if ((buffer.get(i + j) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += n;
+        }
+        return true;
+    }
+
+    private static boolean scanBinary(ByteBuffer buffer) {
+        int end = Math.min(buffer.limit(), BINARY_SCAN);
+        for (int i = 0; i < end; i++) {
+            if (buffer.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
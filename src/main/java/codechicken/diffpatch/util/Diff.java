@@ -2,11 +2,21 @@ package codechicken.diffpatch.util;
 
 /**
  * Represents a single line Difference.
+ * <p>
+ * Diffs are immutable, so they may be freely shared between Patches.
  */
 public class Diff {
 
+    private static final Diff[] EMPTY = new Diff[Operation.values().length];
+
+    static {
+        for (Operation op : Operation.values()) {
+            EMPTY[op.ordinal()] = new Diff(op, "");
+        }
+    }
+
     public final Operation op;
-    public String text;
+    public final String text;
 
     public Diff(Operation op, String text) {
         this.op = op;
@@ -17,6 +27,20 @@ public class Diff {
         this(other.op, other.text);
     }
 
+    /**
+     * Gets a Diff for the given line, blank lines share a single instance per operation.
+     *
+     * @param op   The operation.
+     * @param text The line.
+     * @return The Diff.
+     */
+    public static Diff of(Operation op, String text) {
+        if (text.isEmpty()) {
+            return EMPTY[op.ordinal()];
+        }
+        return new Diff(op, text);
+    }
+
     @Override
     public String toString() {
         return op.getPrefix() + text;
@@ -0,0 +1,221 @@
+package codechicken.diffpatch.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The lines of a {@link Patch}, stored column wise.
+ * <p>
+ * Operations are held as a byte per line and lines as int ids into a shared
+ * {@link LineTable}, instead of a {@link Diff} object per line. Hunks are immutable,
+ * a Patch viewing one only copies it into a list of Diffs when it is modified.
+ */
+public final class Hunk {
+
+    private static final Operation[] OPS = Operation.values();
+
+    private final LineTable table;
+    private final byte[] ops;
+    private final int[] lines;
+
+    private Hunk(LineTable table, byte[] ops, int[] lines) {
+        this.table = table;
+        this.ops = ops;
+        this.lines = lines;
+    }
+
+    /**
+     * Creates a Hunk from Diffs, interning their lines into the given table.
+     *
+     * @param diffs The Diffs.
+     * @param table The table.
+     * @return The Hunk.
+     */
+    public static Hunk of(List<Diff> diffs, LineTable table) {
+        Builder builder = new Builder(table, diffs.size());
+        for (Diff diff : diffs) {
+            builder.add(diff.op, diff.text);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a Hunk where every line has the same operation.
+     *
+     * @param op    The operation.
+     * @param lines The lines.
+     * @param table The table.
+     * @return The Hunk.
+     */
+    public static Hunk of(Operation op, List<String> lines, LineTable table) {
+        Builder builder = new Builder(table, lines.size());
+        for (String line : lines) {
+            builder.add(op, line);
+        }
+        return builder.build();
+    }
+
+    public LineTable getTable() {
+        return table;
+    }
+
+    public int size() {
+        return ops.length;
+    }
+
+    public Operation getOp(int i) {
+        return OPS[ops[i]];
+    }
+
+    public int getLineId(int i) {
+        return lines[i];
+    }
+
+    public String getLine(int i) {
+        return table.get(lines[i]);
+    }
+
+    /**
+     * @return The number of lines in the base file, everything except inserts.
+     */
+    public int getLength1() {
+        return countExcept(Operation.INSERT);
+    }
+
+    /**
+     * @return The number of lines in the patched file, everything except deletes.
+     */
+    public int getLength2() {
+        return countExcept(Operation.DELETE);
+    }
+
+    public List<String> getContextLines() {
+        return collect(Operation.INSERT);
+    }
+
+    public List<String> getPatchedLines() {
+        return collect(Operation.DELETE);
+    }
+
+    /**
+     * Checks if the context lines of this Hunk are equal to the given lines, starting at loc.
+     *
+     * @param lines The lines.
+     * @param loc   The index of the first line to compare.
+     * @return If the context matches.
+     */
+    public boolean matchesContext(List<String> lines, int loc) {
+        byte skip = (byte) Operation.INSERT.ordinal();
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] == skip) {
+                continue;
+            }
+            if (loc >= lines.size() || !table.get(this.lines[i]).equals(lines.get(loc++))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the lines with the given operation.
+     *
+     * @param op The operation.
+     * @return The count.
+     */
+    public int count(Operation op) {
+        return ops.length - countExcept(op);
+    }
+
+    /**
+     * A read only view of this Hunk as Diffs.
+     * Each access creates a Diff, prefer {@link #getOp} and {@link #getLine} when iterating.
+     */
+    public List<Diff> asList() {
+        return new DiffList(this);
+    }
+
+    private int countExcept(Operation excluded) {
+        byte skip = (byte) excluded.ordinal();
+        int count = 0;
+        for (byte op : ops) {
+            if (op != skip) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<String> collect(Operation excluded) {
+        byte skip = (byte) excluded.ordinal();
+        List<String> list = new ArrayList<>(ops.length);
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] != skip) {
+                list.add(table.get(lines[i]));
+            }
+        }
+        return list;
+    }
+
+    public static class Builder {
+
+        private final LineTable table;
+        private byte[] ops;
+        private int[] lines;
+        private int size;
+
+        public Builder(LineTable table) {
+            this(table, 16);
+        }
+
+        public Builder(LineTable table, int capacity) {
+            this.table = table;
+            ops = new byte[Math.max(capacity, 1)];
+            lines = new int[ops.length];
+        }
+
+        public Builder add(Operation op, String line) {
+            return add(op, table.intern(line));
+        }
+
+        public Builder add(Operation op, int lineId) {
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            ops[size] = (byte) op.ordinal();
+            lines[size++] = lineId;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Hunk build() {
+            return new Hunk(table, Arrays.copyOf(ops, size), Arrays.copyOf(lines, size));
+        }
+    }
+
+    static final class DiffList extends AbstractList<Diff> implements RandomAccess {
+
+        final Hunk hunk;
+
+        private DiffList(Hunk hunk) {
+            this.hunk = hunk;
+        }
+
+        @Override
+        public Diff get(int index) {
+            return Diff.of(hunk.getOp(index), hunk.getLine(index));
+        }
+
+        @Override
+        public int size() {
+            return hunk.ops.length;
+        }
+    }
+}
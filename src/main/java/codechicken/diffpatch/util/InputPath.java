@@ -10,6 +10,11 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import codechicken.diffpatch.util.archiver.ArchiveReader;
+import codechicken.diffpatch.util.archiver.TarArchiveReader;
+import codechicken.diffpatch.util.archiver.TarStreamReader;
+
 /**
  * Created by covers1624 on 25/8/20.
  */
@@ -77,6 +82,26 @@ public abstract class InputPath {
      */
     public abstract String getName();
 
+    /**
+     * Opens the archive this input represents.
+     * Only supported for {@link PathType#ARCHIVE}
+     *
+     * @return The ArchiveReader.
+     */
+    public ArchiveReader openArchive() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Gets if this input can only be read once, in order.
+     * Streamed archives are read entry by entry with {@link TarPipePath#openStream}.
+     *
+     * @return If this input is a stream.
+     */
+    public boolean isStream() {
+        return false;
+    }
+
     public static class FilePath extends InputPath {
 
         private final Path path;
@@ -161,6 +186,132 @@ public abstract class InputPath {
         }
     }
 
+    /**
+     * An archive, treated as a folder of its entries.
+     */
+    public static class ArchivePath extends InputPath {
+
+        private final Path path;
+        private final ArchiveFormat format;
+
+        public ArchivePath(Path path) {
+            this(path, formatOf(path));
+        }
+
+        public ArchivePath(Path path, ArchiveFormat format) {
+            super(PathType.ARCHIVE);
+            this.path = path;
+            this.format = format;
+        }
+
+        public ArchiveFormat getFormat() {
+            return format;
+        }
+
+        @Override
+        public ArchiveReader openArchive() throws IOException {
+            return format.createReader(path);
+        }
+
+        @Override
+        public boolean isFile() {
+            return false;
+        }
+
+        @Override
+        public boolean exists() {
+            return Files.exists(path);
+        }
+
+        @Override
+        public Path toPath() {
+            return path;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return Files.newInputStream(path);
+        }
+
+        @Override
+        public List<String> readAllLines() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getName() {
+            return path.getFileName().toString();
+        }
+    }
+
+    /**
+     * A tar stream, treated as a folder of its entries.
+     * <p>
+     * Operations which can will process entries as they arrive, otherwise
+     * {@link #openArchive} reads the whole stream into memory.
+     */
+    public static class TarPipePath extends InputPath {
+
+        private final InputStream pipe;
+
+        public TarPipePath(InputStream pipe) {
+            super(PathType.ARCHIVE);
+            this.pipe = pipe;
+        }
+
+        public TarStreamReader openStream() {
+            return new TarStreamReader(open());
+        }
+
+        @Override
+        public ArchiveReader openArchive() throws IOException {
+            return new TarArchiveReader(open());
+        }
+
+        @Override
+        public boolean isStream() {
+            return true;
+        }
+
+        @Override
+        public InputStream open() {
+            return Utils.protectClose(pipe);
+        }
+
+        @Override
+        public List<String> readAllLines() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isFile() {
+            return false;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Path toPath() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static ArchiveFormat formatOf(Path path) {
+        ArchiveFormat format = ArchiveFormat.findFormat(path);
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown archive format: " + path);
+        }
+        return format;
+    }
+
     //@formatter:off
     public static class NullPath extends InputPath {
         public static final NullPath INSTANCE = new NullPath();
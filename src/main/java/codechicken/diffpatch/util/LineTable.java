@@ -0,0 +1,61 @@
+package codechicken.diffpatch.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns lines into dense int ids, referenced by {@link Hunk}s.
+ * <p>
+ * Equal lines share a single id, and a single String instance.
+ * Not thread safe.
+ */
+public class LineTable {
+
+    private String[] lines;
+    private int size;
+    private Map<String, Integer> ids;
+
+    public LineTable() {
+        lines = new String[64];
+        ids = new HashMap<>();
+    }
+
+    /**
+     * Creates a LineTable from lines which are already distinct, such as a serialized table.
+     * Line ids are their index in the array.
+     *
+     * @param lines The lines, not copied.
+     */
+    public LineTable(String[] lines) {
+        this.lines = lines;
+        size = lines.length;
+    }
+
+    public int intern(String line) {
+        if (ids == null) {
+            ids = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                ids.putIfAbsent(lines[i], i);
+            }
+        }
+        Integer id = ids.get(line);
+        if (id != null) {
+            return id;
+        }
+        if (size == lines.length) {
+            lines = Arrays.copyOf(lines, Math.max(16, size * 2));
+        }
+        lines[size] = line;
+        ids.put(line, size);
+        return size++;
+    }
+
+    public String get(int id) {
+        return lines[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
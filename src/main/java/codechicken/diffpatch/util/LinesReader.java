@@ -1,9 +1,43 @@
 package codechicken.diffpatch.util;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
+import codechicken.diffpatch.util.Utils.ThrowingFunction;
+
 public interface LinesReader {
 
     List<String> apply(String path) throws IOException;
-}
\ No newline at end of file
+
+    /**
+     * Gets the size of a file without reading it, files of different sizes are known to have changed.
+     *
+     * @param path The file.
+     * @return The size in bytes, or -1 if it is not known without reading the file.
+     */
+    default long size(String path) throws IOException {
+        return -1;
+    }
+
+    /**
+     * Reads files on disk as {@link ByteLines}, their sizes come from the file system.
+     *
+     * @param resolver Resolves a relative path to the file.
+     * @return The LinesReader.
+     */
+    static LinesReader ofFiles(ThrowingFunction<String, Path, IOException> resolver) {
+        return new LinesReader() {
+            @Override
+            public List<String> apply(String path) throws IOException {
+                return ByteLines.read(resolver.apply(path));
+            }
+
+            @Override
+            public long size(String path) throws IOException {
+                return Files.size(resolver.apply(path));
+            }
+        };
+    }
+}
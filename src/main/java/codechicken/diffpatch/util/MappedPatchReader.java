@@ -0,0 +1,343 @@
+package codechicken.diffpatch.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import codechicken.diffpatch.util.PatchLineParser.LineType;
+
+/**
+ * Reads {@link PatchFile}s from raw bytes, without decoding the patch up front.
+ * <p>
+ * Line offsets are indexed straight from the bytes, only file headers are
+ * decoded while parsing. The diff lines of each hunk stay as byte ranges in the
+ * source buffer until the hunk's {@link Patch#diffs} are first accessed, so hunks
+ * which are never applied, for example patches for missing files, are never decoded.
+ * <p>
+ * Larger files are memory mapped instead of being copied onto the heap.
+ */
+public class MappedPatchReader {
+
+    // Files smaller than this are cheaper to read than to map, mapping costs a syscall and
+    // page faults per file and keeps the file open until the buffer is collected.
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private final String name;
+    private final ByteBuffer buffer;
+    private final boolean verifyHeaders;
+
+    // Start and end (exclusive, without terminators) of each line.
+    private int[] lineStarts = new int[256];
+    private int[] lineEnds = new int[256];
+    private int numLines;
+
+    private MappedPatchReader(String name, ByteBuffer buffer, boolean verifyHeaders) {
+        this.name = name;
+        this.buffer = buffer;
+        this.verifyHeaders = verifyHeaders;
+    }
+
+    /**
+     * Reads all PatchFiles from the given file.
+     *
+     * @param name          The name to use for each PatchFile.
+     * @param path          The file.
+     * @param verifyHeaders If the applied offset of hunk headers should be verified.
+     * @return The PatchFiles.
+     */
+    public static List<PatchFile> read(String name, Path path, boolean verifyHeaders) throws IOException {
+        return read(name, map(path), verifyHeaders);
+    }
+
+    /**
+     * Reads all PatchFiles from the given buffer, between its position and limit.
+     * <p>
+     * The buffer is retained by the returned PatchFiles until all their hunks have been decoded.
+     *
+     * @param name          The name to use for each PatchFile.
+     * @param buffer        The buffer.
+     * @param verifyHeaders If the applied offset of hunk headers should be verified.
+     * @return The PatchFiles.
+     */
+    public static List<PatchFile> read(String name, ByteBuffer buffer, boolean verifyHeaders) {
+        MappedPatchReader reader = new MappedPatchReader(name, buffer.slice(), verifyHeaders);
+        reader.indexLines();
+        return reader.parse();
+    }
+
+    /**
+     * Scans the file headers of all PatchFiles in the given buffer, without decoding any hunks.
+     * <p>
+     * Only file headers are decoded, the lines of each hunk are only
+     * counted to tell them apart from file headers. Malformed lines are left for a full
+     * read to report.
+     *
+     * @param name   The name to use for each PatchFile.
+     * @param buffer The buffer.
+     * @return The headers.
+     */
+    public static List<PatchHeader> scan(String name, ByteBuffer buffer) {
+        MappedPatchReader reader = new MappedPatchReader(name, buffer.slice(), false);
+        reader.indexLines();
+        return reader.scanHeaders();
+    }
+
+    /**
+     * Maps the given file into memory, small files are read onto the heap instead.
+     *
+     * @param path The file.
+     * @return The buffer.
+     */
+    public static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                return ByteBuffer.wrap(Files.readAllBytes(path));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private void indexLines() {
+        int limit = buffer.limit();
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                addLine(start, i);
+                start = i + 1;
+            }
+        }
+        if (start < limit) {
+            addLine(start, limit);
+        }
+    }
+
+    private void addLine(int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (numLines == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, numLines * 2);
+            lineEnds = Arrays.copyOf(lineEnds, numLines * 2);
+        }
+        lineStarts[numLines] = start;
+        lineEnds[numLines] = end;
+        numLines++;
+    }
+
+    private List<PatchFile> parse() {
+        List<PatchFile> list = new ArrayList<>();
+        PatchLineParser parser = new PatchLineParser(name, verifyHeaders);
+        LineView line = new LineView();
+        PatchFile patchFile = null;
+        Patch patch = null;
+        for (int i = 0; i < numLines; i++) {
+            int start = lineStarts[i];
+            int len = lineEnds[i] - start;
+            line.set(start, len);
+            LineType type = parser.classify(line);
+            switch (type) {
+                //ignore blank lines
+                case BLANK:
+                    break;
+                case BASE_HEADER:
+                    patchFile = new PatchFile();
+                    patchFile.name = name;
+                    patchFile.basePath = decode(start + 4, len - 4);
+                    list.add(patchFile);
+                    patch = null;
+                    parser.startFile();
+                    break;
+                case PATCHED_HEADER:
+                    patchFile = ensurePatchFile(list, patchFile);
+                    patchFile.patchedPath = decode(start + 4, len - 4);
+                    break;
+                case HUNK_HEADER:
+                    patch = parser.hunkHeader(line, i + 1);
+                    patchFile = ensurePatchFile(list, patchFile);
+                    patch.diffs = new LazyDiffList(i + 1);
+                    patchFile.patches.add(patch);
+                    break;
+                case EQUAL:
+                case INSERT:
+                case DELETE:
+                    parser.diffLine(type, line, i + 1);
+                    ((LazyDiffList) patch.diffs).extend(i + 1);
+                    break;
+                case NO_NEW_LINE:
+                    patchFile = ensurePatchFile(list, patchFile);
+                    parser.noNewLine(patchFile);
+                    break;
+                default:
+                    throw parser.invalidLine(line, i + 1);
+            }
+        }
+        return list;
+    }
+
+    private List<PatchHeader> scanHeaders() {
+        List<PatchHeader> list = new ArrayList<>();
+        PatchLineParser parser = new PatchLineParser(name, false);
+        LineView line = new LineView();
+        Patch hunk = new Patch();
+        boolean inFile = false;
+        String basePath = null;
+        String patchedPath = null;
+        int hunks = 0;
+        for (int i = 0; i < numLines; i++) {
+            int start = lineStarts[i];
+            int len = lineEnds[i] - start;
+            line.set(start, len);
+            LineType type = parser.classify(line);
+            switch (type) {
+                case BASE_HEADER:
+                    if (inFile) {
+                        list.add(new PatchHeader(name, basePath, patchedPath, hunks));
+                    }
+                    inFile = true;
+                    basePath = decode(start + 4, len - 4);
+                    patchedPath = null;
+                    hunks = 0;
+                    parser.startFile();
+                    break;
+                case PATCHED_HEADER:
+                    inFile = true;
+                    patchedPath = decode(start + 4, len - 4);
+                    break;
+                case HUNK_HEADER:
+                    inFile = true;
+                    hunks++;
+                    if (PatchReader.parseHunkHeader(line, hunk)) {
+                        parser.startHunk(hunk, i + 1);
+                    }
+                    break;
+                case EQUAL:
+                case INSERT:
+                case DELETE:
+                    if (parser.inHunk()) {
+                        parser.diffLine(type, line, i + 1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (inFile) {
+            list.add(new PatchHeader(name, basePath, patchedPath, hunks));
+        }
+        return list;
+    }
+
+    private PatchFile ensurePatchFile(List<PatchFile> list, PatchFile patchFile) {
+        if (patchFile == null) {
+            patchFile = new PatchFile();
+            patchFile.name = name;
+            list.add(patchFile);
+        }
+        return patchFile;
+    }
+
+    private String decode(int start, int len) {
+        byte[] bytes = new byte[len];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(start);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A line of the source buffer as Latin-1 chars, enough to classify it and parse hunk
+     * headers without decoding. {@link #toString} decodes it properly.
+     */
+    private class LineView implements CharSequence {
+
+        private int start;
+        private int len;
+
+        private void set(int start, int len) {
+            this.start = start;
+            this.len = len;
+        }
+
+        //@formatter:off
+        @Override public int length() { return len; }
+        @Override public char charAt(int index) { return (char) (buffer.get(start + index) & 0xFF); }
+        @Override public CharSequence subSequence(int start, int end) { return toString().substring(start, end); }
+        @Override public String toString() { return decode(start, len); }
+        //@formatter:on
+    }
+
+    /**
+     * The diffs of a hunk, kept as a range of lines in the source buffer until first accessed.
+     */
+    private class LazyDiffList extends AbstractList<Diff> {
+
+        private final int firstLine;
+        private int endLine;
+        private int size;
+
+        private List<Diff> diffs;
+
+        private LazyDiffList(int firstLine) {
+            this.firstLine = firstLine;
+            endLine = firstLine;
+        }
+
+        private void extend(int endLine) {
+            this.endLine = endLine;
+            size++;
+        }
+
+        private List<Diff> materialize() {
+            if (diffs == null) {
+                List<Diff> diffs = new ArrayList<>(size);
+                if (size > 0) {
+                    //Copy the whole hunk once, then decode each line from that.
+                    int base = lineStarts[firstLine];
+                    byte[] bytes = new byte[lineEnds[endLine - 1] - base];
+                    ByteBuffer dup = buffer.duplicate();
+                    dup.position(base);
+                    dup.get(bytes);
+                    for (int i = firstLine; i < endLine; i++) {
+                        int start = lineStarts[i] - base;
+                        int len = lineEnds[i] - lineStarts[i];
+                        if (len == 0 || bytes[start] == '\\') {
+                            continue;
+                        }
+                        Operation op;
+                        switch (bytes[start]) {
+                            case '+':
+                                op = Operation.INSERT;
+                                break;
+                            case '-':
+                                op = Operation.DELETE;
+                                break;
+                            default:
+                                op = Operation.EQUAL;
+                                break;
+                        }
+                        diffs.add(Diff.of(op, new String(bytes, start + 1, len - 1, StandardCharsets.UTF_8)));
+                    }
+                }
+                this.diffs = diffs;
+            }
+            return diffs;
+        }
+
+        //@formatter:off
+        @Override public Diff get(int index) { return materialize().get(index); }
+        @Override public int size() { return diffs != null ? diffs.size() : size; }
+        @Override public Diff set(int index, Diff element) { return materialize().set(index, element); }
+        @Override public void add(int index, Diff element) { materialize().add(index, element); modCount++; }
+        @Override public Diff remove(int index) { modCount++; return materialize().remove(index); }
+        //@formatter:on
+    }
+}
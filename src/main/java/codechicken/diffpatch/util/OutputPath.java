@@ -6,6 +6,10 @@ import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import codechicken.diffpatch.util.archiver.ArchiveWriter;
+import codechicken.diffpatch.util.archiver.TarArchiveWriter;
+
 /**
  * Created by covers1624 on 25/8/20.
  */
@@ -66,6 +70,16 @@ public abstract class OutputPath {
      */
     public abstract String getName();
 
+    /**
+     * Creates the archive this output represents, replacing any existing file.
+     * Only supported for {@link PathType#ARCHIVE}
+     *
+     * @return The ArchiveWriter.
+     */
+    public ArchiveWriter openArchive() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
     public static class FilePath extends OutputPath {
 
         private final Path path;
@@ -141,6 +155,102 @@ public abstract class OutputPath {
         }
     }
 
+    /**
+     * An archive, written as a folder of its entries.
+     */
+    public static class ArchivePath extends OutputPath {
+
+        private final Path path;
+        private final ArchiveFormat format;
+
+        public ArchivePath(Path path) {
+            this(path, InputPath.formatOf(path));
+        }
+
+        public ArchivePath(Path path, ArchiveFormat format) {
+            super(PathType.ARCHIVE);
+            this.path = path.toAbsolutePath();
+            this.format = format;
+        }
+
+        public ArchiveFormat getFormat() {
+            return format;
+        }
+
+        @Override
+        public ArchiveWriter openArchive() throws IOException {
+            return format.createWriter(Utils.makeParentDirs(path));
+        }
+
+        @Override
+        public boolean isFile() {
+            return false;
+        }
+
+        @Override
+        public boolean exists() {
+            return Files.exists(path);
+        }
+
+        @Override
+        public Path toPath() {
+            return path;
+        }
+
+        @Override
+        public OutputStream open() throws IOException {
+            return Files.newOutputStream(Utils.makeParentDirs(path));
+        }
+
+        @Override
+        public String getName() {
+            return path.getFileName().toString();
+        }
+    }
+
+    /**
+     * A tar stream, written as a folder of its entries.
+     */
+    public static class TarPipePath extends OutputPath {
+
+        private final OutputStream pipe;
+
+        public TarPipePath(OutputStream pipe) {
+            super(PathType.ARCHIVE);
+            this.pipe = pipe;
+        }
+
+        @Override
+        public ArchiveWriter openArchive() {
+            return new TarArchiveWriter(open());
+        }
+
+        @Override
+        public OutputStream open() {
+            return Utils.protectClose(pipe);
+        }
+
+        @Override
+        public boolean isFile() {
+            return false;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public Path toPath() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getName() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     //@formatter:off
     public static class NullPath extends OutputPath {
         public static final NullPath INSTANCE = new NullPath();
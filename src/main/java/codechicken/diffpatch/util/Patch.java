@@ -1,7 +1,9 @@
 package codechicken.diffpatch.util;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -11,6 +13,10 @@ import java.util.stream.Stream;
  */
 public class Patch {
 
+    /**
+     * The diffs of this Patch.
+     * Copies share storage with the original, and copy it out on first modification.
+     */
     public List<Diff> diffs;
     public int start1;
     public int start2;
@@ -21,17 +27,151 @@ public class Patch {
         diffs = new ArrayList<>();
     }
 
+    /**
+     * Copies a Patch, the copy shares its diffs with the original until it is modified.
+     * The original is not modified, so the same Patch may be copied from several threads.
+     */
     public Patch(Patch other) {
-        this.diffs = other.diffs.stream().map(Diff::new).collect(Collectors.toList());
+        this.diffs = share(other.diffs);
         this.start1 = other.start1;
         this.start2 = other.start2;
         this.length1 = other.length1;
         this.length2 = other.length2;
     }
 
+    /**
+     * Creates a Patch viewing the given Hunk, its lengths are calculated from the Hunk.
+     */
+    public Patch(Hunk hunk) {
+        setHunk(hunk);
+        length1 = hunk.getLength1();
+        length2 = hunk.getLength2();
+    }
+
+    /**
+     * Replaces the diffs of this Patch with a view of the given Hunk.
+     * The view is copied into a list of Diffs when it is first modified.
+     */
+    public void setHunk(Hunk hunk) {
+        diffs = new SharedDiffList(hunk.asList());
+    }
+
+    /**
+     * @return The Hunk backing this Patch, or null if its diffs are not an unmodified Hunk view.
+     */
+    public Hunk getHunk() {
+        List<Diff> diffs = this.diffs;
+        if (diffs instanceof SharedDiffList && ((SharedDiffList) diffs).owned == null) {
+            diffs = ((SharedDiffList) diffs).shared;
+        }
+        return diffs instanceof Hunk.DiffList ? ((Hunk.DiffList) diffs).hunk : null;
+    }
+
+    /**
+     * Gets the operation of a diff, without creating a Diff for Hunk backed Patches.
+     *
+     * @param i The index of the diff.
+     * @return The operation.
+     */
+    public Operation getOp(int i) {
+        return getOp(getHunk(), i);
+    }
+
+    /**
+     * Gets the text of a diff, without creating a Diff for Hunk backed Patches.
+     *
+     * @param i The index of the diff.
+     * @return The line.
+     */
+    public String getLine(int i) {
+        Hunk hunk = getHunk();
+        return hunk != null ? hunk.getLine(i) : diffs.get(i).text;
+    }
+
+    /**
+     * Counts the diffs with the given operation.
+     *
+     * @param op The operation.
+     * @return The count.
+     */
+    public int count(Operation op) {
+        Hunk hunk = getHunk();
+        if (hunk != null) {
+            return hunk.count(op);
+        }
+        int count = 0;
+        for (Diff diff : diffs) {
+            if (diff.op == op) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds each diff as a unified diff line to the given list.
+     *
+     * @param lines The list to add to.
+     */
+    public void addDiffLines(List<String> lines) {
+        Hunk hunk = getHunk();
+        if (hunk == null) {
+            for (Diff diff : diffs) {
+                lines.add(diff.toString());
+            }
+            return;
+        }
+        for (int i = 0; i < hunk.size(); i++) {
+            lines.add(hunk.getOp(i).getPrefix() + hunk.getLine(i));
+        }
+    }
+
+    /**
+     * Gets the Hunk backing this Patch, building one in the given table if there is none.
+     *
+     * @param table The table to intern lines into.
+     * @return The Hunk.
+     */
+    public Hunk toHunk(LineTable table) {
+        Hunk hunk = getHunk();
+        if (hunk == null || hunk.getTable() != table) {
+            hunk = Hunk.of(diffs, table);
+        }
+        return hunk;
+    }
+
+    /**
+     * Gets the diffs for modification, copying them first if they are shared with another Patch.
+     *
+     * @return The diffs, owned by this Patch.
+     */
+    public List<Diff> mutableDiffs() {
+        if (diffs instanceof SharedDiffList) {
+            diffs = ((SharedDiffList) diffs).own();
+        } else if (diffs instanceof Hunk.DiffList) {
+            diffs = new ArrayList<>(diffs);
+        }
+        return diffs;
+    }
+
+    // Read only diffs are shared as is, anything else may still be modified by its owner so is copied.
+    private static List<Diff> share(List<Diff> diffs) {
+        if (diffs instanceof Hunk.DiffList) {
+            return new SharedDiffList(diffs);
+        }
+        if (diffs instanceof SharedDiffList) {
+            SharedDiffList list = (SharedDiffList) diffs;
+            if (list.owned == null) {
+                return new SharedDiffList(list.shared);
+            }
+        }
+        return new SharedDiffList(new ArrayList<>(diffs));
+    }
+
     private LineRange trimRange(LineRange range) {
+        Hunk hunk = getHunk();
         int start = 0;
-        while (start < diffs.size() && diffs.get(start).op == Operation.EQUAL) {
+        while (start < diffs.size() && getOp(hunk, start) == Operation.EQUAL) {
             start++;
         }
         if (start == diffs.size()) {
@@ -39,13 +179,23 @@ public class Patch {
         }
 
         int end = diffs.size();
-        while (end > start && diffs.get(end - 1).op == Operation.EQUAL) {
+        while (end > start && getOp(hunk, end - 1) == Operation.EQUAL) {
             end--;
         }
         return new LineRange(range.getStart() + start, range.getEnd() - (diffs.size() - end));
     }
 
+    private Operation getOp(Hunk hunk, int i) {
+        return hunk != null ? hunk.getOp(i) : diffs.get(i).op;
+    }
+
     public void recalculateLength() {
+        Hunk hunk = getHunk();
+        if (hunk != null) {
+            length1 = hunk.getLength1();
+            length2 = hunk.getLength2();
+            return;
+        }
         length1 = diffs.size();
         length2 = diffs.size();
         for (Diff diff : diffs) {
@@ -62,10 +212,12 @@ public class Patch {
 
         if (r.getLength() == 0) {
             length1 = length2 = 0;
-            diffs.clear();
+            diffs = new ArrayList<>();
             return;
         }
 
+        List<Diff> diffs = mutableDiffs();
+
         int trimStart = r.getStart() - numContextLines;
         int trimEnd = diffs.size() - r.getEnd() - numContextLines;
         if (trimStart > 0) {
@@ -148,8 +300,9 @@ public class Patch {
             throw new IllegalArgumentException("Patches overlap");
         }
 
+        List<Diff> diffs = mutableDiffs();
         while (start1 + length1 < patch2.start1) {
-            diffs.add(new Diff(Operation.EQUAL, lines1.get(start1 + length1)));
+            diffs.add(Diff.of(Operation.EQUAL, lines1.get(start1 + length1)));
             length1++;
             length2++;
         }
@@ -173,8 +326,57 @@ public class Patch {
     public LineRange getTrimmedRange2() { return trimRange(getRange2()); }
     //@formatter:on
 
+    public List<String> getContextLineList() {
+        Hunk hunk = getHunk();
+        return hunk != null ? hunk.getContextLines() : collect(Operation.INSERT);
+    }
+
+    public List<String> getPatchedLineList() {
+        Hunk hunk = getHunk();
+        return hunk != null ? hunk.getPatchedLines() : collect(Operation.DELETE);
+    }
+
+    private List<String> collect(Operation excluded) {
+        List<String> lines = new ArrayList<>(diffs.size());
+        for (Diff diff : diffs) {
+            if (diff.op != excluded) {
+                lines.add(diff.text);
+            }
+        }
+        return lines;
+    }
+
     @Override
     public String toString() {
         return getHeader() + "\n" + diffs.stream().map(Diff::toString).collect(Collectors.joining("\n"));
     }
+
+    /**
+     * Diffs shared between copies of a Patch, the shared list is never modified.
+     * The first modification copies it into a list owned by this view.
+     */
+    private static final class SharedDiffList extends AbstractList<Diff> implements RandomAccess {
+
+        private final List<Diff> shared;
+        private List<Diff> owned;
+
+        private SharedDiffList(List<Diff> shared) {
+            this.shared = shared;
+        }
+
+        private List<Diff> own() {
+            if (owned == null) {
+                owned = new ArrayList<>(shared);
+            }
+            return owned;
+        }
+
+        //@formatter:off
+        @Override public Diff get(int index) { return (owned != null ? owned : shared).get(index); }
+        @Override public int size() { return (owned != null ? owned : shared).size(); }
+        @Override public Diff set(int index, Diff element) { return own().set(index, element); }
+        @Override public void add(int index, Diff element) { own().add(index, element); modCount++; }
+        @Override public Diff remove(int index) { modCount++; return own().remove(index); }
+        //@formatter:on
+    }
 }
@@ -0,0 +1,240 @@
+package codechicken.diffpatch.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import codechicken.diffpatch.util.archiver.ArchiveWriter;
+
+/**
+ * A single file container holding many patches.
+ * <p>
+ * Entries are keyed by the path of the file they patch, and hold either unified diff
+ * text or a {@link BinaryPatchFormat} bundle. Entry data is written first, followed by
+ * a table of contents and a fixed size footer pointing at it, so a bundle can be
+ * written in a single pass and any entry can be read without touching the others.
+ * <p>
+ * Layout:
+ * <pre>
+ * entry data...
+ * int entryCount, entryCount * (UTF path, long offset, int length)
+ * long tocOffset, magic "DPBN"
+ * </pre>
+ */
+public class PatchBundle implements Closeable {
+
+    private static final int MAGIC = 'D' << 24 | 'P' << 16 | 'B' << 8 | 'N';
+    private static final int FOOTER_SIZE = 12;
+
+    // Entries smaller than this are cheaper to read than to map.
+    private static final int MAP_THRESHOLD = 16 * 1024;
+
+    private final FileChannel channel;
+    private final Map<String, long[]> toc;
+
+    private PatchBundle(FileChannel channel, Map<String, long[]> toc) {
+        this.channel = channel;
+        this.toc = toc;
+    }
+
+    /**
+     * Checks if the given file is a PatchBundle by its footer.
+     *
+     * @param path The file.
+     * @return If the file is a PatchBundle.
+     */
+    public static boolean isBundle(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                return false;
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(channel, footer, size - FOOTER_SIZE);
+            return footer.getInt(8) == MAGIC;
+        }
+    }
+
+    /**
+     * Opens a PatchBundle for reading, only the table of contents is read.
+     *
+     * @param path The file.
+     * @return The PatchBundle.
+     */
+    public static PatchBundle open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(channel, footer, size - FOOTER_SIZE);
+            if (footer.getInt(8) != MAGIC) {
+                throw new IOException("Not a patch bundle: " + path);
+            }
+            long tocOffset = footer.getLong(0);
+            ByteBuffer tocBuf = ByteBuffer.allocate((int) (size - FOOTER_SIZE - tocOffset));
+            readFully(channel, tocBuf, tocOffset);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(tocBuf.array()));
+            int count = in.readInt();
+            Map<String, long[]> toc = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String entry = in.readUTF();
+                toc.put(entry, new long[] { in.readLong(), in.readInt() });
+            }
+            return new PatchBundle(channel, toc);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a new PatchBundle, replacing any existing file.
+     *
+     * @param path The file.
+     * @return The Writer.
+     */
+    public static Writer create(Path path) throws IOException {
+        return new Writer(FileChannel.open(Utils.makeParentDirs(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * @return The paths of all entries, in the order they were written.
+     */
+    public Set<String> getEntries() {
+        return Collections.unmodifiableSet(toc.keySet());
+    }
+
+    /**
+     * Gets the raw data for an entry.
+     *
+     * @param entry The entry.
+     * @return The data, or null if the entry does not exist.
+     */
+    public ByteBuffer getEntry(String entry) throws IOException {
+        long[] loc = toc.get(entry);
+        if (loc == null) {
+            return null;
+        }
+        if (loc[1] < MAP_THRESHOLD) {
+            ByteBuffer buf = ByteBuffer.allocate((int) loc[1]);
+            readFully(channel, buf, loc[0]);
+            buf.flip();
+            return buf;
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, loc[0], loc[1]);
+    }
+
+    /**
+     * Reads the PatchFiles stored in an entry.
+     * PatchFiles are named after their entry, with a {@code .patch} suffix.
+     *
+     * @param entry The entry.
+     * @return The PatchFiles, empty if the entry does not exist.
+     */
+    public List<PatchFile> readPatchFiles(String entry) throws IOException {
+        ByteBuffer buffer = getEntry(entry);
+        if (buffer == null) {
+            return new ArrayList<>();
+        }
+        String name = entry + ".patch";
+        if (BinaryPatchFormat.isBinary(buffer)) {
+            return BinaryPatchFormat.read(name, buffer);
+        }
+        return MappedPatchReader.read(name, buffer, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of patch bundle.");
+            }
+        }
+    }
+
+    public static class Writer implements ArchiveWriter {
+
+        private final FileChannel channel;
+        private final Map<String, long[]> toc = new LinkedHashMap<>();
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        public void putEntry(String entry, ByteBuffer data) throws IOException {
+            if (toc.containsKey(entry)) {
+                throw new IllegalArgumentException("Duplicate entry: " + entry);
+            }
+            long offset = channel.position();
+            int length = data.remaining();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            toc.put(entry, new long[] { offset, length });
+        }
+
+        @Override
+        public void putEntry(String entry, byte[] data) throws IOException {
+            putEntry(entry, ByteBuffer.wrap(data));
+        }
+
+        /**
+         * Puts an entry of unified diff lines, each line is terminated by the line separator.
+         */
+        public void putEntry(String entry, List<String> lines, String lineSeparator) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines) {
+                sb.append(line).append(lineSeparator);
+            }
+            putEntry(entry, sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                long tocOffset = channel.position();
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bos);
+                out.writeInt(toc.size());
+                for (Map.Entry<String, long[]> entry : toc.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue()[0]);
+                    out.writeInt((int) entry.getValue()[1]);
+                }
+                out.writeLong(tocOffset);
+                out.writeInt(MAGIC);
+                out.flush();
+                ByteBuffer buf = ByteBuffer.wrap(bos.toByteArray());
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -2,8 +2,8 @@ package codechicken.diffpatch.util;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import codechicken.diffpatch.util.PatchLineParser.LineType;
 
 import static codechicken.diffpatch.util.StringUtils.removeStart;
 
@@ -12,13 +12,16 @@ import static codechicken.diffpatch.util.StringUtils.removeStart;
  */
 public class PatchFile {
 
-    private static final Pattern HUNK_OFFSET = Pattern.compile("@@ -(\\d+),(\\d+) \\+([_\\d]+),(\\d+) @@");
-    private static final String NO_NEW_LINE = "\\ No newline at end of file";
-
     public String name;
     public String basePath;
     public String patchedPath;
     public boolean noNewLine;
+    /**
+     * Which sides of the diff lack a newline at the end, as given by where the no newline markers are.
+     * Either implies {@link #noNewLine}.
+     */
+    public boolean baseNoNewLine;
+    public boolean patchedNoNewLine;
 
     public List<Patch> patches = new ArrayList<>();
     
@@ -31,96 +34,77 @@ public class PatchFile {
     
     public static List<PatchFile> fromLines(String name, List<String> lines, boolean verifyHeaders) {
     	List<PatchFile> list = new ArrayList<>();
-
-        int delta = 0;
+        PatchLineParser parser = new PatchLineParser(name, verifyHeaders);
         int i = 0;
         PatchFile patchFile = null;
         Patch patch = null;
+        LineTable table = new LineTable();
+        Hunk.Builder hunk = null;
         for (String line : lines) {
             i++;
-
-            //ignore blank lines
-            if (line.isEmpty()) {
-                continue;
-            }
-
-            //context
-            if (line.startsWith("--- ")) {
-            	if(patchFile != null) list.add(patchFile);
-            	patchFile = new PatchFile();
-            	patch = null;
-                delta = 0;
-            	patchFile.name = name;
-                patchFile.basePath = line.substring(4);
-                continue;
-            } else if (line.startsWith("+++ ")) {
-                patchFile.patchedPath = line.substring(4);
-                continue;
-            }
-
-            switch (line.charAt(0)) {
-                case '@': {
-                    Matcher matcher = HUNK_OFFSET.matcher(line);
-                    if (!matcher.find()) {
-                        throw new IllegalArgumentException(String.format("Invalid patch line in '%s' at %s:'%s'", name, i, line));
-                    }
-                    patch = new Patch();
-                    patch.start1 = Integer.parseInt(matcher.group(1)) - 1;
-                    patch.length1 = Integer.parseInt(matcher.group(2));
-                    patch.length2 = Integer.parseInt(matcher.group(4));
-
-                    String start2Str = matcher.group(3);
-                    if (start2Str.equals("_")) {
-                        patch.start2 = patch.start1 + delta;
-                    } else {
-                        patch.start2 = Integer.parseInt(start2Str) - 1;
-                        if (verifyHeaders && patch.start2 != patch.start1 + delta) {
-                            throw new IllegalArgumentException(String.format("Applied Offset Mismatch in '%s' at %s. Expected: %d, Actual: %d", name, i, patch.start1 + delta + 1, patch.start2 + 1));
-                        }
-                    }
-                    delta += patch.length2 - patch.length1;
-                    patchFile.patches.add(patch);
+            LineType type = parser.classify(line);
+            switch (type) {
+                //ignore blank lines
+                case BLANK:
                     break;
-                }
-                case ' ':
-                    patch.diffs.add(new Diff(Operation.EQUAL, line.substring(1)));
+                case BASE_HEADER:
+                    finishHunk(patch, hunk);
+                    if (patchFile != null) list.add(patchFile);
+                    patchFile = create(name);
+                    patchFile.basePath = line.substring(4);
+                    patch = null;
+                    hunk = null;
+                    parser.startFile();
                     break;
-                case '+':
-                    patch.diffs.add(new Diff(Operation.INSERT, line.substring(1)));
+                case PATCHED_HEADER:
+                    patchFile = patchFile != null ? patchFile : create(name);
+                    patchFile.patchedPath = line.substring(4);
                     break;
-                case '-':
-                    patch.diffs.add(new Diff(Operation.DELETE, line.substring(1)));
+                case HUNK_HEADER:
+                    finishHunk(patch, hunk);
+                    patch = parser.hunkHeader(line, i);
+                    hunk = new Hunk.Builder(table);
+                    patchFile = patchFile != null ? patchFile : create(name);
+                    patchFile.patches.add(patch);
+                    break;
+                case EQUAL:
+                case INSERT:
+                case DELETE:
+                    parser.diffLine(type, line, i);
+                    hunk.add(PatchLineParser.operation(type), line.substring(1));
+                    break;
+                case NO_NEW_LINE:
+                    patchFile = patchFile != null ? patchFile : create(name);
+                    parser.noNewLine(patchFile);
                     break;
-                case '\\':
-                    if (line.equals(NO_NEW_LINE)) {
-                        patchFile.noNewLine = true;
-                        break;
-                    }
                 default:
-                    throw new IllegalArgumentException(String.format("Invalid patch line in '%s' at %s:'%s'", line, i, line));
+                    throw parser.invalidLine(line, i);
             }
         }
+        finishHunk(patch, hunk);
     	if(patchFile != null) list.add(patchFile);
     	return list;
     }
 
     public static PatchFile fromLinesSingle(String name, List<String> lines, boolean verifyHeaders) {
-        PatchFile patchFile = new PatchFile();
-        patchFile.name = name;
+        PatchFile patchFile = create(name);
+        PatchLineParser parser = new PatchLineParser(name, verifyHeaders);
         Patch patch = null;
-        int delta = 0;
+        LineTable table = new LineTable();
+        Hunk.Builder hunk = null;
         int i = 0;
         for (String line : lines) {
             i++;
+            LineType type = parser.classify(line);
 
             //ignore blank lines
-            if (line.isEmpty()) {
+            if (type == LineType.BLANK) {
                 continue;
             }
 
             //context
-            if (patch == null && line.charAt(0) != '@') {
-                if (i == 1 && line.startsWith("--- ")) {
+            if (patch == null && type != LineType.HUNK_HEADER) {
+                if (i == 1 && type == LineType.BASE_HEADER) {
                     patchFile.basePath = line.substring(4);
                 } else if (i == 2) {
                     patchFile.patchedPath = line.substring(4);
@@ -130,51 +114,42 @@ public class PatchFile {
                 continue;
             }
 
-            switch (line.charAt(0)) {
-                case '@': {
-                    Matcher matcher = HUNK_OFFSET.matcher(line);
-                    if (!matcher.find()) {
-                        throw new IllegalArgumentException(String.format("Invalid patch line in '%s' at %s:'%s'", name, i, line));
-                    }
-                    patch = new Patch();
-                    patch.start1 = Integer.parseInt(matcher.group(1)) - 1;
-                    patch.length1 = Integer.parseInt(matcher.group(2));
-                    patch.length2 = Integer.parseInt(matcher.group(4));
-
-                    String start2Str = matcher.group(3);
-                    if (start2Str.equals("_")) {
-                        patch.start2 = patch.start1 + delta;
-                    } else {
-                        patch.start2 = Integer.parseInt(start2Str) - 1;
-                        if (verifyHeaders && patch.start2 != patch.start1 + delta) {
-                            throw new IllegalArgumentException(String.format("Applied Offset Mismatch in '%s' at %s. Expected: %d, Actual: %d", name, i, patch.start1 + delta + 1, patch.start2 + 1));
-                        }
-                    }
-                    delta += patch.length2 - patch.length1;
+            switch (type) {
+                case HUNK_HEADER:
+                    finishHunk(patch, hunk);
+                    patch = parser.hunkHeader(line, i);
+                    hunk = new Hunk.Builder(table);
                     patchFile.patches.add(patch);
                     break;
-                }
-                case ' ':
-                    patch.diffs.add(new Diff(Operation.EQUAL, line.substring(1)));
-                    break;
-                case '+':
-                    patch.diffs.add(new Diff(Operation.INSERT, line.substring(1)));
+                case EQUAL:
+                case INSERT:
+                case DELETE:
+                    parser.diffLine(type, line, i);
+                    hunk.add(PatchLineParser.operation(type), line.substring(1));
                     break;
-                case '-':
-                    patch.diffs.add(new Diff(Operation.DELETE, line.substring(1)));
+                case NO_NEW_LINE:
+                    parser.noNewLine(patchFile);
                     break;
-                case '\\':
-                    if (line.equals(NO_NEW_LINE)) {
-                        patchFile.noNewLine = true;
-                        break;
-                    }
                 default:
-                    throw new IllegalArgumentException(String.format("Invalid patch line in '%s' at %s:'%s'", line, i, line));
+                    throw parser.invalidLine(line, i);
             }
         }
+        finishHunk(patch, hunk);
+        return patchFile;
+    }
+
+    private static PatchFile create(String name) {
+        PatchFile patchFile = new PatchFile();
+        patchFile.name = name;
         return patchFile;
     }
 
+    private static void finishHunk(Patch patch, Hunk.Builder hunk) {
+        if (patch != null) {
+            patch.setHunk(hunk.build());
+        }
+    }
+
     @Override
     public String toString() {
         return String.join("\n", toLines(false));
@@ -189,9 +164,7 @@ public class PatchFile {
 
         for (Patch p : patches) {
             lines.add(autoHeader ? p.getAutoHeader() : p.getHeader());
-            for (Diff diff : p.diffs) {
-                lines.add(diff.toString());
-            }
+            p.addDiffLines(lines);
         }
         return lines;
     }
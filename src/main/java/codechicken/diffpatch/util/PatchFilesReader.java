@@ -0,0 +1,9 @@
+package codechicken.diffpatch.util;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface PatchFilesReader {
+
+    List<PatchFile> apply(String path) throws IOException;
+}
@@ -0,0 +1,64 @@
+package codechicken.diffpatch.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static codechicken.diffpatch.util.StringUtils.removeStart;
+
+/**
+ * The file headers of a {@link PatchFile} and its number of hunks, read without parsing any hunk bodies.
+ */
+public class PatchHeader {
+
+    public final String name;
+    public final String basePath;
+    public final String patchedPath;
+    public final int hunks;
+
+    public PatchHeader(String name, String basePath, String patchedPath, int hunks) {
+        this.name = name;
+        this.basePath = basePath;
+        this.patchedPath = patchedPath;
+        this.hunks = hunks;
+    }
+
+    public static PatchHeader of(PatchFile patchFile) {
+        return new PatchHeader(patchFile.name, patchFile.basePath, patchFile.patchedPath, patchFile.patches.size());
+    }
+
+    public static List<PatchHeader> of(List<PatchFile> patchFiles) {
+        List<PatchHeader> headers = new ArrayList<>(patchFiles.size());
+        for (PatchFile patchFile : patchFiles) {
+            headers.add(of(patchFile));
+        }
+        return headers;
+    }
+
+    /**
+     * Scans the headers of all PatchFiles in the buffer, either unified diff text or {@link BinaryPatchFormat}.
+     *
+     * @param name   The name to use for each PatchFile.
+     * @param buffer The buffer, read from its position.
+     * @return The headers, in the order of their PatchFiles.
+     */
+    public static List<PatchHeader> scan(String name, ByteBuffer buffer) {
+        if (BinaryPatchFormat.isBinary(buffer)) {
+            return BinaryPatchFormat.scan(name, buffer);
+        }
+        return MappedPatchReader.scan(name, buffer);
+    }
+
+    public String getBasePath(String prefix) {
+        return removeStart(basePath, prefix);
+    }
+
+    public String getPatchedPath(String prefix) {
+        return removeStart(patchedPath, prefix);
+    }
+
+    @Override
+    public String toString() {
+        return basePath + " -> " + patchedPath + " (" + hunks + " hunks)";
+    }
+}
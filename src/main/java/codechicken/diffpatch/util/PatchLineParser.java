@@ -0,0 +1,178 @@
+package codechicken.diffpatch.util;
+
+/**
+ * The line classification and hunk bookkeeping shared by every unified diff parser.
+ * <p>
+ * Lines inside a hunk are counted against the hunk header, so removed or added lines
+ * which start with {@code "-- "} or {@code "++ "} are not mistaken for file headers.
+ * Lines are taken as CharSequences so byte backed parsers can classify them without
+ * decoding, everything checked here is ASCII.
+ */
+final class PatchLineParser {
+
+    static final String NO_NEW_LINE = "\\ No newline at end of file";
+
+    private final String name;
+    private final boolean verifyHeaders;
+
+    private boolean inHunk;
+    private LineType lastDiff;
+    private int delta;
+    private int remaining1;
+    private int remaining2;
+
+    PatchLineParser(String name, boolean verifyHeaders) {
+        this.name = name;
+        this.verifyHeaders = verifyHeaders;
+    }
+
+    /**
+     * Classifies a line, without changing any state.
+     *
+     * @param line The line, without its terminator.
+     * @return The LineType.
+     */
+    LineType classify(CharSequence line) {
+        if (line.length() == 0) {
+            return LineType.BLANK;
+        }
+        switch (line.charAt(0)) {
+            case '-':
+                return remaining1 <= 0 && startsWith(line, "--- ") ? LineType.BASE_HEADER : LineType.DELETE;
+            case '+':
+                return remaining2 <= 0 && startsWith(line, "+++ ") ? LineType.PATCHED_HEADER : LineType.INSERT;
+            case ' ':
+                return LineType.EQUAL;
+            case '@':
+                return LineType.HUNK_HEADER;
+            case '\\':
+                return contentEquals(line, NO_NEW_LINE) ? LineType.NO_NEW_LINE : LineType.INVALID;
+            default:
+                return LineType.INVALID;
+        }
+    }
+
+    /**
+     * Called for a {@link LineType#BASE_HEADER}, starts a new file.
+     */
+    void startFile() {
+        inHunk = false;
+        lastDiff = null;
+        delta = 0;
+        remaining1 = 0;
+        remaining2 = 0;
+    }
+
+    /**
+     * Parses a {@link LineType#HUNK_HEADER}, resolving auto headers and verifying applied offsets.
+     *
+     * @param line       The line.
+     * @param lineNumber The 1 based line number, for errors.
+     * @return The Patch, with its header fields set.
+     */
+    Patch hunkHeader(CharSequence line, int lineNumber) {
+        Patch patch = new Patch();
+        if (!PatchReader.parseHunkHeader(line, patch)) {
+            throw invalidLine(line, lineNumber);
+        }
+        startHunk(patch, lineNumber);
+        return patch;
+    }
+
+    /**
+     * Starts a hunk from an already parsed header, resolving auto headers and verifying applied offsets.
+     */
+    void startHunk(Patch patch, int lineNumber) {
+        if (patch.start2 == Integer.MIN_VALUE) {
+            patch.start2 = patch.start1 + delta;
+        } else if (verifyHeaders && patch.start2 != patch.start1 + delta) {
+            throw new IllegalArgumentException(String.format("Applied Offset Mismatch in '%s' at %s. Expected: %d, Actual: %d", name, lineNumber, patch.start1 + delta + 1, patch.start2 + 1));
+        }
+        delta += patch.length2 - patch.length1;
+        remaining1 = patch.length1;
+        remaining2 = patch.length2;
+        inHunk = true;
+        lastDiff = null;
+    }
+
+    /**
+     * If a hunk has been started in the current file.
+     */
+    boolean inHunk() {
+        return inHunk;
+    }
+
+    /**
+     * Counts an {@link LineType#EQUAL}, {@link LineType#INSERT} or {@link LineType#DELETE} line against the current hunk.
+     *
+     * @throws IllegalArgumentException If there is no current hunk.
+     */
+    void diffLine(LineType type, CharSequence line, int lineNumber) {
+        if (!inHunk) {
+            throw new IllegalArgumentException(String.format("Diff line outside of hunk in '%s' at %s:'%s'", name, lineNumber, line));
+        }
+        if (type != LineType.INSERT) {
+            remaining1--;
+        }
+        if (type != LineType.DELETE) {
+            remaining2--;
+        }
+        lastDiff = type;
+    }
+
+    /**
+     * Called for a {@link LineType#NO_NEW_LINE}, marks the side of the diff line before it as lacking a newline.
+     */
+    void noNewLine(PatchFile patchFile) {
+        patchFile.noNewLine = true;
+        if (lastDiff != null) {
+            patchFile.baseNoNewLine |= lastDiff != LineType.INSERT;
+            patchFile.patchedNoNewLine |= lastDiff != LineType.DELETE;
+        }
+    }
+
+    IllegalArgumentException invalidLine(CharSequence line, int lineNumber) {
+        return new IllegalArgumentException(String.format("Invalid patch line in '%s' at %s:'%s'", name, lineNumber, line));
+    }
+
+    static Operation operation(LineType type) {
+        switch (type) {
+            case EQUAL:
+                return Operation.EQUAL;
+            case INSERT:
+                return Operation.INSERT;
+            case DELETE:
+                return Operation.DELETE;
+            default:
+                throw new IllegalArgumentException("Not a diff line: " + type);
+        }
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        if (line.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contentEquals(CharSequence line, String str) {
+        return line.length() == str.length() && startsWith(line, str);
+    }
+
+    enum LineType {
+        BLANK,
+        BASE_HEADER,
+        PATCHED_HEADER,
+        HUNK_HEADER,
+        EQUAL,
+        INSERT,
+        DELETE,
+        NO_NEW_LINE,
+        INVALID
+    }
+}
@@ -0,0 +1,244 @@
+package codechicken.diffpatch.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+import codechicken.diffpatch.util.PatchLineParser.LineType;
+
+/**
+ * Incrementally parses unified diff text into {@link PatchFile}s.
+ * <p>
+ * Unlike {@link PatchFile#fromLines}, this does not require the whole patch to be
+ * decoded up front, each PatchFile is emitted as soon as it is complete. Only the
+ * current line is buffered, hunk headers are parsed by hand and diff text is copied
+ * straight out of the line buffer.
+ */
+public class PatchReader implements Closeable {
+
+    private final String name;
+    private final Reader reader;
+    private final PatchLineParser parser;
+
+    private final char[] buffer = new char[8192];
+    private int bufPos;
+    private int bufLen;
+    private boolean eof;
+
+    private final StringBuilder line = new StringBuilder();
+    private int lineNumber;
+
+    private PatchFile patchFile;
+    private Patch patch;
+
+    public PatchReader(String name, Reader reader, boolean verifyHeaders) {
+        this.name = name;
+        this.reader = reader;
+        parser = new PatchLineParser(name, verifyHeaders);
+    }
+
+    /**
+     * Parses all PatchFiles from the given Reader.
+     *
+     * @param name          The name to use for each PatchFile.
+     * @param reader        The Reader.
+     * @param verifyHeaders If the applied offset of hunk headers should be verified.
+     * @param consumer      Receives each PatchFile as soon as it has been parsed.
+     */
+    public static void parse(String name, Reader reader, boolean verifyHeaders, Consumer<PatchFile> consumer) throws IOException {
+        try (PatchReader patchReader = new PatchReader(name, reader, verifyHeaders)) {
+            PatchFile patchFile;
+            while ((patchFile = patchReader.next()) != null) {
+                consumer.accept(patchFile);
+            }
+        }
+    }
+
+    /**
+     * Parses the next PatchFile.
+     *
+     * @return The PatchFile, or null once the end of the input has been reached.
+     */
+    public PatchFile next() throws IOException {
+        while (readLine()) {
+            PatchFile done = parseLine();
+            if (done != null) {
+                return done;
+            }
+        }
+        PatchFile done = patchFile;
+        patchFile = null;
+        patch = null;
+        return done;
+    }
+
+    // Returns the previous PatchFile if this line starts a new one.
+    private PatchFile parseLine() {
+        LineType type = parser.classify(line);
+        switch (type) {
+            case BLANK:
+                break;
+            case BASE_HEADER: {
+                PatchFile done = patchFile;
+                patchFile = new PatchFile();
+                patchFile.name = name;
+                patchFile.basePath = line.substring(4);
+                patch = null;
+                parser.startFile();
+                return done;
+            }
+            case PATCHED_HEADER:
+                ensurePatchFile().patchedPath = line.substring(4);
+                break;
+            case HUNK_HEADER:
+                patch = parser.hunkHeader(line, lineNumber);
+                ensurePatchFile().patches.add(patch);
+                break;
+            case EQUAL:
+            case INSERT:
+            case DELETE:
+                parser.diffLine(type, line, lineNumber);
+                patch.diffs.add(Diff.of(PatchLineParser.operation(type), line.substring(1)));
+                break;
+            case NO_NEW_LINE:
+                parser.noNewLine(ensurePatchFile());
+                break;
+            default:
+                throw parser.invalidLine(line, lineNumber);
+        }
+        return null;
+    }
+
+    private PatchFile ensurePatchFile() {
+        if (patchFile == null) {
+            patchFile = new PatchFile();
+            patchFile.name = name;
+        }
+        return patchFile;
+    }
+
+    // Reads the next line into the line buffer, stripping any line terminator.
+    private boolean readLine() throws IOException {
+        line.setLength(0);
+        if (eof && bufPos == bufLen) {
+            return false;
+        }
+        while (true) {
+            if (bufPos == bufLen) {
+                bufLen = reader.read(buffer);
+                bufPos = 0;
+                if (bufLen <= 0) {
+                    bufLen = 0;
+                    eof = true;
+                    lineNumber++;
+                    return line.length() > 0;
+                }
+            }
+            int start = bufPos;
+            while (bufPos < bufLen && buffer[bufPos] != '\n') {
+                bufPos++;
+            }
+            line.append(buffer, start, bufPos - start);
+            if (bufPos < bufLen) {
+                bufPos++;//skip the \n
+                int len = line.length();
+                if (len > 0 && line.charAt(len - 1) == '\r') {
+                    line.setLength(len - 1);
+                }
+                lineNumber++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Parses a hunk header in the form {@code @@ -start1,length1 +start2,length2 @@}.
+     * <p>
+     * Both lengths are required and every number must fit in an int. If {@code start2} is {@code _}
+     * (an auto header), {@link Patch#start2} is set to {@link Integer#MIN_VALUE}.
+     *
+     * @param line  The line.
+     * @param patch The Patch to store the parsed values in.
+     * @return If the header was valid.
+     */
+    public static boolean parseHunkHeader(CharSequence line, Patch patch) {
+        int len = line.length();
+        if (len < 4 || line.charAt(0) != '@' || line.charAt(1) != '@' || line.charAt(2) != ' ' || line.charAt(3) != '-') {
+            return false;
+        }
+        int[] pos = { 4 };
+        int start1 = parseInt(line, pos);
+        if (start1 < 0) {
+            return false;
+        }
+        if (pos[0] >= len || line.charAt(pos[0]) != ',') {
+            return false;
+        }
+        pos[0]++;
+        int length1 = parseInt(line, pos);
+        if (length1 < 0) {
+            return false;
+        }
+        if (pos[0] + 1 >= len || line.charAt(pos[0]) != ' ' || line.charAt(pos[0] + 1) != '+') {
+            return false;
+        }
+        pos[0] += 2;
+        int start2;
+        if (pos[0] < len && line.charAt(pos[0]) == '_') {
+            pos[0]++;
+            start2 = Integer.MIN_VALUE;
+        } else {
+            start2 = parseInt(line, pos);
+            if (start2 < 0) {
+                return false;
+            }
+            start2--;
+        }
+        if (pos[0] >= len || line.charAt(pos[0]) != ',') {
+            return false;
+        }
+        pos[0]++;
+        int length2 = parseInt(line, pos);
+        if (length2 < 0) {
+            return false;
+        }
+        int p = pos[0];
+        if (p + 2 >= len || line.charAt(p) != ' ' || line.charAt(p + 1) != '@' || line.charAt(p + 2) != '@') {
+            return false;
+        }
+        patch.start1 = start1 - 1;
+        patch.length1 = length1;
+        patch.start2 = start2;
+        patch.length2 = length2;
+        return true;
+    }
+
+    // Parses an unsigned int at pos, advancing pos. Returns -1 if there are no digits or it overflows.
+    private static int parseInt(CharSequence line, int[] pos) {
+        int i = pos[0];
+        int value = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            int digit = c - '0';
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                return -1;
+            }
+            value = value * 10 + digit;
+            i++;
+        }
+        if (i == pos[0]) {
+            return -1;
+        }
+        pos[0] = i;
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
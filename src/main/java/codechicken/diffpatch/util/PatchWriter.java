@@ -0,0 +1,114 @@
+package codechicken.diffpatch.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@link PatchFile}s as unified diff text straight into a {@link Writer}.
+ * <p>
+ * Produces the same lines as {@link PatchFile#toLines}, without building any
+ * intermediate lists or strings. Hunk header numbers are written digit by digit,
+ * and each line is terminated by the configured line separator.
+ */
+public class PatchWriter implements Closeable, Flushable {
+
+    private final Writer writer;
+    private final String lineSeparator;
+    private final char[] digits = new char[10];
+
+    public PatchWriter(Writer writer, String lineSeparator) {
+        this.writer = writer;
+        this.lineSeparator = lineSeparator;
+    }
+
+    /**
+     * Creates a PatchWriter which encodes UTF-8 into the given channel.
+     *
+     * @param channel       The channel.
+     * @param lineSeparator The line separator.
+     * @return The PatchWriter.
+     */
+    public static PatchWriter open(WritableByteChannel channel, String lineSeparator) {
+        return new PatchWriter(new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8)), lineSeparator);
+    }
+
+    public void write(PatchFile patchFile, boolean autoHeader) throws IOException {
+        if (patchFile.basePath != null && patchFile.patchedPath != null) {
+            writer.write("--- ");
+            writer.write(patchFile.basePath);
+            writer.write(lineSeparator);
+            writer.write("+++ ");
+            writer.write(patchFile.patchedPath);
+            writer.write(lineSeparator);
+        }
+        for (Patch patch : patchFile.patches) {
+            writeHeader(patch, autoHeader);
+            Hunk hunk = patch.getHunk();
+            if (hunk != null) {
+                for (int i = 0; i < hunk.size(); i++) {
+                    writer.write(hunk.getOp(i).getPrefix());
+                    writer.write(hunk.getLine(i));
+                    writer.write(lineSeparator);
+                }
+                continue;
+            }
+            for (Diff diff : patch.diffs) {
+                writer.write(diff.op.getPrefix());
+                writer.write(diff.text);
+                writer.write(lineSeparator);
+            }
+        }
+    }
+
+    /**
+     * Writes a hunk header, equal to {@link Patch#getHeader} or {@link Patch#getAutoHeader}.
+     */
+    public void writeHeader(Patch patch, boolean autoHeader) throws IOException {
+        writer.write("@@ -");
+        writeInt(patch.start1 + 1);
+        writer.write(',');
+        writeInt(patch.length1);
+        writer.write(" +");
+        if (autoHeader) {
+            writer.write('_');
+        } else {
+            writeInt(patch.start2 + 1);
+        }
+        writer.write(',');
+        writeInt(patch.length2);
+        writer.write(" @@");
+        writer.write(lineSeparator);
+    }
+
+    private void writeInt(int i) throws IOException {
+        //Widened, so Integer.MIN_VALUE negates.
+        long value = i;
+        if (value < 0) {
+            writer.write('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        writer.write(digits, pos, digits.length - pos);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
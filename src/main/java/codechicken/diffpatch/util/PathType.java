@@ -6,6 +6,7 @@ package codechicken.diffpatch.util;
 public enum PathType {
     PIPE,
     PATH,
+    ARCHIVE,
     NULL;
 
     public boolean isPipe() {
@@ -16,6 +17,10 @@ public enum PathType {
         return this == PATH;
     }
 
+    public boolean isArchive() {
+        return this == ARCHIVE;
+    }
+
     public boolean isNull() {
         return this == NULL;
     }
@@ -0,0 +1,186 @@
+package codechicken.diffpatch.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs items through a read, process and write stage, each on its own thread.
+ * <p>
+ * Stages are connected by bounded queues, a stage which falls behind blocks the stage
+ * feeding it, so at most a few items are held in memory at once no matter how many there are.
+ * Items are processed and written in the order they are read.
+ * <p>
+ * The process stage runs on the calling thread, so it may freely use the state of its caller.
+ * If any stage fails, the others stop as soon as possible and the first failure is rethrown.
+ * No stage is still running once {@link #run} returns, even when the calling thread is interrupted.
+ */
+public class Pipeline {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static final Object END = new Object();
+
+    private static final long POLL_INTERVAL = 100;
+
+    /**
+     * Runs the pipeline.
+     *
+     * @param keys     The keys to read.
+     * @param capacity The capacity of each queue.
+     * @param read     Reads an item, returning null skips the key. Runs on its own thread.
+     * @param process  Processes an item, returning null skips writing it. Runs on the calling thread.
+     * @param write    Writes an item. Runs on its own thread.
+     */
+    public static <K, I, O> void run(Iterable<K> keys, int capacity, Stage<K, I> read, Stage<I, O> process, Sink<O> write) throws IOException {
+        BlockingQueue<Object> reads = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Object> writes = new ArrayBlockingQueue<>(capacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        //Set once the calling thread stops taking from or putting to the queues.
+        AtomicBoolean abandoned = new AtomicBoolean();
+
+        Thread reader = new Thread(() -> {
+            try {
+                for (K key : keys) {
+                    if (failure.get() != null) {
+                        break;
+                    }
+                    I item = read.apply(key);
+                    if (item != null && !put(reads, item, abandoned)) {
+                        return;
+                    }
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                putEnd(reads, failure, abandoned);
+            }
+        }, "Pipeline Reader");
+        Thread writer = new Thread(() -> {
+            try {
+                Object item;
+                while ((item = take(writes, abandoned)) != END) {
+                    //Keep draining after a failure, so the process stage never blocks.
+                    if (failure.get() == null) {
+                        try {
+                            write.accept(cast(item));
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+            }
+        }, "Pipeline Writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+
+        try {
+            Object item;
+            while ((item = reads.take()) != END) {
+                if (failure.get() != null) {
+                    continue;
+                }
+                try {
+                    O out = process.apply(cast(item));
+                    if (out != null) {
+                        writes.put(out);
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+            putEnd(writes, failure, abandoned);
+            reader.join();
+            writer.join();
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            abandoned.set(true);
+            reader.interrupt();
+            writer.interrupt();
+            //A stage may still be mid read or write, wait for it so nothing touches the files after we return.
+            joinUninterruptibly(reader);
+            joinUninterruptibly(writer);
+        }
+
+        Throwable t = failure.get();
+        if (t == null) {
+            return;
+        }
+        if (t instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Pipeline interrupted.");
+        }
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        Utils.throwUnchecked(t);
+    }
+
+    private static void putEnd(BlockingQueue<Object> queue, AtomicReference<Throwable> failure, AtomicBoolean abandoned) {
+        try {
+            put(queue, END, abandoned);
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    // Like put, but gives up once the queue is abandoned, in case a stage swallowed its interrupt.
+    private static boolean put(BlockingQueue<Object> queue, Object item, AtomicBoolean abandoned) throws InterruptedException {
+        while (!queue.offer(item, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            if (abandoned.get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object take(BlockingQueue<Object> queue, AtomicBoolean abandoned) throws InterruptedException {
+        Object item;
+        while ((item = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+            if (abandoned.get()) {
+                return END;
+            }
+        }
+        return item;
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings ("unchecked")
+    private static <T> T cast(Object obj) {
+        return (T) obj;
+    }
+
+    public interface Stage<I, O> {
+
+        O apply(I in) throws IOException;
+    }
+
+    public interface Sink<T> {
+
+        void accept(T t) throws IOException;
+    }
+}
@@ -0,0 +1,92 @@
+package codechicken.diffpatch.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import codechicken.diffpatch.PathFilter;
+
+/**
+ * Indexes all regular files in a directory tree, walking directories in parallel.
+ * <p>
+ * Each directory is listed by its own fork join task. The {@link PathFilter} is evaluated
+ * during the walk, files are filtered as they are listed and directories which
+ * {@link PathFilter#applyDirectory} rejects are never listed at all.
+ * <p>
+ * Like {@link Files#walk}, symbolic links to directories are not followed.
+ */
+public class TreeIndexer {
+
+    /**
+     * Indexes the tree, the result is sorted by path so indexes can be merge joined.
+     *
+     * @param root   The directory to index.
+     * @param filter The filter, may be null.
+     * @return The files, keyed by their path relative to the root with '/' separators.
+     */
+    public static SortedMap<String, Path> index(Path root, PathFilter filter) throws IOException {
+        List<Pair<String, Path>> files;
+        try {
+            files = ForkJoinPool.commonPool().invoke(new DirectoryTask(root, "", filter));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        SortedMap<String, Path> index = new TreeMap<>();
+        for (Pair<String, Path> file : files) {
+            index.put(file.getLeft(), file.getRight());
+        }
+        return index;
+    }
+
+    private static class DirectoryTask extends RecursiveTask<List<Pair<String, Path>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final String relative;
+        private final PathFilter filter;
+
+        private DirectoryTask(Path dir, String relative, PathFilter filter) {
+            this.dir = dir;
+            this.relative = relative;
+            this.filter = filter;
+        }
+
+        @Override
+        protected List<Pair<String, Path>> compute() {
+            List<Pair<String, Path>> files = new ArrayList<>();
+            List<DirectoryTask> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    String name = relative + child.getFileName().toString();
+                    BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        if (filter == null || filter.applyDirectory(name)) {
+                            children.add(new DirectoryTask(child, name + "/", filter));
+                        }
+                    } else if (attrs.isRegularFile() || attrs.isSymbolicLink() && Files.isRegularFile(child)) {
+                        if (filter == null || filter.apply(name)) {
+                            files.add(Pair.of(name, child));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (DirectoryTask task : invokeAll(children)) {
+                files.addAll(task.join());
+            }
+            return files;
+        }
+    }
+}
@@ -9,6 +9,8 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import codechicken.diffpatch.PathFilter;
+
 /**
  * Created by covers1624 on 19/7/20.
  */
@@ -137,6 +139,38 @@ public class Utils {
         return path;
     }
 
+    /**
+     * Checks that an archive entry or patch path is a plain relative path, with no root and
+     * no {@code ..} segments, so it can never resolve outside of the directory it is written to.
+     *
+     * @param name The name.
+     * @return The name.
+     * @throws IOException If the name is absolute or contains a {@code ..} segment.
+     */
+    public static String checkRelative(String name) throws IOException {
+        String path = name.replace('\\', '/');
+        if (path.startsWith("/") || path.length() > 1 && path.charAt(1) == ':') {
+            throw new IOException("Absolute entry name: " + name);
+        }
+        for (String segment : path.split("/")) {
+            if (segment.equals("..")) {
+                throw new IOException("Entry name escapes its root: " + name);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Resolves a relative name against a directory, see {@link #checkRelative}.
+     *
+     * @param dir  The directory.
+     * @param name The relative name.
+     * @return The resolved path, always inside dir.
+     */
+    public static Path resolveChild(Path dir, String name) throws IOException {
+        return dir.resolve(checkRelative(name));
+    }
+
     public static Runnable sneakR(ThrowingRunnable<Throwable> tr) {
         return () -> sneaky(tr);
     }
@@ -180,19 +214,26 @@ public class Utils {
         throw (T) t;
     }
 
-    public static Map<String, Path> indexChildren(Path toIndex) throws IOException {
+    public static SortedMap<String, Path> indexChildren(Path toIndex) throws IOException {
         return indexChildren(toIndex, "");
     }
 
-    public static Map<String, Path> indexChildren(Path toIndex, String prefix) throws IOException {
+    public static SortedMap<String, Path> indexChildren(Path toIndex, String prefix) throws IOException {
         if (!prefix.isEmpty()) {
             toIndex = toIndex.resolve(prefix);
         }
-        try (Stream<Path> stream = Files.walk(toIndex)) {
-            Path finalToIndex = toIndex;
-            return stream.filter(Files::isRegularFile)//
-                    .collect(Collectors.toMap(e -> stripStart('/', finalToIndex.relativize(e).toString().replace("\\", "/")), Function.identity()));
-        }
+        return TreeIndexer.index(toIndex, null);
+    }
+
+    /**
+     * Indexes all files under the given directory which pass the filter, see {@link TreeIndexer}.
+     *
+     * @param toIndex The directory.
+     * @param filter  The filter.
+     * @return The files, sorted by their relative path.
+     */
+    public static SortedMap<String, Path> indexChildren(Path toIndex, PathFilter filter) throws IOException {
+        return TreeIndexer.index(toIndex, filter);
     }
 
     public interface ThrowingConsumer<T, E extends Throwable> {
@@ -0,0 +1,63 @@
+package codechicken.diffpatch.util.archiver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The archive formats which can be used as inputs and outputs.
+ */
+public enum ArchiveFormat {
+    ZIP(".zip", ".jar"),
+    TAR(".tar");
+
+    private final String[] extensions;
+
+    ArchiveFormat(String... extensions) {
+        this.extensions = extensions;
+    }
+
+    public ArchiveReader createReader(Path path) throws IOException {
+        switch (this) {
+            case ZIP:
+                return new ZipArchiveReader(path);
+            case TAR:
+                try (InputStream is = Files.newInputStream(path)) {
+                    return new TarArchiveReader(is);
+                }
+            default:
+                throw new UnsupportedOperationException("Unhandled format: " + this);
+        }
+    }
+
+    public ArchiveWriter createWriter(Path path) throws IOException {
+        switch (this) {
+            case ZIP:
+                return new ZipArchiveWriter(path);
+            case TAR:
+                return new TarArchiveWriter(Files.newOutputStream(path));
+            default:
+                throw new UnsupportedOperationException("Unhandled format: " + this);
+        }
+    }
+
+    /**
+     * Finds the format of an archive from its file extension.
+     *
+     * @param path The archive.
+     * @return The format, or null if the extension is not known.
+     */
+    public static ArchiveFormat findFormat(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (ArchiveFormat format : values()) {
+            for (String extension : format.extensions) {
+                if (name.endsWith(extension)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+}
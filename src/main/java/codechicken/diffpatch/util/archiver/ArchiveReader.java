@@ -0,0 +1,48 @@
+package codechicken.diffpatch.util.archiver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import codechicken.diffpatch.util.ByteLines;
+
+/**
+ * Random access to the file entries of an archive.
+ */
+public interface ArchiveReader extends Closeable {
+
+    /**
+     * @return The names of all file entries, directories are not included.
+     */
+    Set<String> getEntries();
+
+    /**
+     * Gets the uncompressed content of an entry.
+     *
+     * @param name The entry.
+     * @return The bytes.
+     */
+    byte[] getBytes(String name) throws IOException;
+
+    /**
+     * Reads an entry as lines which are only decoded when accessed, see {@link ByteLines}.
+     *
+     * @param name The entry.
+     * @return The lines.
+     */
+    default ByteLines readLines(String name) throws IOException {
+        return ByteLines.of(getBytes(name));
+    }
+
+    default List<String> readAllLines(String name) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(getBytes(name)), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+}
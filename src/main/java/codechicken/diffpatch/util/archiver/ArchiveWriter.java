@@ -0,0 +1,23 @@
+package codechicken.diffpatch.util.archiver;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes file entries into a new archive.
+ */
+public interface ArchiveWriter extends Closeable {
+
+    void putEntry(String name, byte[] bytes) throws IOException;
+
+    /**
+     * Copies an entry unchanged from another archive.
+     * Writers may override this to copy the entry without decompressing it.
+     *
+     * @param reader The archive to copy from.
+     * @param name   The entry.
+     */
+    default void copyEntry(ArchiveReader reader, String name) throws IOException {
+        putEntry(name, reader.getBytes(name));
+    }
+}
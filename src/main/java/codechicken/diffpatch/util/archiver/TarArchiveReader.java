@@ -0,0 +1,46 @@
+package codechicken.diffpatch.util.archiver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Random access to a tar archive.
+ * <p>
+ * Tar has no index, so the whole archive is read into memory up front.
+ * Use {@link TarStreamReader} to process entries as they arrive instead.
+ */
+public class TarArchiveReader implements ArchiveReader {
+
+    private final Map<String, byte[]> entries = new LinkedHashMap<>();
+
+    public TarArchiveReader(InputStream is) throws IOException {
+        try (TarStreamReader reader = new TarStreamReader(is)) {
+            TarStreamReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                entries.put(entry.name, entry.bytes);
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getEntries() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    @Override
+    public byte[] getBytes(String name) throws IOException {
+        byte[] bytes = entries.get(name);
+        if (bytes == null) {
+            throw new IOException("Entry not found: " + name);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,120 @@
+package codechicken.diffpatch.util.archiver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static codechicken.diffpatch.util.archiver.TarStreamReader.BLOCK;
+
+/**
+ * Writes a ustar archive, entries are written as soon as they are put.
+ * Names which do not fit a ustar header are written with a pax {@code path} record.
+ */
+public class TarArchiveWriter implements ArchiveWriter {
+
+    private final OutputStream os;
+    private final Set<String> names = new HashSet<>();
+    private final long mtime = System.currentTimeMillis() / 1000;
+
+    public TarArchiveWriter(OutputStream os) {
+        this.os = new BufferedOutputStream(os);
+    }
+
+    @Override
+    public void putEntry(String name, byte[] bytes) throws IOException {
+        if (!names.add(name)) {
+            throw new IllegalArgumentException("Duplicate entry: " + name);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        String prefix = "";
+        String shortName = name;
+        if (nameBytes.length > 100) {
+            int split = findSplit(name);
+            if (split == -1) {
+                writePaxPath(name);
+                shortName = "";
+            } else {
+                prefix = name.substring(0, split);
+                shortName = name.substring(split + 1);
+            }
+        }
+        writeEntry(shortName, prefix, (byte) '0', bytes);
+    }
+
+    // Finds a '/' to split the name at, such that the ustar prefix and name fields can hold both halves.
+    private static int findSplit(String name) {
+        for (int i = name.indexOf('/'); i != -1; i = name.indexOf('/', i + 1)) {
+            int prefixLen = name.substring(0, i).getBytes(StandardCharsets.UTF_8).length;
+            int nameLen = name.substring(i + 1).getBytes(StandardCharsets.UTF_8).length;
+            if (prefixLen <= 155 && nameLen <= 100 && nameLen > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writePaxPath(String name) throws IOException {
+        String record = " path=" + name + "\n";
+        int len = record.getBytes(StandardCharsets.UTF_8).length;
+        //The length prefix counts its own digits.
+        int total = len + Integer.toString(len).length();
+        if (Integer.toString(total).length() != Integer.toString(len).length()) {
+            total++;
+        }
+        writeEntry("PaxHeader", "", (byte) 'x', (total + record).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeEntry(String name, String prefix, byte type, byte[] bytes) throws IOException {
+        byte[] header = new byte[BLOCK];
+        putString(header, 0, 100, name);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, bytes.length);
+        putOctal(header, 136, 12, mtime);
+        header[156] = type;
+        putString(header, 257, 6, "ustar");
+        header[263] = '0';
+        header[264] = '0';
+        putString(header, 345, 155, prefix);
+
+        long sum = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        putOctal(header, 148, 7, sum);
+        header[155] = ' ';
+
+        os.write(header);
+        os.write(bytes);
+        int pad = (BLOCK - bytes.length % BLOCK) % BLOCK;
+        os.write(new byte[pad]);
+    }
+
+    private static void putString(byte[] header, int off, int len, String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, off, Math.min(len, bytes.length));
+    }
+
+    // Zero padded octal, terminated by a NUL.
+    private static void putOctal(byte[] header, int off, int len, long value) {
+        int pos = off + len - 1;
+        header[pos--] = 0;
+        while (pos >= off) {
+            header[pos--] = (byte) ('0' + (value & 7));
+            value >>>= 3;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            os.write(new byte[BLOCK * 2]);
+        } finally {
+            os.close();
+        }
+    }
+}
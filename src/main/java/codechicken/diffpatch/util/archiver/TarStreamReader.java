@@ -0,0 +1,234 @@
+package codechicken.diffpatch.util.archiver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import codechicken.diffpatch.util.Utils;
+
+/**
+ * Reads the file entries of a tar stream one at a time, as they arrive.
+ * <p>
+ * Supports ustar headers, GNU long names and pax {@code path} records.
+ * Directories, links and other special entries are skipped. Entry names which are
+ * absolute or contain {@code ..} segments are rejected.
+ */
+public class TarStreamReader implements Closeable {
+
+    static final int BLOCK = 512;
+
+    private final InputStream is;
+    private final byte[] header = new byte[BLOCK];
+    private boolean finished;
+
+    public TarStreamReader(InputStream is) {
+        this.is = is;
+    }
+
+    /**
+     * Reads the next file entry.
+     *
+     * @return The entry, or null at the end of the archive.
+     */
+    public Entry next() throws IOException {
+        String longName = null;
+        while (!finished) {
+            if (!readBlock(header)) {
+                finished = true;
+                break;
+            }
+            if (isZero(header)) {
+                //End of archive marker.
+                finished = true;
+                break;
+            }
+            verifyChecksum();
+            long size = parseNumber(124, 12);
+            byte type = header[156];
+            byte[] data = readData(size);
+            switch (type) {
+                case 0:
+                case '0':
+                case '7': {
+                    String name = longName != null ? longName : headerName();
+                    return new Entry(Utils.checkRelative(name), data);
+                }
+                case 'L':
+                    longName = trimNull(new String(data, StandardCharsets.UTF_8));
+                    break;
+                case 'x': {
+                    String path = parsePaxPath(data);
+                    if (path != null) {
+                        longName = path;
+                    }
+                    break;
+                }
+                default:
+                    //Directories, links, global headers etc.
+                    longName = null;
+                    break;
+            }
+        }
+        return null;
+    }
+
+    private String headerName() {
+        String name = cString(0, 100);
+        //ustar splits long names into a prefix and a name.
+        if (header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a' && header[261] == 'r') {
+            String prefix = cString(345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private byte[] readData(long size) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Tar entry too large: " + size);
+        }
+        byte[] data = new byte[(int) size];
+        readFully(data, data.length);
+        int pad = (int) ((BLOCK - size % BLOCK) % BLOCK);
+        if (pad > 0) {
+            readFully(new byte[pad], pad);
+        }
+        return data;
+    }
+
+    private boolean readBlock(byte[] block) throws IOException {
+        int len = 0;
+        while (len < block.length) {
+            int read = is.read(block, len, block.length - len);
+            if (read == -1) {
+                if (len == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated tar header.");
+            }
+            len += read;
+        }
+        return true;
+    }
+
+    private void readFully(byte[] bytes, int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            int read = is.read(bytes, off, len - off);
+            if (read == -1) {
+                throw new EOFException("Truncated tar entry.");
+            }
+            off += read;
+        }
+    }
+
+    private void verifyChecksum() throws IOException {
+        long expected = parseNumber(148, 8);
+        long sum = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        if (sum != expected) {
+            throw new IOException("Invalid tar header checksum.");
+        }
+    }
+
+    private long parseNumber(int off, int len) {
+        //GNU base-256 encoding for large values.
+        if ((header[off] & 0x80) != 0) {
+            long value = header[off] & 0x7F;
+            for (int i = 1; i < len; i++) {
+                value = value << 8 | header[off + i] & 0xFF;
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = off; i < off + len; i++) {
+            byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (value != 0) {
+                    break;
+                }
+                continue;
+            }
+            value = value * 8 + (b - '0');
+        }
+        return value;
+    }
+
+    private String cString(int off, int len) {
+        int end = off;
+        while (end < off + len && header[end] != 0) {
+            end++;
+        }
+        return new String(header, off, end - off, StandardCharsets.UTF_8);
+    }
+
+    // pax records are "<length> <key>=<value>\n"
+    private static String parsePaxPath(byte[] data) {
+        int pos = 0;
+        String path = null;
+        while (pos < data.length) {
+            int space = pos;
+            int len = 0;
+            while (space < data.length && data[space] >= '0' && data[space] <= '9' && len < data.length) {
+                len = len * 10 + (data[space] - '0');
+                space++;
+            }
+            //The record must hold at least the space and the trailing newline.
+            if (space >= data.length || data[space] != ' ' || len <= space - pos + 1 || pos + len > data.length) {
+                break;
+            }
+            String record = new String(data, space + 1, pos + len - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                path = record.substring(5);
+            }
+            pos += len;
+        }
+        return path;
+    }
+
+    private static String trimNull(String str) {
+        int idx = str.indexOf('\0');
+        return idx == -1 ? str : str.substring(0, idx);
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        is.close();
+    }
+
+    public static class Entry {
+
+        public final String name;
+        public final byte[] bytes;
+
+        public Entry(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        public List<String> readAllLines() throws IOException {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8))) {
+                return reader.lines().collect(Collectors.toList());
+            }
+        }
+    }
+}
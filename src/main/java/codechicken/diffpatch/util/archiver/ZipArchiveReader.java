@@ -0,0 +1,204 @@
+package codechicken.diffpatch.util.archiver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import codechicken.diffpatch.util.Utils;
+
+/**
+ * Reads a zip archive straight from its central directory.
+ * <p>
+ * The archive is memory mapped, entries are only inflated when read, and their
+ * compressed data can be handed to a {@link ZipArchiveWriter} as is.
+ * Every offset and size is checked against the archive, and inflated data against its CRC,
+ * a truncated or corrupt archive fails with an {@link IOException}. Zip64 archives are not supported.
+ */
+public class ZipArchiveReader implements ArchiveReader {
+
+    static final int LOCAL_SIG = 0x04034b50;
+    static final int CENTRAL_SIG = 0x02014b50;
+    static final int END_SIG = 0x06054b50;
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final int END_SIZE = 22;
+    private static final int LOCAL_SIZE = 30;
+    private static final int CENTRAL_SIZE = 46;
+
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public ZipArchiveReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        //Found at least END_SIZE before the limit.
+        int end = findEnd(path);
+        int numEntries = buffer.getShort(end + 10) & 0xFFFF;
+        int pos = buffer.getInt(end + 16);
+        for (int i = 0; i < numEntries; i++) {
+            checkRange(pos, CENTRAL_SIZE, path);
+            if (buffer.getInt(pos) != CENTRAL_SIG) {
+                throw new IOException("Invalid central directory entry in " + path);
+            }
+            Entry entry = new Entry();
+            entry.flags = buffer.getShort(pos + 8) & 0xFFFF;
+            entry.method = buffer.getShort(pos + 10) & 0xFFFF;
+            entry.time = buffer.getShort(pos + 12) & 0xFFFF;
+            entry.date = buffer.getShort(pos + 14) & 0xFFFF;
+            entry.crc = buffer.getInt(pos + 16);
+            entry.compressedSize = buffer.getInt(pos + 20);
+            entry.size = buffer.getInt(pos + 24);
+            int nameLen = buffer.getShort(pos + 28) & 0xFFFF;
+            int extraLen = buffer.getShort(pos + 30) & 0xFFFF;
+            int commentLen = buffer.getShort(pos + 32) & 0xFFFF;
+            entry.localOffset = buffer.getInt(pos + 42);
+            if (entry.compressedSize == -1 || entry.size == -1 || entry.localOffset == -1) {
+                throw new IOException("Zip64 archives are not supported: " + path);
+            }
+            //Over 2 GiB, which can not be mapped or read into an array.
+            if (entry.compressedSize < 0 || entry.size < 0 || entry.localOffset < 0) {
+                throw new IOException("Entry too large in " + path);
+            }
+            checkRange(pos + CENTRAL_SIZE, nameLen, path);
+            checkRange(entry.localOffset, (long) LOCAL_SIZE + entry.compressedSize, path);
+            entry.name = Utils.checkRelative(decode(pos + CENTRAL_SIZE, nameLen));
+            if (!entry.name.endsWith("/")) {
+                entries.put(entry.name, entry);
+            }
+            pos += CENTRAL_SIZE + nameLen + extraLen + commentLen;
+        }
+    }
+
+    private int findEnd(Path path) throws IOException {
+        //The end record is followed by a comment of up to 64k.
+        int min = Math.max(0, buffer.limit() - END_SIZE - 0xFFFF);
+        for (int i = buffer.limit() - END_SIZE; i >= min; i--) {
+            if (buffer.getInt(i) == END_SIG) {
+                return i;
+            }
+        }
+        throw new IOException("Not a zip archive: " + path);
+    }
+
+    private void checkRange(long pos, long len, Object source) throws IOException {
+        if (pos < 0 || pos + len > buffer.limit()) {
+            throw new IOException("Truncated or corrupt zip data in " + source);
+        }
+    }
+
+    @Override
+    public Set<String> getEntries() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Gets the data of an entry as it is stored in the archive.
+     */
+    ByteBuffer getRawData(Entry entry) throws IOException {
+        int local = entry.localOffset;
+        if (buffer.getInt(local) != LOCAL_SIG) {
+            throw new IOException("Invalid local header for entry: " + entry.name);
+        }
+        int nameLen = buffer.getShort(local + 26) & 0xFFFF;
+        int extraLen = buffer.getShort(local + 28) & 0xFFFF;
+        checkRange((long) local + LOCAL_SIZE + nameLen + extraLen, entry.compressedSize, "entry: " + entry.name);
+        ByteBuffer data = buffer.duplicate();
+        data.position(local + LOCAL_SIZE + nameLen + extraLen);
+        data.limit(data.position() + entry.compressedSize);
+        return data.slice();
+    }
+
+    @Override
+    public byte[] getBytes(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IOException("Entry not found: " + name);
+        }
+        ByteBuffer raw = getRawData(entry);
+        byte[] bytes = new byte[entry.size];
+        if (entry.method == STORED) {
+            if (entry.compressedSize != entry.size) {
+                throw new IOException("Corrupt entry: " + name);
+            }
+            raw.get(bytes);
+            return checkCrc(entry, bytes);
+        }
+        if (entry.method != DEFLATED) {
+            throw new IOException("Unsupported compression method " + entry.method + " for " + name);
+        }
+        byte[] compressed = new byte[entry.compressedSize];
+        raw.get(compressed);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int len = 0;
+            while (len < bytes.length) {
+                int read = inflater.inflate(bytes, len, bytes.length - len);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                len += read;
+            }
+            if (len != bytes.length) {
+                throw new IOException("Truncated entry: " + name);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry: " + name, e);
+        } finally {
+            inflater.end();
+        }
+        return checkCrc(entry, bytes);
+    }
+
+    private static byte[] checkCrc(Entry entry, byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int) crc.getValue() != entry.crc) {
+            throw new IOException("CRC mismatch for entry: " + entry.name);
+        }
+        return bytes;
+    }
+
+    private String decode(int pos, int len) {
+        byte[] bytes = new byte[len];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(pos);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    static class Entry {
+
+        String name;
+        int flags;
+        int method;
+        int time;
+        int date;
+        int crc;
+        int compressedSize;
+        int size;
+        int localOffset;
+    }
+}
@@ -0,0 +1,196 @@
+package codechicken.diffpatch.util.archiver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static codechicken.diffpatch.util.archiver.ZipArchiveReader.*;
+
+/**
+ * Writes a zip archive, entries are written as soon as they are put.
+ * <p>
+ * Entries copied from a {@link ZipArchiveReader} keep their compressed data and are not recompressed.
+ * Zip64 archives are not supported.
+ */
+public class ZipArchiveWriter implements ArchiveWriter {
+
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+
+    private final OutputStream os;
+    private final WritableByteChannel channel;
+    private final List<ZipArchiveReader.Entry> written = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+    private final byte[] deflateBuffer = new byte[8192];
+    private final int time;
+    private final int date;
+    private long offset;
+
+    public ZipArchiveWriter(Path path) throws IOException {
+        this(Files.newOutputStream(path));
+    }
+
+    public ZipArchiveWriter(OutputStream os) {
+        this.os = new BufferedOutputStream(os);
+        channel = Channels.newChannel(this.os);
+        Calendar cal = Calendar.getInstance();
+        time = cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1;
+        date = (cal.get(Calendar.YEAR) - 1980) << 9 | (cal.get(Calendar.MONTH) + 1) << 5 | cal.get(Calendar.DAY_OF_MONTH);
+    }
+
+    @Override
+    public void putEntry(String name, byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        deflated.reset();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int len = deflater.deflate(deflateBuffer);
+            deflated.write(deflateBuffer, 0, len);
+        }
+
+        ZipArchiveReader.Entry entry = new ZipArchiveReader.Entry();
+        entry.name = name;
+        entry.flags = UTF8_FLAG;
+        entry.time = time;
+        entry.date = date;
+        entry.crc = (int) crc.getValue();
+        entry.size = bytes.length;
+        //Incompressible data is smaller stored.
+        if (deflated.size() < bytes.length) {
+            entry.method = DEFLATED;
+            entry.compressedSize = deflated.size();
+            writeLocal(entry);
+            deflated.writeTo(os);
+        } else {
+            entry.method = STORED;
+            entry.compressedSize = bytes.length;
+            writeLocal(entry);
+            os.write(bytes);
+        }
+        offset += entry.compressedSize;
+    }
+
+    @Override
+    public void copyEntry(ArchiveReader reader, String name) throws IOException {
+        if (!(reader instanceof ZipArchiveReader)) {
+            ArchiveWriter.super.copyEntry(reader, name);
+            return;
+        }
+        ZipArchiveReader zipReader = (ZipArchiveReader) reader;
+        ZipArchiveReader.Entry from = zipReader.getEntry(name);
+        if (from == null) {
+            throw new IOException("Entry not found: " + name);
+        }
+        ZipArchiveReader.Entry entry = new ZipArchiveReader.Entry();
+        entry.name = from.name;
+        //Sizes are known up front, the copy never needs a data descriptor.
+        entry.flags = from.flags & ~DATA_DESCRIPTOR_FLAG;
+        entry.method = from.method;
+        entry.time = from.time;
+        entry.date = from.date;
+        entry.crc = from.crc;
+        entry.compressedSize = from.compressedSize;
+        entry.size = from.size;
+        writeLocal(entry);
+        ByteBuffer data = zipReader.getRawData(from);
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+        offset += entry.compressedSize;
+    }
+
+    private void writeLocal(ZipArchiveReader.Entry entry) throws IOException {
+        if (!names.add(entry.name)) {
+            throw new IllegalArgumentException("Duplicate entry: " + entry.name);
+        }
+        if (offset > 0xFFFFFFFFL) {
+            throw new IOException("Zip64 archives are not supported.");
+        }
+        entry.localOffset = (int) offset;
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_SIG);
+        header.putShort((short) 20);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putShort((short) entry.time);
+        header.putShort((short) entry.date);
+        header.putInt(entry.crc);
+        header.putInt(entry.compressedSize);
+        header.putInt(entry.size);
+        header.putShort((short) name.length);
+        header.putShort((short) 0);
+        header.put(name);
+        os.write(header.array());
+        offset += header.capacity();
+        written.add(entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (written.size() > 0xFFFF || offset > 0xFFFFFFFFL) {
+                throw new IOException("Zip64 archives are not supported.");
+            }
+            long start = offset;
+            for (ZipArchiveReader.Entry entry : written) {
+                byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer header = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(CENTRAL_SIG);
+                header.putShort((short) 20);
+                header.putShort((short) 20);
+                header.putShort((short) entry.flags);
+                header.putShort((short) entry.method);
+                header.putShort((short) entry.time);
+                header.putShort((short) entry.date);
+                header.putInt(entry.crc);
+                header.putInt(entry.compressedSize);
+                header.putInt(entry.size);
+                header.putShort((short) name.length);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putInt(0);
+                header.putInt(entry.localOffset);
+                header.put(name);
+                os.write(header.array());
+                offset += header.capacity();
+            }
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_SIG);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) written.size());
+            end.putShort((short) written.size());
+            end.putInt((int) (offset - start));
+            end.putInt((int) start);
+            end.putShort((short) 0);
+            os.write(end.array());
+        } finally {
+            deflater.end();
+            os.close();
+        }
+    }
+}
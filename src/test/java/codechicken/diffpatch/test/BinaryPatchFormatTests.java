@@ -0,0 +1,157 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.util.BinaryPatchFormat;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchHeader;
+
+public class BinaryPatchFormatTests {
+
+    private static final List<String> PATCH = Arrays.asList(
+            "--- a/A.txt",
+            "+++ b/A.txt",
+            "@@ -1,3 +1,4 @@",
+            " a",
+            "-b",
+            "+B",
+            "+b2",
+            " c",
+            "@@ -20,2 +21,2 @@",
+            " x",
+            "-y",
+            "+Y",
+            "--- a/B.txt",
+            "+++ b/B.txt",
+            "@@ -1,1 +1,1 @@",
+            "-a",
+            "+a"
+    );
+
+    @Test
+    public void testRoundTrip() throws Throwable {
+        List<PatchFile> patchFiles = PatchFile.fromLines("test.patch", PATCH, true);
+        List<PatchFile> read = BinaryPatchFormat.read("test.patch", write(patchFiles));
+        assertEquals(PATCH, BinaryPatchFormat.toUnified(read, false));
+        assertEquals(2, read.size());
+        assertEquals("test.patch", read.get(0).name);
+        assertEquals(19, read.get(0).patches.get(1).start1);
+        assertEquals(20, read.get(0).patches.get(1).start2);
+    }
+
+    @Test
+    public void testScan() throws Throwable {
+        List<PatchHeader> headers = BinaryPatchFormat.scan("test.patch", write(PatchFile.fromLines("test.patch", PATCH, true)));
+        assertEquals(2, headers.size());
+        assertEquals("a/A.txt", headers.get(0).basePath);
+        assertEquals("b/A.txt", headers.get(0).patchedPath);
+        assertEquals(2, headers.get(0).hunks);
+        assertEquals("a/B.txt", headers.get(1).basePath);
+        assertEquals(1, headers.get(1).hunks);
+    }
+
+    @Test
+    public void testNoNewLineBase() throws Throwable {
+        //Only the base lacks a newline, the marker must stay on the removed line.
+        List<String> patch = Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,2 +1,2 @@", " a", "-b", "\\ No newline at end of file", "+b");
+        List<PatchFile> patchFiles = roundTrip(patch);
+        assertTrue(patchFiles.get(0).noNewLine);
+        assertTrue(patchFiles.get(0).baseNoNewLine);
+        assertFalse(patchFiles.get(0).patchedNoNewLine);
+    }
+
+    @Test
+    public void testNoNewLinePatched() throws Throwable {
+        List<String> patch = Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,2 +1,2 @@", " a", "-b", "+b", "\\ No newline at end of file");
+        List<PatchFile> patchFiles = roundTrip(patch);
+        assertFalse(patchFiles.get(0).baseNoNewLine);
+        assertTrue(patchFiles.get(0).patchedNoNewLine);
+    }
+
+    @Test
+    public void testNoNewLineBoth() throws Throwable {
+        roundTrip(Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,2 +1,2 @@", "-a", "+A", " b", "\\ No newline at end of file"));
+        List<PatchFile> patchFiles = roundTrip(Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,1 +1,1 @@", "-a", "\\ No newline at end of file", "+A", "\\ No newline at end of file"));
+        assertTrue(patchFiles.get(0).baseNoNewLine);
+        assertTrue(patchFiles.get(0).patchedNoNewLine);
+    }
+
+    @Test
+    public void testTruncated() throws Throwable {
+        ByteBuffer buffer = write(PatchFile.fromLines("test.patch", PATCH, true));
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        for (int len = 0; len < bytes.length; len++) {
+            ByteBuffer cut = ByteBuffer.wrap(Arrays.copyOf(bytes, len));
+            assertCorrupt(cut, "Cut at " + len);
+        }
+    }
+
+    @Test
+    public void testCorrupt() {
+        //One line "a", one file patching it with a single diff.
+        int[] valid = { 'D', 'P', 'B', 1, 1, 1, 'a', 1, 0, 1, 1, 0, 1, 0, 0, 1, 1, 1, 2 };
+        assertEquals(1, BinaryPatchFormat.read("test.patch", bytes(valid)).size());
+        //Op 3 does not exist.
+        assertCorrupt(bytes(replace(valid, 18, 3)), "Op");
+        //Diff line outside of the table.
+        assertCorrupt(bytes(replace(valid, 18, 1 << 2 | 2)), "Diff line");
+        //Path outside of the table.
+        assertCorrupt(bytes(replace(valid, 9, 2)), "Path");
+        //Line count and length larger than the bytes left.
+        assertCorrupt(bytes(replace(valid, 4, 100)), "Line count");
+        assertCorrupt(bytes(replace(valid, 5, 100)), "Line length");
+        //File count larger than the bytes left.
+        assertCorrupt(bytes(replace(valid, 7, 100)), "File count");
+        //A varint longer than 32 bits.
+        assertCorrupt(bytes(new int[] { 'D', 'P', 'B', 1, 0xFF, 0xFF, 0xFF, 0xFF, 0x7F }), "Overflow");
+        //A negative length.
+        assertCorrupt(bytes(new int[] { 'D', 'P', 'B', 1, 1, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F }), "Negative");
+    }
+
+    private static void assertCorrupt(ByteBuffer buffer, String message) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> BinaryPatchFormat.read("bad.patch", buffer.duplicate()), message);
+        assertTrue(e.getMessage().contains("bad.patch"), message);
+        e = assertThrows(IllegalArgumentException.class, () -> BinaryPatchFormat.scan("bad.patch", buffer.duplicate()), message);
+        assertTrue(e.getMessage().contains("bad.patch"), message);
+    }
+
+    private static int[] replace(int[] bytes, int index, int value) {
+        int[] copy = bytes.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+    private static ByteBuffer bytes(int[] bytes) {
+        byte[] buf = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            buf[i] = (byte) bytes[i];
+        }
+        return ByteBuffer.wrap(buf);
+    }
+
+    // Asserts the unified text survives unified -> binary -> unified unchanged.
+    private static List<PatchFile> roundTrip(List<String> patch) throws Throwable {
+        List<PatchFile> read = BinaryPatchFormat.read("test.patch", write(PatchFile.fromLines("test.patch", patch, true)));
+        assertEquals(patch, BinaryPatchFormat.toUnified(read, false));
+        return read;
+    }
+
+    private static ByteBuffer write(List<PatchFile> patchFiles) throws Throwable {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BinaryPatchFormat.write(patchFiles, bos);
+        ByteBuffer buffer = ByteBuffer.wrap(bos.toByteArray());
+        assertTrue(BinaryPatchFormat.isBinary(buffer));
+        return buffer;
+    }
+}
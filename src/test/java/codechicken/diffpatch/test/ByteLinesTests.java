@@ -0,0 +1,89 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.DiffOperation;
+import codechicken.diffpatch.util.ByteLines;
+
+public class ByteLinesTests {
+
+    @Test
+    public void testLines() {
+        ByteLines lines = ByteLines.of("a\r\n\u00e9t\u00e9\rb\n\nc".getBytes(StandardCharsets.UTF_8));
+        assertFalse(lines.isBinary());
+        assertEquals(Arrays.asList("a", "\u00e9t\u00e9", "b", "", "c"), lines);
+        assertTrue(lines.lineEquals(0, ByteLines.of("x\na".getBytes(StandardCharsets.UTF_8)), 1));
+        assertTrue(ByteLines.of(new byte[] { 'a', 0, 'b' }).isBinary());
+        //Four byte sequences are valid.
+        assertFalse(ByteLines.of("\ud83d\ude00".getBytes(StandardCharsets.UTF_8)).isBinary());
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[][] malformed = {
+                { 'a', (byte) 0xFF },
+                //Overlong NUL.
+                { (byte) 0xC0, (byte) 0x80 },
+                //Encoded surrogate.
+                { (byte) 0xED, (byte) 0xA0, (byte) 0x80 },
+                //Truncated.
+                { 'a', (byte) 0xE2, (byte) 0x82 },
+                //Above U+10FFFF.
+                { (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 },
+                //Latin-1.
+                { 'c', 'a', 'f', (byte) 0xE9 }
+        };
+        for (byte[] bytes : malformed) {
+            assertTrue(ByteLines.of(bytes).isBinary());
+            //Never silently replaced, whether or not binary was checked.
+            ByteLines lines = ByteLines.of(bytes);
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> lines.get(0));
+            assertTrue(e.getCause() instanceof CharacterCodingException);
+        }
+    }
+
+    @Test
+    public void testDiffMalformed() throws Throwable {
+        Path tempDir = Files.createTempDirectory("byte_lines_test");
+        tempDir.toFile().deleteOnExit();
+        Path a = tempDir.resolve("a");
+        Path b = tempDir.resolve("b");
+        Files.createDirectories(a);
+        Files.createDirectories(b);
+        Files.write(a.resolve("Latin1.txt"), "cafe\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(b.resolve("Latin1.txt"), new byte[] { 'c', 'a', 'f', (byte) 0xE9, '\n' });
+        //Valid UTF-8, but holding a NUL.
+        Files.write(a.resolve("Nul.txt"), new byte[] { 'a', 0, '\n' });
+        Files.write(b.resolve("Nul.txt"), new byte[] { 'b', 0, '\n' });
+
+        //Skipped as binary, rather than diffed with replacement characters.
+        DiffOperation operation = DiffOperation.builder().aPath(a).bPath(b).outputPath(tempDir.resolve("patches")).build();
+        assertFalse(operation.doDiff());
+        assertEquals(2, operation.getSummary().binaryFiles);
+
+        //Single files are skipped the same way.
+        for (String file : Arrays.asList("Latin1.txt", "Nul.txt")) {
+            Path output = tempDir.resolve(file + ".patch");
+            DiffOperation single = DiffOperation.builder()
+                    .aPath(a.resolve(file))
+                    .bPath(b.resolve(file))
+                    .outputPath(output)
+                    .build();
+            assertFalse(single.doDiff());
+            assertEquals(1, single.getSummary().binaryFiles);
+            assertFalse(Files.exists(output));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.DiffOperation;
+import codechicken.diffpatch.cache.DiffCache;
+import codechicken.diffpatch.cache.DiskCache;
+import codechicken.diffpatch.cache.PatchCache;
+import codechicken.diffpatch.patch.Patcher;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchMode;
+
+public class CacheTests {
+
+    @Test
+    public void testDiskCacheRoundTrip() throws Throwable {
+        Path dir = Files.createTempDirectory("cache_test");
+        DiskCache cache = new DiskCache(dir, 1024);
+        assertNull(cache.get("aabbcc"));
+        cache.put("aabbcc", new byte[] { 1, 2, 3 });
+        assertArrayEquals(new byte[] { 1, 2, 3 }, cache.get("aabbcc"));
+        cache.put("aabbcc", new byte[] { 4 });
+        assertArrayEquals(new byte[] { 4 }, cache.get("aabbcc"));
+        assertEquals(1, cache.size());
+        //No temp files are left behind.
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertFalse(files.anyMatch(e -> e.getFileName().toString().endsWith(".tmp")));
+        }
+        //A new instance picks up the existing entries.
+        assertEquals(1, new DiskCache(dir, 1024).size());
+    }
+
+    @Test
+    public void testDiskCacheEviction() throws Throwable {
+        Path dir = Files.createTempDirectory("cache_test");
+        DiskCache cache = new DiskCache(dir, 1000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, new byte[100]);
+        }
+        assertEquals(1000, cache.size());
+        //Touch the oldest entry, so it is the most recently used.
+        assertNotNull(cache.get("key0"));
+        cache.put("key10", new byte[100]);
+        //Evicts down to the low water mark, not just under the limit.
+        assertTrue(cache.size() <= 1000 * DiskCache.LOW_WATER);
+        assertNotNull(cache.get("key0"));
+        assertNotNull(cache.get("key10"));
+        assertNull(cache.get("key1"));
+        assertNull(cache.get("key2"));
+        assertNull(cache.get("key3"));
+        try (Stream<Path> files = Files.walk(dir)) {
+            long onDisk = files.filter(Files::isRegularFile).mapToLong(e -> e.toFile().length()).sum();
+            assertEquals(cache.size(), onDisk);
+        }
+    }
+
+    @Test
+    public void testPatchCacheRoundTrip() throws Throwable {
+        Path dir = Files.createTempDirectory("cache_test");
+        PatchCache cache = new PatchCache(dir, 1 << 20);
+        List<String> base = Arrays.asList("a", "b", "c");
+        PatchFile patchFile = patchFile();
+        String key = PatchCache.key(base, patchFile, PatchMode.EXACT, 0.5F, 1000);
+        assertNull(cache.get(key, patchFile));
+
+        PatchCache.Entry entry = new PatchCache.Entry();
+        entry.lines = Arrays.asList("a", "B", "c");
+        Patcher.Result result = new Patcher.Result(patchFile.patches.get(0), true);
+        result.mode = PatchMode.EXACT;
+        entry.results.add(result);
+        cache.put(key, entry);
+
+        PatchCache.Entry cached = cache.get(key, patchFile);
+        assertNotNull(cached);
+        assertEquals(entry.lines, cached.lines);
+        assertEquals(1, cached.results.size());
+        assertTrue(cached.results.get(0).success);
+        assertEquals(PatchMode.EXACT, cached.results.get(0).mode);
+    }
+
+    @Test
+    public void testPatchCacheCorruptEntry() throws Throwable {
+        Path dir = Files.createTempDirectory("cache_test");
+        DiskCache disk = new DiskCache(dir, 1 << 20);
+        PatchCache cache = new PatchCache(disk);
+        PatchFile patchFile = patchFile();
+
+        //Truncated.
+        disk.put("corrupt1", new byte[] { 0, 0 });
+        assertNull(cache.get("corrupt1", patchFile));
+        //Huge and negative lengths.
+        disk.put("corrupt2", new byte[] { 0x7F, -1, -1, -1 });
+        assertNull(cache.get("corrupt2", patchFile));
+        disk.put("corrupt3", new byte[] { -1, -1, -1, -1 });
+        assertNull(cache.get("corrupt3", patchFile));
+
+        //More results than the PatchFile has hunks.
+        PatchCache.Entry entry = new PatchCache.Entry();
+        entry.results.add(new Patcher.Result(patchFile.patches.get(0), true));
+        entry.results.add(new Patcher.Result(patchFile.patches.get(0), true));
+        cache.put("stale", entry);
+        assertNull(cache.get("stale", patchFile));
+
+        //Out of range patch mode.
+        byte[] bytes = disk.get("stale");
+        disk.put("corrupt4", modeCorrupted(bytes));
+        assertNull(cache.get("corrupt4", patchFile));
+    }
+
+    @Test
+    public void testDiffCacheRoundTrip() throws Throwable {
+        Path dir = Files.createTempDirectory("cache_test");
+        DiffCache cache = new DiffCache(dir, 1 << 20);
+        List<String> a = Arrays.asList("a", "b");
+        List<String> b = Arrays.asList("a", "B");
+        String key = DiffCache.key("a/Test.txt", "b/Test.txt", a, b, 3, false);
+        assertEquals(key, DiffCache.key("a/Test.txt", "b/Test.txt", a, b, 3, false));
+        assertFalse(key.equals(DiffCache.key("a/Test.txt", "b/Test.txt", a, b, 2, false)));
+        assertFalse(key.equals(DiffCache.key("a/Test.txt", null, a, Collections.emptyList(), 3, false)));
+        assertNull(cache.get(key));
+
+        DiffCache.Entry entry = new DiffCache.Entry();
+        entry.lines = Arrays.asList("--- a/Test.txt", "+++ b/Test.txt", "@@ -1,2 +1,2 @@", " a", "-b", "+B");
+        entry.summary.changedFiles = 1;
+        entry.summary.addedLines = 1;
+        entry.summary.removedLines = 1;
+        cache.put(key, entry);
+
+        DiffCache.Entry cached = cache.get(key);
+        assertNotNull(cached);
+        assertEquals(entry.lines, cached.lines);
+        assertEquals(1, cached.summary.changedFiles);
+        assertEquals(1, cached.summary.addedLines);
+        assertEquals(1, cached.summary.removedLines);
+    }
+
+    @Test
+    public void testDiffCacheCorruptEntry() throws Throwable {
+        Path dir = Files.createTempDirectory("cache_test");
+        DiskCache disk = new DiskCache(dir, 1 << 20);
+        DiffCache cache = new DiffCache(disk);
+        disk.put("corrupt1", new byte[] { 0, 0 });
+        assertNull(cache.get("corrupt1"));
+        disk.put("corrupt2", new byte[] { 0x7F, -1, -1, -1 });
+        assertNull(cache.get("corrupt2"));
+        disk.put("corrupt3", new byte[] { -1, -1, -1, -1 });
+        assertNull(cache.get("corrupt3"));
+
+        cache.put("valid", new DiffCache.Entry());
+        byte[] bytes = disk.get("valid");
+        disk.put("trailing", Arrays.copyOf(bytes, bytes.length + 1));
+        assertNull(cache.get("trailing"));
+        disk.put("truncated", Arrays.copyOf(bytes, bytes.length - 1));
+        assertNull(cache.get("truncated"));
+        assertNotNull(cache.get("valid"));
+    }
+
+    @Test
+    public void testDiffOperationCache() throws Throwable {
+        Path tempDir = Files.createTempDirectory("cache_test");
+        tempDir.toFile().deleteOnExit();
+        Path a = tempDir.resolve("a");
+        Path b = tempDir.resolve("b");
+        Path cacheDir = tempDir.resolve("cache");
+        Files.createDirectories(a);
+        Files.createDirectories(b);
+        Files.write(a.resolve("A.txt"), Arrays.asList("a", "b", "c"));
+        Files.write(b.resolve("A.txt"), Arrays.asList("a", "B", "c"));
+        Files.write(b.resolve("Added.txt"), Arrays.asList("new"));
+
+        List<String> expected = diff(a, b, tempDir.resolve("uncached"), null);
+        assertEquals(expected, diff(a, b, tempDir.resolve("cold"), new DiffCache(cacheDir, 1 << 20)));
+        assertTrue(new DiskCache(cacheDir, 1 << 20).size() > 0);
+        assertEquals(expected, diff(a, b, tempDir.resolve("warm"), new DiffCache(cacheDir, 1 << 20)));
+
+        //Corrupt entries are misses, the files are diffed again.
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                Files.write(file, new byte[] { 0x7F, 0 });
+            }
+        }
+        assertEquals(expected, diff(a, b, tempDir.resolve("corrupt"), new DiffCache(cacheDir, 1 << 20)));
+    }
+
+    private static List<String> diff(Path a, Path b, Path out, DiffCache cache) throws Throwable {
+        DiffOperation operation = DiffOperation.builder().aPath(a).bPath(b).outputPath(out).cache(cache).build();
+        assertTrue(operation.doDiff());
+        //Added files count as changed too, the summary must be the same whether cached or not.
+        assertEquals(2, operation.getSummary().changedFiles);
+        assertEquals(1, operation.getSummary().addedFiles);
+        assertEquals(2, operation.getSummary().addedLines);
+        assertEquals(1, operation.getSummary().removedLines);
+        return Arrays.asList(
+                String.join("\n", Files.readAllLines(out.resolve("A.txt.patch"))),
+                String.join("\n", Files.readAllLines(out.resolve("Added.txt.patch")))
+        );
+    }
+
+    private static byte[] modeCorrupted(byte[] bytes) {
+        //lines (4), rejects (4), numResults (4) = 1, success (1), mode (1)
+        byte[] corrupt = Arrays.copyOf(bytes, bytes.length);
+        corrupt[11] = 1;
+        corrupt[13] = 100;
+        return corrupt;
+    }
+
+    private static PatchFile patchFile() {
+        List<String> lines = Arrays.asList("--- a/Test.txt", "+++ b/Test.txt", "@@ -1,3 +1,3 @@", " a", "-b", "+B", " c");
+        return PatchFile.fromLinesSingle("Test.txt.patch", lines, true);
+    }
+}
@@ -0,0 +1,170 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.daemon.Daemon;
+import codechicken.diffpatch.daemon.DaemonClient;
+import codechicken.diffpatch.daemon.Request;
+import codechicken.diffpatch.daemon.Response;
+
+public class DaemonTests {
+
+    @Test
+    public void testRequests() throws Throwable {
+        Path tempDir = Files.createTempDirectory("daemon_test");
+        tempDir.toFile().deleteOnExit();
+        Path a = tempDir.resolve("a");
+        Path b = tempDir.resolve("b");
+        Files.createDirectories(a);
+        Files.createDirectories(b);
+        Files.write(a.resolve("A.txt"), Arrays.asList("a", "b", "c"));
+        Files.write(b.resolve("A.txt"), Arrays.asList("a", "B", "c"));
+
+        Path stateFile = tempDir.resolve("daemon.state");
+        try (Daemon daemon = new Daemon(stateFile, 0, 2)) {
+            Thread thread = start(daemon);
+            DaemonClient client = DaemonClient.connect(stateFile);
+
+            Response diff = client.send(Request.of(Request.Command.DIFF)
+                    .option("aPath", a)
+                    .option("bPath", b)
+                    .option("outputPath", tempDir.resolve("patches")));
+            assertNull(diff.error);
+            assertTrue(diff.result);
+            assertTrue(diff.output.contains("Diff Summary"));
+
+            Response patch = client.send(Request.of(Request.Command.PATCH)
+                    .option("basePath", a)
+                    .option("patchesPath", tempDir.resolve("patches"))
+                    .option("outputPath", tempDir.resolve("out")));
+            assertNull(patch.error);
+            assertTrue(patch.result);
+            assertEquals(Files.readAllLines(b.resolve("A.txt")), Files.readAllLines(tempDir.resolve("out/A.txt")));
+
+            //Verbose output would go to the daemon's own output.
+            Response verbose = client.send(Request.of(Request.Command.DIFF)
+                    .option("aPath", a)
+                    .option("bPath", b)
+                    .option("outputPath", tempDir.resolve("patches"))
+                    .option("verbose", true));
+            assertFalse(verbose.result);
+            assertTrue(verbose.error.contains("verbose"));
+
+            Response unknown = client.send(Request.of(Request.Command.PATCH).option("basePath", a).option("patchesPath", a).option("outputPath", a).option("bogus", 1));
+            assertTrue(unknown.error.contains("bogus"));
+
+            assertTrue(client.send(Request.of(Request.Command.STOP)).result);
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+        assertFalse(Files.exists(stateFile));
+    }
+
+    @Test
+    public void testAuthentication() throws Throwable {
+        Path tempDir = Files.createTempDirectory("daemon_test");
+        tempDir.toFile().deleteOnExit();
+        Path stateFile = tempDir.resolve("daemon.state");
+        try (Daemon daemon = new Daemon(stateFile, 0, 2)) {
+            Thread thread = start(daemon);
+            List<String> state = Files.readAllLines(stateFile);
+            int port = Integer.parseInt(state.get(0));
+            String token = state.get(1);
+
+            //Requests with the wrong token are dropped without a response.
+            for (String wrong : Arrays.asList("", "wrong", token + "x", token.substring(1))) {
+                assertThrows(IOException.class, () -> new DaemonClient(port, wrong).send(Request.of(Request.Command.STOP)), wrong);
+            }
+
+            //Malformed requests, the daemon must keep serving after each.
+            assertRejected(port, out -> {
+                out.writeInt(1);
+                out.writeInt(Integer.MAX_VALUE);
+            });
+            assertRejected(port, out -> {
+                out.writeInt(1);
+                out.writeInt(-1);
+            });
+            assertRejected(port, out -> {
+                writeHeader(out, token);
+                out.writeInt(-5);
+            });
+            assertRejected(port, out -> {
+                writeHeader(out, token);
+                out.writeInt(1);
+                out.writeInt(-1);
+            });
+            assertRejected(port, out -> {
+                writeHeader(out, token);
+                out.writeInt(1);
+                out.writeInt(Integer.MAX_VALUE);
+            });
+            assertTrue(thread.isAlive());
+
+            Response response = DaemonClient.connect(stateFile).send(Request.of(Request.Command.STOP));
+            assertNull(response.error);
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, String token) throws IOException {
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(1);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeByte(Request.Command.DIFF.ordinal());
+    }
+
+    // Sends raw bytes, the daemon must close the connection without responding.
+    private static void assertRejected(int port, RequestWriter writer) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(10000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            writer.write(out);
+            out.flush();
+            int read;
+            try {
+                read = socket.getInputStream().read();
+            } catch (IOException e) {
+                //Reset, as the daemon closed with our bytes unread.
+                read = -1;
+            }
+            assertEquals(-1, read);
+        }
+    }
+
+    private static Thread start(Daemon daemon) {
+        Thread thread = new Thread(() -> {
+            try {
+                daemon.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "Daemon");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private interface RequestWriter {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+}
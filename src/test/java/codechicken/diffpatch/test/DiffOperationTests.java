@@ -1,15 +1,24 @@
 package codechicken.diffpatch.test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
 
 import org.junit.jupiter.api.Test;
 
 import codechicken.diffpatch.DiffOperation;
+import codechicken.diffpatch.util.LinesReader;
 
 /**
  * These tests assume that ArchiveReader and ArchiveWriter behave the same across all formats,
@@ -38,6 +47,86 @@ public class DiffOperationTests {
         assertTrue(Files.exists(patches.resolve("PatchFile.java.patch")));
     }
 
+    @Test
+    public void testSizesBeforeRead() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path a = tempDir.resolve("a");
+        Path b = tempDir.resolve("b");
+        Files.createDirectories(a);
+        Files.createDirectories(b);
+        Files.write(a.resolve("Same.txt"), Arrays.asList("a", "b"));
+        Files.write(b.resolve("Same.txt"), Arrays.asList("a", "b"));
+        Files.write(a.resolve("SameSize.txt"), Arrays.asList("a", "b"));
+        Files.write(b.resolve("SameSize.txt"), Arrays.asList("a", "c"));
+        Files.write(a.resolve("Grown.txt"), Arrays.asList("a"));
+        Files.write(b.resolve("Grown.txt"), Arrays.asList("a", "b"));
+
+        DiffOperation operation = DiffOperation.builder().aPath(a).bPath(b).outputPath(tempDir.resolve("patches")).build();
+        assertTrue(operation.doDiff());
+        assertEquals(1, operation.getSummary().unchangedFiles);
+        assertEquals(2, operation.getSummary().changedFiles);
+
+        //Both sizes are known before either side is read.
+        List<String> calls = new ArrayList<>();
+        LinesReader aFunc = recording(calls, "a", LinesReader.ofFiles(a::resolve));
+        LinesReader bFunc = recording(calls, "b", LinesReader.ofFiles(b::resolve));
+        TreeSet<String> entries = new TreeSet<>(Arrays.asList("Grown.txt"));
+        DiffOperation.DiffSummary summary = new DiffOperation.DiffSummary();
+        assertTrue(operation.doDiff(summary, entries, entries, aFunc, bFunc, 3, (file, patchFile) -> { }));
+        assertEquals(Arrays.asList("a size", "b size", "a read", "b read"), calls);
+        assertEquals(1, summary.changedFiles);
+    }
+
+    @Test
+    public void testUpdateDiff() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path a = tempDir.resolve("a");
+        Path b = tempDir.resolve("b");
+        Path patches = tempDir.resolve("patches");
+        Files.createDirectories(a.resolve("dir"));
+        Files.createDirectories(b.resolve("dir"));
+        Files.write(a.resolve("dir/A.txt"), Arrays.asList("a", "b"));
+        Files.write(b.resolve("dir/A.txt"), Arrays.asList("a", "B"));
+        Files.write(a.resolve("Same.txt"), Arrays.asList("a"));
+        Files.write(b.resolve("Same.txt"), Arrays.asList("a"));
+        Files.createDirectories(patches);
+        Files.write(patches.resolve("Same.txt.patch"), Arrays.asList("stale"));
+
+        DiffOperation operation = DiffOperation.builder().aPath(a).bPath(b).outputPath(patches).build();
+        //Separators, leading slashes and '.' segments are normalized.
+        assertTrue(operation.updateDiff(Arrays.asList("./dir//A.txt", "/Same.txt")));
+        assertTrue(Files.exists(patches.resolve("dir/A.txt.patch")));
+        assertFalse(Files.exists(patches.resolve("Same.txt.patch")));
+        assertTrue(operation.updateDiff(Collections.singletonList("dir\\A.txt")));
+
+        //Paths escaping the inputs or output are rejected before anything is touched.
+        Files.write(tempDir.resolve("evil.txt"), Arrays.asList("evil"));
+        Files.write(patches.resolve("Same.txt.patch"), Arrays.asList("stale"));
+        for (String file : Arrays.asList("../evil.txt", "dir/../../evil.txt", "..\\evil.txt", "C:/evil.txt", "", "/./")) {
+            assertThrows(IOException.class, () -> operation.updateDiff(Arrays.asList("Same.txt", file)), file);
+            assertTrue(Files.exists(patches.resolve("Same.txt.patch")), file);
+        }
+        assertFalse(Files.exists(tempDir.resolve("evil.txt.patch")));
+    }
+
+    private static LinesReader recording(List<String> calls, String side, LinesReader reader) {
+        return new LinesReader() {
+            @Override
+            public List<String> apply(String path) throws IOException {
+                calls.add(side + " read");
+                return reader.apply(path);
+            }
+
+            @Override
+            public long size(String path) throws IOException {
+                calls.add(side + " size");
+                return reader.size(path);
+            }
+        };
+    }
+
     private static void copyResource(String resource, Path to) throws IOException {
         to = to.toAbsolutePath();
         Files.createDirectories(to.getParent());
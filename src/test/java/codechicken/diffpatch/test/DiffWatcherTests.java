@@ -0,0 +1,95 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.DiffOperation;
+import codechicken.diffpatch.DiffWatcher;
+
+public class DiffWatcherTests {
+
+    private static final long TIMEOUT = 20000;
+
+    @Test
+    public void testWatch() throws Throwable {
+        Path tempDir = Files.createTempDirectory("watch_test");
+        tempDir.toFile().deleteOnExit();
+        Path a = tempDir.resolve("a");
+        Path b = tempDir.resolve("b");
+        Path patches = tempDir.resolve("patches");
+        Files.createDirectories(a);
+        Files.createDirectories(b);
+        Files.write(a.resolve("A.txt"), Arrays.asList("a", "b"));
+        Files.write(b.resolve("A.txt"), Arrays.asList("a", "b"));
+        Files.write(a.resolve("B.txt"), Arrays.asList("a"));
+        Files.write(b.resolve("B.txt"), Arrays.asList("a"));
+
+        DiffOperation operation = DiffOperation.builder().aPath(a).bPath(b).outputPath(patches).build();
+        assertFalse(operation.doDiff());
+        BlockingQueue<Set<String>> updates = new LinkedBlockingQueue<>();
+        Set<String> seen = new TreeSet<>();
+        Throwable[] error = { null };
+        Thread thread;
+        try (DiffWatcher watcher = operation.watch(50, (files, changes, summary) -> updates.add(files == null ? new TreeSet<>() : new TreeSet<>(files)))) {
+            thread = new Thread(() -> {
+                try {
+                    watcher.run();
+                } catch (Throwable t) {
+                    error[0] = t;
+                }
+            }, "DiffWatcher");
+            thread.setDaemon(true);
+            thread.start();
+
+            //A burst of edits only updates the edited file.
+            for (int i = 0; i < 5; i++) {
+                Files.write(b.resolve("A.txt"), Arrays.asList("a", "B" + i));
+            }
+            await(updates, seen, () -> Files.exists(patches.resolve("A.txt.patch")));
+            assertTrue(seen.contains("A.txt"));
+            assertFalse(seen.contains("B.txt"));
+            assertTrue(Files.readAllLines(patches.resolve("A.txt.patch")).contains("+B4"));
+
+            //Files in new directories are picked up.
+            seen.clear();
+            Files.createDirectories(b.resolve("dir/sub"));
+            Files.write(b.resolve("dir/sub/C.txt"), Arrays.asList("c"));
+            await(updates, seen, () -> Files.exists(patches.resolve("dir/sub/C.txt.patch")));
+            assertTrue(seen.contains("dir/sub/C.txt"));
+
+            //Reverting a file deletes its patch.
+            Files.write(b.resolve("A.txt"), Arrays.asList("a", "b"));
+            await(updates, seen, () -> !Files.exists(patches.resolve("A.txt.patch")));
+        }
+        //Closing the watcher ends run.
+        thread.join(TIMEOUT);
+        assertFalse(thread.isAlive());
+        assertNull(error[0]);
+    }
+
+    // Waits for updates until the condition holds, collecting the updated files.
+    private static void await(BlockingQueue<Set<String>> updates, Set<String> seen, BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            long remaining = end - System.currentTimeMillis();
+            assertTrue(remaining > 0, "Timed out waiting for an update.");
+            Set<String> files = updates.poll(remaining, TimeUnit.MILLISECONDS);
+            if (files != null) {
+                seen.addAll(files);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.diff.Differ;
+import codechicken.diffpatch.diff.PatienceDiffer;
+import codechicken.diffpatch.util.ByteLines;
+import codechicken.diffpatch.util.LineTable;
+import codechicken.diffpatch.util.Patch;
+
+public class DifferTests {
+
+    @Test
+    public void testTrimmingEquivalence() {
+        Random rand = new Random(42);
+        for (int iter = 0; iter < 500; iter++) {
+            List<String> lines1 = randomLines(rand, rand.nextInt(40));
+            List<String> lines2 = edit(rand, lines1);
+            int context = rand.nextInt(5);
+            String message = lines1 + " -> " + lines2 + " context " + context;
+
+            //Trimming the common prefix and suffix must not change the result.
+            Differ differ = new PatienceDiffer();
+            List<String> untrimmed = toStrings(Differ.makePatches(differ.match(lines1, lines2), lines1, lines2, context, new LineTable()));
+            assertEquals(untrimmed, toStrings(new PatienceDiffer().makePatches(lines1, lines2, context, true)), message);
+            assertEquals(toStrings(Differ.makePatches(new PatienceDiffer().diff(lines1, lines2), context, false)), toStrings(new PatienceDiffer().makePatches(lines1, lines2, context, false)), message);
+
+            //Nor must comparing the lines as bytes.
+            ByteLines a = toByteLines(lines1);
+            ByteLines b = toByteLines(lines2);
+            assertEquals(lines1, a);
+            assertEquals(lines2, b);
+            assertEquals(untrimmed, toStrings(new PatienceDiffer().makePatches(a, b, context, true, (i1, i2) -> a.lineEquals(i1, b, i2))), message);
+        }
+    }
+
+    private static List<String> randomLines(Random rand, int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add(randomLine(rand));
+        }
+        return lines;
+    }
+
+    private static String randomLine(Random rand) {
+        //A small alphabet, so lines repeat and matching has choices to make.
+        return rand.nextInt(8) == 0 ? "" : String.valueOf((char) ('a' + rand.nextInt(6)));
+    }
+
+    // A few random edits, leaving long common runs either side.
+    private static List<String> edit(Random rand, List<String> lines) {
+        List<String> edited = new ArrayList<>(lines);
+        int edits = rand.nextInt(4);
+        for (int i = 0; i < edits; i++) {
+            int index = rand.nextInt(edited.size() + 1);
+            switch (rand.nextInt(3)) {
+                case 0:
+                    edited.add(index, randomLine(rand));
+                    break;
+                case 1:
+                    if (index < edited.size()) {
+                        edited.remove(index);
+                    }
+                    break;
+                default:
+                    if (index < edited.size()) {
+                        edited.set(index, randomLine(rand));
+                    }
+                    break;
+            }
+        }
+        return edited;
+    }
+
+    private static ByteLines toByteLines(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return ByteLines.of(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> toStrings(List<Patch> patches) {
+        return patches.stream().map(Patch::toString).collect(Collectors.toList());
+    }
+}
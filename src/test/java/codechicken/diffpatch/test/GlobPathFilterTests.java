@@ -0,0 +1,104 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.GlobPathFilter;
+
+public class GlobPathFilterTests {
+
+    @Test
+    public void testEmpty() {
+        GlobPathFilter filter = GlobPathFilter.builder().build();
+        assertTrue(filter.apply("a/b/c.txt"));
+        assertTrue(filter.applyDirectory("a"));
+    }
+
+    @Test
+    public void testDirectoryInclude() {
+        GlobPathFilter filter = GlobPathFilter.builder().include("com/example").build();
+        assertTrue(filter.apply("com/example/Foo.java"));
+        assertTrue(filter.apply("com/example/sub/Bar.java"));
+        assertFalse(filter.apply("com/examples/Foo.java"));
+        assertFalse(filter.apply("com/Foo.java"));
+        assertTrue(filter.applyDirectory("com"));
+        assertTrue(filter.applyDirectory("com/example/sub"));
+        assertFalse(filter.applyDirectory("org"));
+        assertFalse(filter.applyDirectory("com/other"));
+    }
+
+    @Test
+    public void testSegmentGlobs() {
+        GlobPathFilter filter = GlobPathFilter.builder().include("src/?.txt", "lib/*a*b").build();
+        assertTrue(filter.apply("src/a.txt"));
+        assertFalse(filter.apply("src/ab.txt"));
+        assertFalse(filter.apply("src/.txt"));
+        //'*' never crosses a '/'.
+        assertFalse(filter.apply("src/a/b.txt"));
+        assertTrue(filter.apply("lib/ab"));
+        assertTrue(filter.apply("lib/xaxbxb"));
+        assertFalse(filter.apply("lib/xbxa"));
+    }
+
+    @Test
+    public void testAnyDepth() {
+        GlobPathFilter filter = GlobPathFilter.builder().include("**/*.java").build();
+        //'**' matches zero segments.
+        assertTrue(filter.apply("Foo.java"));
+        assertTrue(filter.apply("a/b/Foo.java"));
+        assertFalse(filter.apply("a/b/Foo.txt"));
+        assertTrue(filter.applyDirectory("a/b"));
+
+        filter = GlobPathFilter.builder().include("a/**/b").build();
+        assertTrue(filter.apply("a/b"));
+        assertTrue(filter.apply("a/x/y/b"));
+        assertTrue(filter.apply("a/x/y/b/c.txt"));
+        assertFalse(filter.apply("a/x/c"));
+        assertFalse(filter.apply("b"));
+        assertTrue(filter.applyDirectory("a/x/y"));
+        assertFalse(filter.applyDirectory("c"));
+
+        //Repeated '**' segments behave as one.
+        filter = GlobPathFilter.builder().include("a/**/**/b").build();
+        assertTrue(filter.apply("a/b"));
+        assertTrue(filter.apply("a/x/b"));
+
+        filter = GlobPathFilter.builder().include("**").build();
+        assertTrue(filter.apply("a"));
+        assertTrue(filter.apply("a/b/c"));
+    }
+
+    @Test
+    public void testSharedPrefixes() {
+        GlobPathFilter filter = GlobPathFilter.builder().include("a/b/c.txt", "a/b/*.java", "a/**/d").build();
+        assertTrue(filter.apply("a/b/c.txt"));
+        assertTrue(filter.apply("a/b/X.java"));
+        assertTrue(filter.apply("a/b/d"));
+        assertTrue(filter.apply("a/b/e/d"));
+        assertFalse(filter.apply("a/b/e.txt"));
+        assertFalse(filter.apply("a/c.txt"));
+    }
+
+    @Test
+    public void testExcludes() {
+        GlobPathFilter filter = GlobPathFilter.builder().include("proj").exclude("**/build", "**/*.class").build();
+        assertTrue(filter.apply("proj/src/A.java"));
+        assertFalse(filter.apply("proj/build/out.txt"));
+        assertFalse(filter.apply("proj/src/A.class"));
+        assertFalse(filter.apply("other/A.java"));
+        assertTrue(filter.applyDirectory("proj/src"));
+        //Excluded directories are skipped entirely.
+        assertFalse(filter.applyDirectory("proj/build"));
+        assertFalse(filter.applyDirectory("proj/a/build"));
+    }
+
+    @Test
+    public void testSlashes() {
+        GlobPathFilter filter = GlobPathFilter.builder().include("/com//example/").build();
+        assertTrue(filter.apply("com/example/Foo.java"));
+        assertTrue(filter.apply("/com/example//Foo.java"));
+        assertFalse(filter.apply("com/Foo.java"));
+    }
+}
@@ -0,0 +1,103 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.util.Diff;
+import codechicken.diffpatch.util.Hunk;
+import codechicken.diffpatch.util.LineTable;
+import codechicken.diffpatch.util.Operation;
+import codechicken.diffpatch.util.Patch;
+
+public class HunkTests {
+
+    private static final List<Diff> DIFFS = Arrays.asList(
+            Diff.of(Operation.EQUAL, "a"),
+            Diff.of(Operation.DELETE, "b"),
+            Diff.of(Operation.INSERT, "B"),
+            Diff.of(Operation.INSERT, ""),
+            Diff.of(Operation.EQUAL, "a")
+    );
+
+    @Test
+    public void testRoundTrip() {
+        LineTable table = new LineTable();
+        Hunk hunk = Hunk.of(DIFFS, table);
+        assertEquals(toStrings(DIFFS), toStrings(hunk.asList()));
+        assertEquals(5, hunk.size());
+        assertEquals(3, hunk.getLength1());
+        assertEquals(4, hunk.getLength2());
+        assertEquals(2, hunk.count(Operation.INSERT));
+        assertEquals(Arrays.asList("a", "b", "a"), hunk.getContextLines());
+        assertEquals(Arrays.asList("a", "B", "", "a"), hunk.getPatchedLines());
+        assertTrue(hunk.matchesContext(Arrays.asList("x", "a", "b", "a"), 1));
+        assertFalse(hunk.matchesContext(Arrays.asList("x", "a", "b"), 1));
+
+        //Equal lines share an id.
+        assertEquals(4, table.size());
+        assertEquals(hunk.getLineId(0), hunk.getLineId(4));
+        assertSame(hunk.getLine(0), hunk.getLine(4));
+
+        //A second Hunk in the same table reuses its lines.
+        Hunk other = Hunk.of(Operation.EQUAL, Arrays.asList("a", "c"), table);
+        assertEquals(hunk.getLineId(0), other.getLineId(0));
+        assertEquals(5, table.size());
+    }
+
+    @Test
+    public void testSerializedTable() {
+        LineTable table = new LineTable(new String[] { "a", "b" });
+        assertEquals("b", table.get(1));
+        assertEquals(0, table.intern("a"));
+        assertEquals(2, table.intern("c"));
+        assertEquals(3, table.size());
+
+        Hunk hunk = new Hunk.Builder(table).add(Operation.EQUAL, 0).add(Operation.DELETE, 1).add(Operation.INSERT, "c").build();
+        assertEquals(Arrays.asList(" a", "-b", "+c"), toStrings(hunk.asList()));
+    }
+
+    @Test
+    public void testPatchView() {
+        Hunk hunk = Hunk.of(DIFFS, new LineTable());
+        Patch patch = new Patch(hunk);
+        assertEquals(3, patch.length1);
+        assertEquals(4, patch.length2);
+        assertSame(hunk, patch.getHunk());
+        assertEquals(Operation.DELETE, patch.getOp(1));
+        assertEquals("B", patch.getLine(2));
+        assertEquals(1, patch.count(Operation.DELETE));
+        List<String> lines = new ArrayList<>();
+        patch.addDiffLines(lines);
+        assertEquals(toStrings(DIFFS), lines);
+
+        //Copies keep viewing the Hunk, modifying one copies it out.
+        Patch copy = new Patch(patch);
+        assertSame(hunk, copy.getHunk());
+        copy.diffs.add(Diff.of(Operation.EQUAL, "c"));
+        assertNull(copy.getHunk());
+        assertEquals(6, copy.diffs.size());
+        assertEquals("c", copy.getLine(5));
+        assertSame(hunk, patch.getHunk());
+        assertEquals(5, patch.diffs.size());
+
+        patch.trim(0);
+        assertNull(patch.getHunk());
+        assertEquals(Arrays.asList("-b", "+B", "+"), toStrings(patch.diffs));
+        assertNotNull(new Patch(new Patch(hunk)).getHunk());
+    }
+
+    private static List<String> toStrings(List<Diff> diffs) {
+        return diffs.stream().map(Diff::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,117 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.util.MappedPatchReader;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchHeader;
+import codechicken.diffpatch.util.PatchReader;
+
+public class MappedPatchReaderTests {
+
+    private static final List<String> PATCH = Arrays.asList(
+            "--- a/A.txt",
+            "+++ b/A.txt",
+            "@@ -1,3 +1,3 @@",
+            " a",
+            "--- removed",
+            "+++ added",
+            " c",
+            "@@ -10,2 +_,3 @@",
+            " x",
+            "+y",
+            " z",
+            "",
+            "--- a/B.txt",
+            "+++ b/B.txt",
+            "@@ -1,1 +1,1 @@",
+            "-\u00e9t\u00e9",
+            "+summer",
+            "\\ No newline at end of file"
+    );
+
+    @Test
+    public void testParsersAgree() throws Throwable {
+        List<PatchFile> fromLines = PatchFile.fromLines("test.patch", PATCH, true);
+        List<PatchFile> streamed = new ArrayList<>();
+        PatchReader.parse("test.patch", new StringReader(String.join("\n", PATCH)), true, streamed::add);
+        List<PatchFile> mapped = MappedPatchReader.read("test.patch", buffer(String.join("\r\n", PATCH)), true);
+
+        assertEquals(2, fromLines.size());
+        assertEquals(toLines(fromLines), toLines(streamed));
+        assertEquals(toLines(fromLines), toLines(mapped));
+        for (int i = 0; i < fromLines.size(); i++) {
+            assertEquals(fromLines.get(i).noNewLine, streamed.get(i).noNewLine);
+            assertEquals(fromLines.get(i).noNewLine, mapped.get(i).noNewLine);
+        }
+        assertTrue(mapped.get(1).noNewLine);
+        assertEquals("-\u00e9t\u00e9", mapped.get(1).patches.get(0).diffs.get(0).toString());
+        //The auto header resolves against the running delta.
+        assertEquals(9, mapped.get(0).patches.get(1).start2);
+    }
+
+    @Test
+    public void testParsersAgreeOnErrors() {
+        List<List<String>> invalid = Arrays.asList(
+                Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1 +1 @@", "-a", "+b"),
+                Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,1 +1,1 @@", "-a", "+b", "\\ nope"),
+                Arrays.asList("--- a/A.txt", "+++ b/A.txt", " a"),
+                Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,1 +1,1 @@", "-a", "+b", "garbage")
+        );
+        for (List<String> lines : invalid) {
+            assertThrows(IllegalArgumentException.class, () -> PatchFile.fromLines("test.patch", lines, true));
+            assertThrows(IllegalArgumentException.class, () -> PatchReader.parse("test.patch", new StringReader(String.join("\n", lines)), true, e -> { }));
+            assertThrows(IllegalArgumentException.class, () -> MappedPatchReader.read("test.patch", buffer(String.join("\n", lines)), true));
+        }
+    }
+
+    @Test
+    public void testScan() {
+        List<PatchHeader> headers = MappedPatchReader.scan("test.patch", buffer(String.join("\n", PATCH)));
+        assertEquals(2, headers.size());
+        assertEquals("a/A.txt", headers.get(0).basePath);
+        assertEquals("b/A.txt", headers.get(0).patchedPath);
+        assertEquals(2, headers.get(0).hunks);
+        assertEquals("a/B.txt", headers.get(1).basePath);
+        assertEquals(1, headers.get(1).hunks);
+    }
+
+    @Test
+    public void testMap() throws Throwable {
+        Path tempDir = Files.createTempDirectory("mapped_test");
+        tempDir.toFile().deleteOnExit();
+        Path small = tempDir.resolve("small.patch");
+        Files.write(small, PATCH, StandardCharsets.UTF_8);
+        //Small files are read onto the heap.
+        ByteBuffer buffer = MappedPatchReader.map(small);
+        assertFalse(buffer.isDirect());
+        assertEquals(toLines(PatchFile.fromLines("test.patch", PATCH, true)), toLines(MappedPatchReader.read("test.patch", small, true)));
+
+        Path large = tempDir.resolve("large.patch");
+        Files.write(large, new byte[4 * 1024 * 1024]);
+        assertTrue(MappedPatchReader.map(large).isDirect());
+    }
+
+    private static List<String> toLines(List<PatchFile> patchFiles) {
+        return patchFiles.stream().flatMap(e -> e.toLines(false).stream()).collect(Collectors.toList());
+    }
+
+    private static ByteBuffer buffer(String str) {
+        return ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8));
+    }
+}
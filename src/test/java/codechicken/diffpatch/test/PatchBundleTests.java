@@ -0,0 +1,113 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.DiffOperation;
+import codechicken.diffpatch.PatchOperation;
+import codechicken.diffpatch.util.BinaryPatchFormat;
+import codechicken.diffpatch.util.PatchBundle;
+import codechicken.diffpatch.util.PatchFile;
+
+public class PatchBundleTests {
+
+    private static final List<String> PATCH = Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,2 +1,2 @@", " a", "-b", "+B");
+
+    @Test
+    public void testRoundTrip() throws Throwable {
+        Path tempDir = Files.createTempDirectory("bundle_test");
+        tempDir.toFile().deleteOnExit();
+        Path path = tempDir.resolve("patches.bundle");
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryPatchFormat.write(PatchFile.fromLines("B.txt.patch", replace(PATCH, "A.txt", "B.txt"), true), binary);
+        //Large enough to be mapped rather than read.
+        List<String> large = new ArrayList<>(Arrays.asList("--- a/C.txt", "+++ b/C.txt", "@@ -1,5000 +1,5000 @@"));
+        for (int i = 0; i < 5000; i++) {
+            large.add(" line " + i);
+        }
+        try (PatchBundle.Writer writer = PatchBundle.create(path)) {
+            writer.putEntry("A.txt", PATCH, "\n");
+            writer.putEntry("B.txt", binary.toByteArray());
+            writer.putEntry("C.txt", large, "\r\n");
+            assertThrows(IllegalArgumentException.class, () -> writer.putEntry("A.txt", new byte[0]));
+        }
+
+        assertTrue(PatchBundle.isBundle(path));
+        try (PatchBundle bundle = PatchBundle.open(path)) {
+            assertEquals(Arrays.asList("A.txt", "B.txt", "C.txt"), new ArrayList<>(bundle.getEntries()));
+            assertNull(bundle.getEntry("missing"));
+            assertTrue(bundle.readPatchFiles("missing").isEmpty());
+
+            List<PatchFile> a = bundle.readPatchFiles("A.txt");
+            assertEquals(1, a.size());
+            assertEquals("A.txt.patch", a.get(0).name);
+            assertEquals(PATCH, a.get(0).toLines(false));
+
+            List<PatchFile> b = bundle.readPatchFiles("B.txt");
+            assertEquals(replace(PATCH, "A.txt", "B.txt"), b.get(0).toLines(false));
+
+            List<PatchFile> c = bundle.readPatchFiles("C.txt");
+            assertEquals(large, c.get(0).toLines(false));
+        }
+    }
+
+    @Test
+    public void testNotABundle() throws Throwable {
+        Path tempDir = Files.createTempDirectory("bundle_test");
+        tempDir.toFile().deleteOnExit();
+        Path path = tempDir.resolve("A.txt.patch");
+        Files.write(path, PATCH);
+        assertFalse(PatchBundle.isBundle(path));
+        assertFalse(PatchBundle.isBundle(tempDir));
+        assertThrows(IOException.class, () -> PatchBundle.open(path));
+        Path tiny = tempDir.resolve("tiny");
+        Files.write(tiny, new byte[] { 1 });
+        assertFalse(PatchBundle.isBundle(tiny));
+    }
+
+    @Test
+    public void testDiffAndPatch() throws Throwable {
+        Path tempDir = Files.createTempDirectory("bundle_test");
+        tempDir.toFile().deleteOnExit();
+        Path a = tempDir.resolve("a");
+        Path b = tempDir.resolve("b");
+        Path out = tempDir.resolve("out");
+        Path bundle = tempDir.resolve("patches.bundle");
+        Files.createDirectories(a.resolve("dir"));
+        Files.createDirectories(b.resolve("dir"));
+        Files.write(a.resolve("dir/A.txt"), Arrays.asList("a", "b", "c"));
+        Files.write(b.resolve("dir/A.txt"), Arrays.asList("a", "B", "c"));
+        Files.write(a.resolve("Same.txt"), Arrays.asList("same"));
+        Files.write(b.resolve("Same.txt"), Arrays.asList("same"));
+
+        assertTrue(DiffOperation.builder().aPath(a).bPath(b).outputPath(bundle).bundle(true).build().doDiff());
+        assertTrue(PatchBundle.isBundle(bundle));
+        try (PatchBundle patches = PatchBundle.open(bundle)) {
+            assertEquals(Arrays.asList("dir/A.txt"), new ArrayList<>(patches.getEntries()));
+        }
+        assertTrue(PatchOperation.builder().basePath(a).patchesPath(bundle).outputPath(out).build().doPatch());
+        assertEquals(Files.readAllLines(b.resolve("dir/A.txt")), Files.readAllLines(out.resolve("dir/A.txt")));
+        assertEquals(Files.readAllLines(b.resolve("Same.txt")), Files.readAllLines(out.resolve("Same.txt")));
+    }
+
+    private static List<String> replace(List<String> lines, String from, String to) {
+        List<String> replaced = new ArrayList<>();
+        for (String line : lines) {
+            replaced.add(line.replace(from, to));
+        }
+        return replaced;
+    }
+}
@@ -1,16 +1,23 @@
 package codechicken.diffpatch.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 
+import codechicken.diffpatch.FailFast;
 import codechicken.diffpatch.PatchOperation;
 
 /**
@@ -42,6 +49,247 @@ public class PatchOperationTests {
         assertEquals(output, original);
     }
 
+    @Test
+    public void testCheckOnly() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path orig = tempDir.resolve("orig");
+        Path src = tempDir.resolve("src");
+        Path patches = tempDir.resolve("patches");
+        copyResource("/data/orig/PatchFile.java", orig.resolve("PatchFile.java"));
+        copyResource("/data/patches/PatchFile.java.patch", patches.resolve("PatchFile.java.patch"));
+        PatchOperation operation = PatchOperation.builder()
+                .basePath(orig)
+                .outputPath(src)
+                .patchesPath(patches)
+                .check(true)
+                .build();
+        assertTrue(operation.doPatch());
+        assertFalse(Files.exists(src));
+        assertTrue(operation.getSummary().exactMatches > 0);
+        assertEquals(0, operation.getSummary().failedMatches);
+    }
+
+    @Test
+    public void testSeries() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path orig = tempDir.resolve("orig");
+        Path src = tempDir.resolve("src");
+        Path patches = tempDir.resolve("patches");
+        Files.createDirectories(orig);
+        Files.createDirectories(patches);
+        Files.write(orig.resolve("Test.java"), Arrays.asList("class Test {", "    int a;", "}"));
+        Files.write(patches.resolve("01-b.patch"), Arrays.asList("--- a/Test.java", "+++ b/Test.java", "@@ -1,3 +1,4 @@", " class Test {", "     int a;", "+    int b;", " }"));
+        Files.write(patches.resolve("02-c.patch"), Arrays.asList("--- a/Test.java", "+++ b/Test.java", "@@ -2,3 +2,4 @@", "     int a;", "     int b;", "+    int c;", " }"));
+        boolean result = PatchOperation.builder()
+                .basePath(orig)
+                .outputPath(src)
+                .patchesPath(patches)
+                .series(true)
+                .build()
+                .doPatch();
+        assertTrue(result);
+        assertEquals(Arrays.asList("class Test {", "    int a;", "    int b;", "    int c;", "}"), Files.readAllLines(src.resolve("Test.java")));
+    }
+
+    @Test
+    public void testFailFastFile() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path orig = tempDir.resolve("orig");
+        Path src = tempDir.resolve("src");
+        Path rejects = tempDir.resolve("rejects");
+        Path patches = tempDir.resolve("patches");
+        writeFailingPatch(orig, patches);
+        List<Integer> failed = new ArrayList<>();
+        PatchOperation operation = PatchOperation.builder()
+                .basePath(orig)
+                .outputPath(src)
+                .rejectsPath(rejects)
+                .patchesPath(patches)
+                .failFast(FailFast.FILE)
+                .listener((patchFile, index, result) -> {
+                    if (!result.success) {
+                        failed.add(index);
+                    }
+                })
+                .build();
+        assertFalse(operation.doPatch());
+        assertFalse(operation.isAborted());
+        //The hunk after the rejected one must be reported, not silently dropped.
+        assertEquals(Arrays.asList(1, 2), failed);
+        assertEquals(1, operation.getSummary().exactMatches);
+        assertEquals(2, operation.getSummary().failedMatches);
+        assertEquals(Arrays.asList("a", "A", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l"), Files.readAllLines(src.resolve("Test.txt")));
+        List<String> rejectLines = Files.readAllLines(rejects.resolve("Test.txt.patch.rej"));
+        assertTrue(rejectLines.contains("++++ REJECTED HUNK: 2"));
+        assertTrue(rejectLines.contains("++++ REJECTED HUNK: 3"));
+    }
+
+    @Test
+    public void testFailFastNever() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path orig = tempDir.resolve("orig");
+        Path src = tempDir.resolve("src");
+        Path patches = tempDir.resolve("patches");
+        writeFailingPatch(orig, patches);
+        PatchOperation operation = PatchOperation.builder()
+                .basePath(orig)
+                .outputPath(src)
+                .patchesPath(patches)
+                .build();
+        assertFalse(operation.doPatch());
+        assertEquals(2, operation.getSummary().exactMatches);
+        assertEquals(1, operation.getSummary().failedMatches);
+        assertEquals(Arrays.asList("a", "A", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "L", "l"), Files.readAllLines(src.resolve("Test.txt")));
+    }
+
+    @Test
+    public void testFailFastOperation() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path orig = tempDir.resolve("orig");
+        Path src = tempDir.resolve("src");
+        Path patches = tempDir.resolve("patches");
+        writeFailingPatch(orig, patches);
+        PatchOperation operation = PatchOperation.builder()
+                .basePath(orig)
+                .outputPath(src)
+                .patchesPath(patches)
+                .failFast(FailFast.OPERATION)
+                .build();
+        assertFalse(operation.doPatch());
+        assertTrue(operation.isAborted());
+        assertEquals(2, operation.getSummary().failedMatches);
+    }
+
+    @Test
+    public void testInPlaceRenames() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path orig = tempDir.resolve("orig");
+        Path patches = tempDir.resolve("patches");
+        Files.createDirectories(orig);
+        Files.createDirectories(patches);
+        Files.write(orig.resolve("A.txt"), Arrays.asList("a", "b"));
+        Files.write(orig.resolve("B.txt"), Arrays.asList("c", "d"));
+        //A.txt moves to B.txt before B.txt, which is read after, moves on to C.txt.
+        Files.write(patches.resolve("1.patch"), Arrays.asList("--- a/A.txt", "+++ b/B.txt", "@@ -1,2 +1,2 @@", " a", "-b", "+B"));
+        Files.write(patches.resolve("2.patch"), Arrays.asList("--- a/B.txt", "+++ b/C.txt", "@@ -1,2 +1,2 @@", " c", "-d", "+D"));
+
+        Path src = tempDir.resolve("src");
+        assertTrue(PatchOperation.builder().basePath(orig).outputPath(src).patchesPath(patches).build().doPatch());
+        assertTrue(PatchOperation.builder().basePath(orig).outputPath(orig).patchesPath(patches).build().doPatch());
+        for (Path dir : Arrays.asList(src, orig)) {
+            assertFalse(Files.exists(dir.resolve("A.txt")));
+            assertEquals(Arrays.asList("a", "B"), Files.readAllLines(dir.resolve("B.txt")));
+            assertEquals(Arrays.asList("c", "D"), Files.readAllLines(dir.resolve("C.txt")));
+        }
+        //Nothing is left staged.
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(Arrays.asList("orig", "patches", "src"), files.map(e -> e.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testOverlappingOutput() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path patches = tempDir.resolve("patches");
+        Files.createDirectories(patches);
+        Files.write(patches.resolve("A.txt.patch"), Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,2 +1,2 @@", " a", "-b", "+B"));
+
+        //The output inside the base, its old contents are part of the base.
+        Path base = tempDir.resolve("base");
+        Files.createDirectories(base.resolve("out"));
+        Files.write(base.resolve("A.txt"), Arrays.asList("a", "b"));
+        Files.write(base.resolve("out/Stale.txt"), Arrays.asList("stale"));
+        Path output = base.resolve("out");
+        assertTrue(PatchOperation.builder().basePath(base).outputPath(output).patchesPath(patches).build().doPatch());
+        assertEquals(Arrays.asList("a", "B"), Files.readAllLines(output.resolve("A.txt")));
+        assertEquals(Arrays.asList("stale"), Files.readAllLines(output.resolve("out/Stale.txt")));
+        assertFalse(Files.exists(output.resolve("Stale.txt")));
+        assertEquals(Arrays.asList("a", "b"), Files.readAllLines(base.resolve("A.txt")));
+
+        //The output holding the base, replaced once the base has been read.
+        Path root = tempDir.resolve("root");
+        Files.createDirectories(root.resolve("base"));
+        Files.write(root.resolve("base/A.txt"), Arrays.asList("a", "b"));
+        assertTrue(PatchOperation.builder().basePath(root.resolve("base")).outputPath(root).patchesPath(patches).build().doPatch());
+        assertEquals(Arrays.asList("a", "B"), Files.readAllLines(root.resolve("A.txt")));
+        assertFalse(Files.exists(root.resolve("base")));
+
+        //Nothing is left staged.
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(Arrays.asList("base", "patches", "root"), files.map(e -> e.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+        try (Stream<Path> files = Files.list(base)) {
+            assertEquals(Arrays.asList("A.txt", "out"), files.map(e -> e.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testPlan() throws Throwable {
+        Path tempDir = Files.createTempDirectory("dir_test");
+        tempDir.toFile().deleteOnExit();
+        Path orig = tempDir.resolve("orig");
+        Path src = tempDir.resolve("src");
+        Path patches = tempDir.resolve("patches");
+        Files.createDirectories(orig);
+        Files.createDirectories(patches);
+        Files.write(orig.resolve("A.txt"), Arrays.asList("a", "b"));
+        Files.write(orig.resolve("R.txt"), Arrays.asList("r"));
+        Files.write(patches.resolve("A.txt.patch"), Arrays.asList("--- a/A.txt", "+++ b/A.txt", "@@ -1,2 +1,2 @@", " a", "-b", "+B"));
+        Files.write(patches.resolve("New.txt.patch"), Arrays.asList("--- /dev/null", "+++ b/New.txt", "@@ -1,0 +1,1 @@", "+n"));
+        Files.write(patches.resolve("R.txt.patch"), Arrays.asList("--- a/R.txt", "+++ /dev/null", "@@ -1,1 +1,0 @@", "-r"));
+        //Its hunk would fail to parse, but only the header is ever read as its base is missing.
+        Files.write(patches.resolve("Missing.txt.patch"), Arrays.asList("--- a/Missing.txt", "+++ b/Missing.txt", "@@ -1,1 +1,1 @@", "?m"));
+
+        PatchOperation operation = PatchOperation.builder()
+                .basePath(orig)
+                .outputPath(src)
+                .patchesPath(patches)
+                .build();
+        PatchOperation.PatchPlan plan = operation.plan();
+        assertEquals(Arrays.asList("a/A.txt"), plan.targets.stream().map(e -> e.basePath).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("b/New.txt"), plan.added.stream().map(e -> e.patchedPath).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("a/R.txt"), plan.removed.stream().map(e -> e.basePath).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("a/Missing.txt"), plan.missing.stream().map(e -> e.basePath).collect(Collectors.toList()));
+        assertEquals(plan.missing, plan.skipped);
+        assertEquals(new TreeSet<>(Arrays.asList("A.txt.patch", "New.txt.patch", "R.txt.patch")), new TreeSet<>(plan.entries));
+        assertEquals(3, plan.getHunks());
+
+        assertTrue(operation.doPatch());
+        assertEquals(1, operation.getSummary().missingFiles);
+        assertEquals(Arrays.asList("a", "B"), Files.readAllLines(src.resolve("A.txt")));
+        assertEquals(Arrays.asList("n"), Files.readAllLines(src.resolve("New.txt")));
+        assertFalse(Files.exists(src.resolve("R.txt")));
+    }
+
+    private static void writeFailingPatch(Path orig, Path patches) throws IOException {
+        Files.createDirectories(orig);
+        Files.createDirectories(patches);
+        Files.write(orig.resolve("Test.txt"), Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l"));
+        Files.write(patches.resolve("Test.txt.patch"), Arrays.asList(
+                "--- a/Test.txt",
+                "+++ b/Test.txt",
+                "@@ -1,2 +1,3 @@",
+                " a",
+                "+A",
+                " b",
+                "@@ -6,2 +7,3 @@",
+                " x",
+                "+X",
+                " y",
+                "@@ -11,2 +13,3 @@",
+                " k",
+                "+L",
+                " l"
+        ));
+    }
+
     private static void copyResource(String resource, Path to) throws IOException {
         to = to.toAbsolutePath();
         Files.createDirectories(to.getParent());
@@ -0,0 +1,125 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.PatchOperation;
+import codechicken.diffpatch.util.Diff;
+import codechicken.diffpatch.util.Operation;
+import codechicken.diffpatch.util.Patch;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchReader;
+
+public class PatchReaderTests {
+
+    @Test
+    public void testHunkHeader() {
+        Patch patch = new Patch();
+        assertTrue(PatchReader.parseHunkHeader("@@ -10,3 +12,4 @@", patch));
+        assertEquals(9, patch.start1);
+        assertEquals(3, patch.length1);
+        assertEquals(11, patch.start2);
+        assertEquals(4, patch.length2);
+
+        assertTrue(PatchReader.parseHunkHeader("@@ -1,2 +_,3 @@ trailing section", patch));
+        assertEquals(Integer.MIN_VALUE, patch.start2);
+        assertEquals(3, patch.length2);
+    }
+
+    @Test
+    public void testInvalidHunkHeader() {
+        Patch patch = new Patch();
+        //Lengths are required.
+        assertFalse(PatchReader.parseHunkHeader("@@ -1 +1 @@", patch));
+        assertFalse(PatchReader.parseHunkHeader("@@ -1,1 +1 @@", patch));
+        assertFalse(PatchReader.parseHunkHeader("@@ -1 +1,1 @@", patch));
+        //Overflow.
+        assertFalse(PatchReader.parseHunkHeader("@@ -2147483648,1 +1,1 @@", patch));
+        assertFalse(PatchReader.parseHunkHeader("@@ -1,1 +1,99999999999 @@", patch));
+        assertTrue(PatchReader.parseHunkHeader("@@ -2147483647,1 +1,1 @@", patch));
+        //Malformed.
+        assertFalse(PatchReader.parseHunkHeader("@@ -1,1 +1,1", patch));
+        assertFalse(PatchReader.parseHunkHeader("@@ -a,1 +1,1 @@", patch));
+        assertFalse(PatchReader.parseHunkHeader("@ -1,1 +1,1 @@", patch));
+    }
+
+    @Test
+    public void testParse() throws Throwable {
+        List<PatchFile> patchFiles = parse(
+                "--- a/A.txt",
+                "+++ b/A.txt",
+                "@@ -1,3 +1,3 @@",
+                " a",
+                "--- removed",
+                "+++ added",
+                " c",
+                "--- a/B.txt",
+                "+++ b/B.txt",
+                "@@ -1,1 +1,1 @@",
+                "-x",
+                "+y",
+                "\\ No newline at end of file"
+        );
+        assertEquals(2, patchFiles.size());
+        PatchFile a = patchFiles.get(0);
+        assertEquals("a/A.txt", a.basePath);
+        assertEquals("b/A.txt", a.patchedPath);
+        assertFalse(a.noNewLine);
+        //Lines inside a hunk which look like file headers are diff lines.
+        assertEquals(Arrays.asList(" a", "--- removed", "+++ added", " c"), toStrings(a.patches.get(0).diffs));
+        assertEquals(Operation.DELETE, a.patches.get(0).diffs.get(1).op);
+        PatchFile b = patchFiles.get(1);
+        assertEquals("a/B.txt", b.basePath);
+        assertTrue(b.noNewLine);
+        assertEquals(2, b.patches.get(0).diffs.size());
+    }
+
+    @Test
+    public void testParseErrors() {
+        assertThrows(IllegalArgumentException.class, () -> parse("--- a/A.txt", "+++ b/A.txt", "@@ -1 +1 @@", "-a", "+b"));
+        assertThrows(IllegalArgumentException.class, () -> parse("--- a/A.txt", "+++ b/A.txt", "@@ -1,1 +1,1 @@", "-a", "+b", "\\ something else"));
+        assertThrows(IllegalArgumentException.class, () -> parse("--- a/A.txt", "+++ b/A.txt", "@@ -1,1 +5,1 @@", "-a", "+b"));
+        assertThrows(IllegalArgumentException.class, () -> parse("--- a/A.txt", "+++ b/A.txt", " a"));
+    }
+
+    @Test
+    public void testSingleFileRejectsMultiplePatchFiles() throws Throwable {
+        Path tempDir = Files.createTempDirectory("patch_reader_test");
+        tempDir.toFile().deleteOnExit();
+        Path base = tempDir.resolve("A.txt");
+        Path patch = tempDir.resolve("A.txt.patch");
+        Files.write(base, Arrays.asList("a"));
+        Files.write(patch, Arrays.asList(
+                "--- a/A.txt", "+++ b/A.txt", "@@ -1,1 +1,1 @@", "-a", "+b",
+                "--- a/B.txt", "+++ b/B.txt", "@@ -1,1 +1,1 @@", "-a", "+b"
+        ));
+        PatchOperation operation = PatchOperation.builder()
+                .basePath(base)
+                .patchesPath(patch)
+                .outputPath(tempDir.resolve("out.txt"))
+                .build();
+        assertThrows(IllegalArgumentException.class, operation::doPatch);
+    }
+
+    private static List<String> toStrings(List<Diff> diffs) {
+        return diffs.stream().map(Diff::toString).collect(Collectors.toList());
+    }
+
+    private static List<PatchFile> parse(String... lines) throws Throwable {
+        List<PatchFile> patchFiles = new ArrayList<>();
+        PatchReader.parse("test.patch", new StringReader(String.join("\n", lines)), true, patchFiles::add);
+        return patchFiles;
+    }
+}
@@ -0,0 +1,50 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.util.Diff;
+import codechicken.diffpatch.util.Operation;
+import codechicken.diffpatch.util.Patch;
+
+public class PatchTests {
+
+    @Test
+    public void testCopyIsolated() {
+        Patch original = new Patch();
+        original.diffs.add(Diff.of(Operation.EQUAL, "a"));
+        original.diffs.add(Diff.of(Operation.DELETE, "b"));
+        original.diffs.add(Diff.of(Operation.INSERT, "B"));
+        original.recalculateLength();
+        List<String> expected = toStrings(original.diffs);
+
+        //Modifying a copy directly must not reach the original, or other copies.
+        Patch copy = new Patch(original);
+        Patch copy2 = new Patch(copy);
+        copy.diffs.add(Diff.of(Operation.EQUAL, "c"));
+        copy.diffs.remove(0);
+        assertEquals(expected, toStrings(original.diffs));
+        assertEquals(expected, toStrings(copy2.diffs));
+        assertEquals(Arrays.asList("-b", "+B", " c"), toStrings(copy.diffs));
+
+        copy2.mutableDiffs().set(0, Diff.of(Operation.EQUAL, "x"));
+        copy2.trim(0);
+        assertEquals(expected, toStrings(original.diffs));
+        assertEquals(Arrays.asList("-b", "+B"), toStrings(copy2.diffs));
+
+        //Nor must modifying the original reach its copies.
+        Patch copy3 = new Patch(original);
+        original.diffs.clear();
+        assertEquals(expected, toStrings(copy3.diffs));
+    }
+
+    private static List<String> toStrings(List<Diff> diffs) {
+        return new ArrayList<>(diffs).stream().map(Diff::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,111 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.util.BinaryPatchFormat;
+import codechicken.diffpatch.util.Diff;
+import codechicken.diffpatch.util.Operation;
+import codechicken.diffpatch.util.Patch;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchWriter;
+
+public class PatchWriterTests {
+
+    private static final List<String> PATCH = Arrays.asList(
+            "--- a/A.txt",
+            "+++ b/A.txt",
+            "@@ -1,3 +1,4 @@",
+            " a",
+            "-b",
+            "+B",
+            "+\u00e9",
+            " c",
+            "@@ -120,2 +121,1 @@",
+            " x",
+            "-y"
+    );
+
+    @Test
+    public void testDiffs() throws Throwable {
+        //Copied into plain Diffs, so the writer can not use a Hunk.
+        List<PatchFile> patchFiles = PatchFile.fromLines("A.txt.patch", PATCH, false);
+        for (PatchFile patchFile : patchFiles) {
+            for (int i = 0; i < patchFile.patches.size(); i++) {
+                Patch from = patchFile.patches.get(i);
+                Patch patch = new Patch();
+                patch.start1 = from.start1;
+                patch.start2 = from.start2;
+                patch.length1 = from.length1;
+                patch.length2 = from.length2;
+                for (Diff diff : from.diffs) {
+                    patch.diffs.add(new Diff(diff));
+                }
+                assertNull(patch.getHunk());
+                patchFile.patches.set(i, patch);
+            }
+        }
+        assertMatches(patchFiles);
+    }
+
+    @Test
+    public void testHunks() throws Throwable {
+        List<PatchFile> parsed = PatchFile.fromLines("A.txt.patch", PATCH, false);
+        assertNotNull(parsed.get(0).patches.get(0).getHunk());
+        assertMatches(parsed);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BinaryPatchFormat.write(PatchFile.fromLines("A.txt.patch", PATCH, false), bos);
+        List<PatchFile> patchFiles = BinaryPatchFormat.read("A.txt.patch", ByteBuffer.wrap(bos.toByteArray()));
+        assertNotNull(patchFiles.get(0).patches.get(0).getHunk());
+        assertMatches(patchFiles);
+    }
+
+    @Test
+    public void testHeaderNumbers() throws Throwable {
+        PatchFile patchFile = new PatchFile();
+        patchFile.name = "A.txt.patch";
+        //Without paths, only hunks are written.
+        for (int start : new int[] { -1, 0, -2, 9, 10, -11, 1000000, Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1, Integer.MIN_VALUE }) {
+            Patch patch = new Patch();
+            patch.start1 = start;
+            patch.start2 = -start;
+            patch.length1 = start;
+            patch.length2 = 0;
+            patch.diffs.add(new Diff(Operation.EQUAL, "x"));
+            patchFile.patches.add(patch);
+        }
+        assertMatches(Collections.singletonList(patchFile));
+    }
+
+    // Asserts the written text is exactly toLines, with and without auto headers, for both separators.
+    private static void assertMatches(List<PatchFile> patchFiles) throws Throwable {
+        for (boolean autoHeader : new boolean[] { false, true }) {
+            for (String separator : Arrays.asList("\n", "\r\n")) {
+                StringBuilder expected = new StringBuilder();
+                for (PatchFile patchFile : patchFiles) {
+                    for (String line : patchFile.toLines(autoHeader)) {
+                        expected.append(line).append(separator);
+                    }
+                }
+                StringWriter out = new StringWriter();
+                try (PatchWriter writer = new PatchWriter(out, separator)) {
+                    for (PatchFile patchFile : patchFiles) {
+                        writer.write(patchFile, autoHeader);
+                    }
+                }
+                assertEquals(expected.toString(), out.toString(), "Auto header: " + autoHeader);
+            }
+        }
+    }
+}
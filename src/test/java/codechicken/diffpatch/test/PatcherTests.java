@@ -0,0 +1,104 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.patch.Patcher;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchMode;
+
+public class PatcherTests {
+
+    private static final List<String> PATCH = Arrays.asList(
+            "--- a/A.java",
+            "+++ b/A.java",
+            "@@ -1,4 +1,5 @@",
+            " class A {",
+            "     private void a() {",
+            "+        run();",
+            "     }",
+            " }"
+    );
+
+    @Test
+    public void testAccess() {
+        List<String> lines = Arrays.asList("class A {", "    public final void a() {", "    }", "}");
+        //Only access words differ, exact matching fails.
+        assertFalse(patch(lines, PATCH, PatchMode.EXACT).get(0).success);
+
+        Patcher patcher = new Patcher(PatchFile.fromLines("A.java.patch", PATCH, true).get(0), lines);
+        List<Patcher.Result> results = patcher.patch(PatchMode.ACCESS).collect(Collectors.toList());
+        assertTrue(results.get(0).success);
+        assertEquals(PatchMode.ACCESS, results.get(0).mode);
+        //The access of the file is kept.
+        assertEquals(Arrays.asList("class A {", "    public final void a() {", "        run();", "    }", "}"), patcher.lines);
+    }
+
+    @Test
+    public void testNotAccess() {
+        //The method name differs, which is not an access word.
+        List<String> lines = Arrays.asList("class A {", "    public void b() {", "    }", "}");
+        assertFalse(patch(lines, PATCH, PatchMode.ACCESS).get(0).success);
+        //Nor is a word missing from the file, even alongside access changes.
+        lines = Arrays.asList("class A {", "    public a() {", "    }", "}");
+        assertFalse(patch(lines, PATCH, PatchMode.ACCESS).get(0).success);
+    }
+
+    @Test
+    public void testRepeatedWords() {
+        List<String> patch = Arrays.asList(
+                "--- a/A.java",
+                "+++ b/A.java",
+                "@@ -1,2 +1,3 @@",
+                " private int a = a + a;",
+                "+int b;",
+                " }"
+        );
+        //Repeated words with the same count on both sides.
+        assertTrue(patch(Arrays.asList("public final int a = a + a;", "}"), patch, PatchMode.ACCESS).get(0).success);
+        //The same words, but one repeated less in the file.
+        assertFalse(patch(Arrays.asList("public int a = a + b;", "}"), patch, PatchMode.ACCESS).get(0).success);
+        //Or more.
+        assertFalse(patch(Arrays.asList("public int a = a + a + a;", "}"), patch, PatchMode.ACCESS).get(0).success);
+    }
+
+    @Test
+    public void testAccessAfterReject() {
+        //The first hunk's word counts must not leak into the second.
+        List<String> patch = Arrays.asList(
+                "--- a/A.java",
+                "+++ b/A.java",
+                "@@ -1,2 +1,3 @@",
+                " private int a;",
+                "+int b;",
+                " int c;",
+                "@@ -10,2 +11,3 @@",
+                " private int x;",
+                "+int y;",
+                " int z;"
+        );
+        List<String> lines = new ArrayList<>(Arrays.asList("public long a;", "int c;"));
+        for (int i = 2; i < 9; i++) {
+            lines.add("int f" + i + ";");
+        }
+        lines.add("public int x;");
+        lines.add("int z;");
+        List<Patcher.Result> results = patch(lines, patch, PatchMode.ACCESS);
+        assertFalse(results.get(0).success);
+        assertTrue(results.get(1).success);
+        assertEquals(PatchMode.ACCESS, results.get(1).mode);
+    }
+
+    private static List<Patcher.Result> patch(List<String> lines, List<String> patch, PatchMode mode) {
+        Patcher patcher = new Patcher(PatchFile.fromLines("A.java.patch", patch, true).get(0), lines);
+        return patcher.patch(mode).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,118 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.util.Pipeline;
+
+public class PipelineTests {
+
+    @Test
+    public void testBoundedInFlight() throws Throwable {
+        int capacity = 4;
+        List<Integer> keys = IntStream.range(0, 500).boxed().collect(Collectors.toList());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Integer> written = new ArrayList<>();
+        //A slow writer, so the reader is always ahead and must be held back.
+        Pipeline.run(keys, capacity, key -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return key;
+        }, item -> item * 2, item -> {
+            sleep(item % 10 == 0 ? 5 : 0);
+            written.add(item / 2);
+            inFlight.decrementAndGet();
+        });
+        assertEquals(keys, written);
+        //Each queue, plus one item held by each stage and one the reader is blocked putting.
+        assertTrue(maxInFlight.get() <= 2 * capacity + 3, "In flight: " + maxInFlight.get());
+    }
+
+    @Test
+    public void testFailure() {
+        IOException failure = new IOException("Write failed.");
+        AtomicInteger read = new AtomicInteger();
+        List<Integer> keys = IntStream.range(0, 10000).boxed().collect(Collectors.toList());
+        IOException e = assertThrows(IOException.class, () -> Pipeline.run(keys, 2, key -> {
+            read.incrementAndGet();
+            return key;
+        }, item -> item, item -> {
+            if (item == 10) {
+                throw failure;
+            }
+        }));
+        assertSame(failure, e);
+        //The reader stops soon after, rather than reading every key.
+        assertTrue(read.get() < keys.size());
+    }
+
+    @Test
+    public void testInterrupt() throws Throwable {
+        Thread[] stages = new Thread[2];
+        CountDownLatch started = new CountDownLatch(2);
+        Throwable[] error = { null };
+        List<Integer> keys = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        Thread caller = new Thread(() -> {
+            try {
+                Pipeline.run(keys, 1, key -> {
+                    stages[0] = Thread.currentThread();
+                    if (key == 0) {
+                        started.countDown();
+                    }
+                    //Swallows its interrupt, so the pipeline must still stop it.
+                    sleepUninterruptibly(key == 0 ? 0 : 200);
+                    return key;
+                }, item -> item, item -> {
+                    stages[1] = Thread.currentThread();
+                    started.countDown();
+                    sleepUninterruptibly(200);
+                });
+            } catch (Throwable t) {
+                error[0] = t;
+            }
+            //Both stages have finished by the time run returns.
+            if (stages[0].isAlive() || stages[1].isAlive()) {
+                error[0] = new AssertionError("Stage still running.");
+            }
+        }, "Pipeline Caller");
+        caller.start();
+        started.await();
+        caller.interrupt();
+        caller.join(20000);
+        assertFalse(caller.isAlive());
+        assertTrue(error[0] instanceof InterruptedIOException, String.valueOf(error[0]));
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void sleepUninterruptibly(long millis) {
+        long end = System.currentTimeMillis() + millis;
+        long remaining;
+        while ((remaining = end - System.currentTimeMillis()) > 0) {
+            try {
+                Thread.sleep(remaining);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
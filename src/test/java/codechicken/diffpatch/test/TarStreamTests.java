@@ -0,0 +1,70 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.util.archiver.TarArchiveWriter;
+import codechicken.diffpatch.util.archiver.TarStreamReader;
+
+public class TarStreamTests {
+
+    private static final String LONG_DIR = repeat("d", 120);
+    private static final String LONG_NAME = repeat("n", 120);
+
+    @Test
+    public void testRoundTrip() throws Throwable {
+        //Short, ustar prefix split and pax path names.
+        List<String> names = Arrays.asList("a.txt", "dir/b.txt", LONG_DIR + "/c.txt", LONG_NAME);
+        byte[] tar = tar(names);
+        try (TarStreamReader reader = new TarStreamReader(new ByteArrayInputStream(tar))) {
+            for (String name : names) {
+                TarStreamReader.Entry entry = reader.next();
+                assertEquals(name, entry.name);
+                assertArrayEquals(name.getBytes(StandardCharsets.UTF_8), entry.bytes);
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testRejectsUnsafeNames() throws Throwable {
+        //The last two do not fit a ustar header and are written as pax path records.
+        List<String> unsafe = Arrays.asList("../evil.txt", "a/../../evil.txt", "/abs.txt", "../" + LONG_NAME, LONG_DIR + "/../../" + LONG_NAME);
+        for (String name : unsafe) {
+            byte[] tar = tar(Arrays.asList("safe.txt", name));
+            try (TarStreamReader reader = new TarStreamReader(new ByteArrayInputStream(tar))) {
+                assertEquals("safe.txt", reader.next().name);
+                assertThrows(IOException.class, reader::next, name);
+            }
+        }
+    }
+
+    private static byte[] tar(List<String> names) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (TarArchiveWriter writer = new TarArchiveWriter(bos)) {
+            for (String name : names) {
+                writer.putEntry(name, name.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static String repeat(String str, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(str);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.PathFilter;
+import codechicken.diffpatch.util.TreeIndexer;
+import codechicken.diffpatch.util.Utils;
+
+public class TreeIndexerTests {
+
+    @Test
+    public void testMatchesWalk() throws Throwable {
+        Path root = writeTree();
+        //Wide and deep enough for directories to be listed in parallel.
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                Path dir = Files.createDirectories(root.resolve("gen/" + i + "/" + j + "/" + i + j));
+                Files.write(dir.resolve("f.txt"), Collections.singletonList("f"));
+                Files.write(dir.getParent().resolve("g" + j + ".txt"), Collections.singletonList("g"));
+            }
+        }
+        SortedMap<String, Path> index = TreeIndexer.index(root, null);
+
+        List<String> walked;
+        try (Stream<Path> files = Files.walk(root)) {
+            walked = files.filter(Files::isRegularFile)
+                    .map(e -> root.relativize(e).toString().replace('\\', '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        assertEquals(walked, new ArrayList<>(index.keySet()));
+        for (String key : index.keySet()) {
+            assertEquals(root.resolve(key), index.get(key));
+        }
+    }
+
+    @Test
+    public void testPruned() throws Throwable {
+        Path root = writeTree();
+        Set<String> dirs = ConcurrentHashMap.newKeySet();
+        Set<String> files = ConcurrentHashMap.newKeySet();
+        SortedMap<String, Path> index = TreeIndexer.index(root, new PathFilter() {
+            @Override
+            public boolean apply(String path) {
+                files.add(path);
+                return !path.endsWith(".skip");
+            }
+
+            @Override
+            public boolean applyDirectory(String dir) {
+                dirs.add(dir);
+                return !dir.equals("b");
+            }
+        });
+        assertEquals(Arrays.asList("a/1.txt", "a/c/2.txt", "a/c/d/3.txt", "top.txt"), new ArrayList<>(index.keySet()));
+        //Nothing under a pruned directory is ever visited.
+        assertTrue(dirs.contains("b"));
+        assertFalse(dirs.stream().anyMatch(e -> e.startsWith("b/")));
+        assertFalse(files.stream().anyMatch(e -> e.startsWith("b/")));
+        assertTrue(files.contains("a/4.skip"));
+    }
+
+    @Test
+    public void testFailure() throws Throwable {
+        Path root = writeTree();
+        assertThrows(NoSuchFileException.class, () -> TreeIndexer.index(root.resolve("missing"), null));
+
+        //A directory which vanishes before it is listed, deep in the tree.
+        IOException e = assertThrows(IOException.class, () -> TreeIndexer.index(root, new PathFilter() {
+            @Override
+            public boolean apply(String path) {
+                return true;
+            }
+
+            @Override
+            public boolean applyDirectory(String dir) {
+                if (dir.equals("a/c/d")) {
+                    try {
+                        Utils.deleteFolder(root.resolve(dir));
+                    } catch (IOException ex) {
+                        throw new AssertionError(ex);
+                    }
+                }
+                return true;
+            }
+        }));
+        assertTrue(e instanceof NoSuchFileException, String.valueOf(e));
+    }
+
+    private static Path writeTree() throws IOException {
+        Path root = Files.createTempDirectory("index_test");
+        root.toFile().deleteOnExit();
+        for (String file : Arrays.asList("top.txt", "a/1.txt", "a/4.skip", "a/c/2.txt", "a/c/d/3.txt", "b/5.txt", "b/e/6.txt")) {
+            Path path = root.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, Collections.singletonList(file));
+        }
+        Files.createDirectories(root.resolve("empty/nested"));
+        return root;
+    }
+}
@@ -0,0 +1,212 @@
+package codechicken.diffpatch.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.diffpatch.PatchOperation;
+import codechicken.diffpatch.util.InputPath;
+import codechicken.diffpatch.util.archiver.ZipArchiveReader;
+
+public class ZipArchiveTests {
+
+    @Test
+    public void testRead() throws Throwable {
+        Path tempDir = Files.createTempDirectory("zip_test");
+        tempDir.toFile().deleteOnExit();
+        Path zip = tempDir.resolve("test.zip");
+        byte[] stored = "stored".getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = new byte[10000];
+        Arrays.fill(deflated, (byte) 'x');
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            ZipEntry entry = new ZipEntry("a/stored.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            entry.setCrc(crc.getValue());
+            zos.putNextEntry(entry);
+            zos.write(stored);
+            zos.putNextEntry(new ZipEntry("a/"));
+            zos.putNextEntry(new ZipEntry("b/deflated.txt"));
+            zos.write(deflated);
+        }
+        try (ZipArchiveReader reader = new ZipArchiveReader(zip)) {
+            //Directories are not entries.
+            assertEquals(Arrays.asList("a/stored.txt", "b/deflated.txt"), new ArrayList<>(reader.getEntries()));
+            assertArrayEquals(stored, reader.getBytes("a/stored.txt"));
+            assertArrayEquals(deflated, reader.getBytes("b/deflated.txt"));
+            assertThrows(IOException.class, () -> reader.getBytes("missing"));
+        }
+    }
+
+    @Test
+    public void testTruncated() throws Throwable {
+        Path tempDir = Files.createTempDirectory("zip_test");
+        tempDir.toFile().deleteOnExit();
+        byte[] bytes = writeZip();
+        Path zip = tempDir.resolve("cut.zip");
+        //Cut at every length, keeping the end record so its offsets point past the cut.
+        for (int len = 0; len < bytes.length - 22; len++) {
+            byte[] cut = Arrays.copyOf(bytes, len + 22);
+            System.arraycopy(bytes, bytes.length - 22, cut, len, 22);
+            Files.write(zip, cut);
+            String message = "Cut at " + len;
+            //Either the archive or its entries fail, always as an IOException.
+            try (ZipArchiveReader reader = new ZipArchiveReader(zip)) {
+                for (String entry : reader.getEntries()) {
+                    try {
+                        reader.getBytes(entry);
+                    } catch (IOException ignored) {
+                    }
+                }
+            } catch (IOException ignored) {
+            } catch (RuntimeException e) {
+                throw new AssertionError(message, e);
+            }
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws Throwable {
+        Path tempDir = Files.createTempDirectory("zip_test");
+        tempDir.toFile().deleteOnExit();
+        Path zip = tempDir.resolve("corrupt.zip");
+        byte[] bytes = writeZip();
+        int central = indexOf(bytes, new byte[] { 'P', 'K', 1, 2 });
+        int end = indexOf(bytes, new byte[] { 'P', 'K', 5, 6 });
+
+        //Central directory past the end of the archive.
+        assertCorrupt(zip, setInt(bytes, end + 16, bytes.length));
+        //Sizes over 2 GiB.
+        assertCorrupt(zip, setInt(bytes, central + 20, 0x80000000));
+        assertCorrupt(zip, setInt(bytes, central + 24, 0x80000000));
+        //Data past the end of the archive.
+        assertCorrupt(zip, setInt(bytes, central + 20, bytes.length));
+        //Local header past the end of the archive.
+        assertCorrupt(zip, setInt(bytes, central + 42, bytes.length - 10));
+
+        //Data which no longer matches its CRC.
+        byte[] flipped = bytes.clone();
+        flipped[indexOf(bytes, PAYLOAD)] ^= 1;
+        Files.write(zip, flipped);
+        try (ZipArchiveReader reader = new ZipArchiveReader(zip)) {
+            IOException e = assertThrows(IOException.class, () -> reader.getBytes("a.txt"));
+            assertTrue(e.getMessage().contains("CRC"));
+        }
+    }
+
+    private static final byte[] PAYLOAD = "payload".getBytes(StandardCharsets.UTF_8);
+
+    // A stored entry followed by a deflated one.
+    private static byte[] writeZip() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            ZipEntry entry = new ZipEntry("a.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(PAYLOAD.length);
+            CRC32 crc = new CRC32();
+            crc.update(PAYLOAD);
+            entry.setCrc(crc.getValue());
+            zos.putNextEntry(entry);
+            zos.write(PAYLOAD);
+            zos.putNextEntry(new ZipEntry("b.txt"));
+            zos.write("deflated deflated deflated".getBytes(StandardCharsets.UTF_8));
+        }
+        return bos.toByteArray();
+    }
+
+    private static void assertCorrupt(Path zip, byte[] bytes) throws IOException {
+        Files.write(zip, bytes);
+        assertThrows(IOException.class, () -> {
+            try (ZipArchiveReader reader = new ZipArchiveReader(zip)) {
+                reader.getBytes("a.txt");
+            }
+        });
+    }
+
+    private static byte[] setInt(byte[] bytes, int pos, int value) {
+        byte[] copy = bytes.clone();
+        for (int i = 0; i < 4; i++) {
+            copy[pos + i] = (byte) (value >>> i * 8);
+        }
+        return copy;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] search) {
+        outer:
+        for (int i = 0; i <= bytes.length - search.length; i++) {
+            for (int j = 0; j < search.length; j++) {
+                if (bytes[i + j] != search[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("Not found.");
+    }
+
+    @Test
+    public void testRejectsUnsafeEntries() throws Throwable {
+        Path tempDir = Files.createTempDirectory("zip_test");
+        tempDir.toFile().deleteOnExit();
+        for (String name : Arrays.asList("../evil.txt", "a/../../evil.txt", "/abs.txt", "a\\..\\..\\evil.txt", "C:/evil.txt")) {
+            Path zip = tempDir.resolve("unsafe.zip");
+            try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+                zos.putNextEntry(new ZipEntry("safe.txt"));
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(1);
+            }
+            assertThrows(IOException.class, () -> new ZipArchiveReader(zip), name);
+
+            Path patches = tempDir.resolve("patches");
+            Files.createDirectories(patches);
+            Path out = tempDir.resolve("out/nested");
+            PatchOperation operation = PatchOperation.builder()
+                    .basePath(new InputPath.ArchivePath(zip))
+                    .patchesPath(patches)
+                    .outputPath(out)
+                    .build();
+            assertThrows(IOException.class, operation::doPatch, name);
+            assertFalse(Files.exists(tempDir.resolve("evil.txt")));
+            assertFalse(Files.exists(tempDir.resolve("out/evil.txt")));
+        }
+    }
+
+    @Test
+    public void testRejectsUnsafePatchedPath() throws Throwable {
+        Path tempDir = Files.createTempDirectory("zip_test");
+        tempDir.toFile().deleteOnExit();
+        Path base = tempDir.resolve("base");
+        Path patches = tempDir.resolve("patches");
+        Path out = tempDir.resolve("out");
+        Files.createDirectories(base);
+        Files.createDirectories(patches);
+        try (OutputStream os = Files.newOutputStream(patches.resolve("evil.txt.patch"))) {
+            os.write(String.join("\n", "--- /dev/null", "+++ b/../evil.txt", "@@ -1,0 +1,1 @@", "+evil").getBytes(StandardCharsets.UTF_8));
+        }
+        PatchOperation operation = PatchOperation.builder()
+                .basePath(base)
+                .patchesPath(patches)
+                .outputPath(out)
+                .build();
+        assertThrows(IOException.class, operation::doPatch);
+        assertFalse(Files.exists(tempDir.resolve("evil.txt")));
+    }
+}